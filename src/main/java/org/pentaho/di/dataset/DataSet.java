@@ -55,9 +55,12 @@ public class DataSet {
   @MetaStoreAttribute( key = "group_name", nameReference = true, nameListKey = DataSetConst.GROUP_LIST_KEY )
   private DataSetGroup group;
 
+  @MetaStoreAttribute( key = "sort_fields" )
+  private List<String> sortFields;
 
   public DataSet() {
     fields = new ArrayList<>();
+    sortFields = new ArrayList<>();
   }
 
   public DataSet( String name, String description, DataSetGroup group, String tableName, List<DataSetField> fields ) {
@@ -137,10 +140,80 @@ public class DataSet {
   }
 
 
+  /**
+   * See if the stored rows of this data set are sorted on the given fields.
+   * Rows sorted on a list of fields are also sorted on any leading part of that list.
+   *
+   * @param fieldOrder The data set field names in the required order
+   * @return true if the rows are stored sorted on the given fields
+   */
+  public boolean isSortedOn( List<String> fieldOrder ) {
+    if ( fieldOrder == null || fieldOrder.isEmpty() || sortFields == null || fieldOrder.size() > sortFields.size() ) {
+      return false;
+    }
+    for ( int i = 0; i < fieldOrder.size(); i++ ) {
+      if ( !fieldOrder.get( i ).equalsIgnoreCase( sortFields.get( i ) ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write the given rows to the storage of this data set, replacing the stored rows.
+   * If sort fields are defined for this data set the rows are sorted on them before they are written.
+   *
+   * @param columnsRowMeta The row metadata of the rows, named after the columns
+   * @param rows           The rows to write
+   * @throws KettleException
+   */
+  public void writeDataSetData( RowMetaInterface columnsRowMeta, List<Object[]> rows ) throws KettleException {
+    writeDataSetData( columnsRowMeta, rows, DataSetWriteMode.Replace, null );
+  }
+
+  /**
+   * Write the given rows to the storage of this data set.
+   * If sort fields are defined for this data set the rows are sorted on them before they are written,
+   * appended or upserted rows are merged in so that the stored rows stay sorted.
+   *
+   * @param columnsRowMeta The row metadata of the rows, named after the columns
+   * @param rows           The rows to write
+   * @param writeMode      Replace the stored rows, append to them or upsert on the key fields
+   * @param keyFields      The data set fields identifying a row in upsert mode
+   * @throws KettleException
+   */
+  public void writeDataSetData( RowMetaInterface columnsRowMeta, List<Object[]> rows, DataSetWriteMode writeMode, List<String> keyFields ) throws KettleException {
+    List<String> sortColumns = getColumnsForFields( sortFields, "sort" );
+    if ( !sortColumns.isEmpty() ) {
+      rows = new ArrayList<>( rows );
+      DataSetConst.sortRows( columnsRowMeta, rows, sortColumns );
+    }
+    List<String> keyColumns = getColumnsForFields( keyFields, "key" );
+    group.writeDataSetData( tableName, columnsRowMeta, rows, writeMode, keyColumns, sortColumns );
+  }
+
+  private List<String> getColumnsForFields( List<String> fieldNames, String usage ) throws KettleException {
+    List<String> columns = new ArrayList<>();
+    if ( fieldNames != null ) {
+      for ( String fieldName : fieldNames ) {
+        String column = findColumnForField( fieldName );
+        if ( column == null ) {
+          throw new KettleException( "Unable to find column for " + usage + " field '" + fieldName + "' in data set '" + name + "'" );
+        }
+        columns.add( column );
+      }
+    }
+    return columns;
+  }
+
   public List<Object[]> getAllRows( LogChannelInterface log, TransUnitTestSetLocation location ) throws KettleException {
     return group.getAllRows( log, this, location );
   }
 
+  public DataSetRowReader getRowReader( LogChannelInterface log, TransUnitTestSetLocation location ) throws KettleException {
+    return group.getRowReader( log, this, location );
+  }
+
   public List<Object[]> getAllRows( LogChannelInterface log ) throws KettleException {
     return group.getAllRows( log, this );
   }
@@ -243,4 +316,20 @@ public class DataSet {
   public void setGroup( DataSetGroup group ) {
     this.group = group;
   }
+
+  /**
+   * Gets sortFields
+   *
+   * @return value of sortFields, the data set field names the stored rows are sorted on
+   */
+  public List<String> getSortFields() {
+    return sortFields;
+  }
+
+  /**
+   * @param sortFields The sortFields to set
+   */
+  public void setSortFields( List<String> sortFields ) {
+    this.sortFields = sortFields;
+  }
 }
@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Describes the layout of a binary data set file:
+ * <pre>
+ *   magic "KDSB", int version
+ *   int header length, header: int nr of columns, per column: name, type, length, precision, conversion mask
+ *   repeated until the end of the file:
+ *     int chunk length, chunk: int nr of rows, per column: int column length, byte encoding, null bitmap, non-null values
+ * </pre>
+ * Every column of a chunk is stored separately so that readers can skip the columns they don't need.
+ * Integers and dates are stored as zig-zag encoded variable length deltas, strings either plain or with a dictionary.
+ */
+public class DataSetBinaryFormat {
+
+  public static final byte[] MAGIC = new byte[] { 'K', 'D', 'S', 'B' };
+  public static final int VERSION = 1;
+
+  public static final int CHUNK_SIZE = 4096;
+
+  public static final byte ENCODING_PLAIN = 0;
+  public static final byte ENCODING_DELTA = 1;
+  public static final byte ENCODING_DICTIONARY = 2;
+
+  private DataSetBinaryFormat() {
+  }
+
+  public static void writeVarLong( DataOutput output, long value ) throws IOException {
+    while ( ( value & ~0x7FL ) != 0 ) {
+      output.writeByte( (int) ( ( value & 0x7F ) | 0x80 ) );
+      value >>>= 7;
+    }
+    output.writeByte( (int) value );
+  }
+
+  public static long readVarLong( ByteBuffer buffer ) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) ( b & 0x7F ) << shift;
+      shift += 7;
+    } while ( ( b & 0x80 ) != 0 );
+    return value;
+  }
+
+  public static long zigZag( long value ) {
+    return ( value << 1 ) ^ ( value >> 63 );
+  }
+
+  public static long unZigZag( long value ) {
+    return ( value >>> 1 ) ^ -( value & 1 );
+  }
+
+  public static void writeBytes( DataOutput output, byte[] bytes ) throws IOException {
+    writeVarLong( output, bytes.length );
+    output.write( bytes );
+  }
+
+  public static byte[] readBytes( ByteBuffer buffer ) {
+    byte[] bytes = new byte[ (int) readVarLong( buffer ) ];
+    buffer.get( bytes );
+    return bytes;
+  }
+
+  public static void writeString( DataOutput output, String string ) throws IOException {
+    writeBytes( output, string.getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  public static String readString( ByteBuffer buffer ) {
+    int length = (int) readVarLong( buffer );
+    String string;
+    if ( buffer.hasArray() ) {
+      string = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8 );
+      buffer.position( buffer.position() + length );
+    } else {
+      byte[] bytes = new byte[ length ];
+      buffer.get( bytes );
+      string = new String( bytes, StandardCharsets.UTF_8 );
+    }
+    return string;
+  }
+}
@@ -0,0 +1,238 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.dataset;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.dataset.util.DataSetConst;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The implementation of a Binary Data Set Group
+ * The rows are stored in a compact typed columnar format in a file defined by the tableName in the data set.
+ * This avoids parsing text and keeps the exact data types on every read.
+ *
+ * @see DataSetBinaryFormat
+ */
+public class DataSetBinaryGroup {
+
+  public static final String FILE_EXTENSION = ".kdsb";
+
+  public static String getDataSetFilename( DataSetGroup dataSetGroup, String tableName ) {
+    return DataSetCsvGroup.getDataSetFolder( dataSetGroup ) + tableName + FILE_EXTENSION;
+  }
+
+  public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
+    try ( DataSetRowReader rowReader = getRowReader( log, group, dataSet ) ) {
+      return DataSetConst.readAllRows( rowReader );
+    }
+  }
+
+  /**
+   * Open a reader on all the rows of the data set in the order of the file.
+   *
+   * @param log     the logging channel to which you can write.
+   * @param group   the data set group
+   * @param dataSet the data set to read
+   * @return A reader handing out the rows chunk by chunk
+   * @throws KettleException
+   */
+  public static final DataSetRowReader getRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
+    RowMetaInterface setRowMeta = dataSet.getSetRowMeta( true );
+    return openRowReader( group, dataSet, setRowMeta, setRowMeta.getFieldNames() );
+  }
+
+  /**
+   * Get the rows for this data set in the format of the data set.
+   *
+   * @param log      the logging channel to which you can write.
+   * @param location The fields to obtain in the order given
+   * @return The rows for the given location
+   * @throws KettleException
+   */
+  public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    try ( DataSetRowReader rowReader = getRowReader( log, group, dataSet, location ) ) {
+      return DataSetConst.readAllRows( rowReader );
+    }
+  }
+
+  /**
+   * Open a reader on the rows for this data set in the format of the data set.
+   * Only the mapped columns are decoded.
+   * If the location asks for a particular field order the rows are read and sorted first, unless they are stored in that order.
+   *
+   * @param log      the logging channel to which you can write.
+   * @param location The fields to obtain in the order given
+   * @return A reader for the rows of the given location
+   * @throws KettleException
+   */
+  public static final DataSetRowReader getRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    RowMetaInterface outputRowMeta = dataSet.getMappedDataSetFieldsRowMeta( location );
+    if ( outputRowMeta.isEmpty() ) {
+      log.logError( "WARNING: No field mappings selected for data set '" + dataSet.getName() + "', returning empty set of rows" );
+      return new DataSetRowListReader( new ArrayList<Object[]>() );
+    }
+
+    List<TransUnitTestFieldMapping> fieldMappings = location.getFieldMappings();
+    String[] columnNames = new String[ fieldMappings.size() ];
+    for ( int i = 0; i < columnNames.length; i++ ) {
+      String dataSetFieldName = fieldMappings.get( i ).getDataSetFieldName();
+      columnNames[ i ] = dataSet.findColumnForField( dataSetFieldName );
+      if ( columnNames[ i ] == null ) {
+        throw new KettleException( "Unable to find column for field '" + dataSetFieldName + "' in binary data set '" + dataSet.getName() + "'" );
+      }
+    }
+
+    DataSetRowReader rowReader = openRowReader( group, dataSet, outputRowMeta, columnNames );
+    List<String> sortFields = location.getFieldOrder();
+    if ( sortFields.isEmpty() || dataSet.isSortedOn( sortFields ) ) {
+      return rowReader;
+    }
+    return DataSetConst.getSortedRowReader( rowReader, outputRowMeta, sortFields );
+  }
+
+  private static DataSetRowReader openRowReader( DataSetGroup group, DataSet dataSet, RowMetaInterface outputRowMeta, String[] columnNames ) throws KettleException {
+    String dataSetFilename = getDataSetFilename( group, dataSet.getTableName() );
+    try {
+      FileObject file = KettleVFS.getFileObject( dataSetFilename );
+      if ( !file.exists() ) {
+        // This is fine.  We haven't put rows in yet.
+        //
+        return new DataSetRowListReader( new ArrayList<Object[]>() );
+      }
+      return new DataSetBinaryRowReader( dataSet.getName(), file, outputRowMeta, columnNames );
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to get all rows for binary data set '" + dataSet.getName() + "'", e );
+    }
+  }
+
+  public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
+                                             RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    writeDataSetData( loggingObject, dataSetGroup, tableName, rowMeta, rows, DataSetWriteMode.Replace, null, null );
+  }
+
+  /**
+   * Write the rows to the data set file.
+   * In replace mode, or when there's no file yet, a new file is written.
+   * In append mode new chunks are added at the end of the file if the set isn't stored sorted and the file has the same columns.
+   * In all other cases the stored rows are streamed through a {@link DataSetRowMerger} into a temporary file which
+   * then replaces the data set file.
+   *
+   * @param writeMode   Replace the stored rows, append to them or upsert on the key columns
+   * @param keyColumns  The columns identifying a row in upsert mode
+   * @param sortColumns The columns the rows are stored sorted on, null or empty if they're not sorted
+   */
+  public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
+                                             RowMetaInterface rowMeta, List<Object[]> rows, DataSetWriteMode writeMode,
+                                             List<String> keyColumns, List<String> sortColumns ) throws KettleException {
+
+    String dataSetFilename = getDataSetFilename( dataSetGroup, tableName );
+    LogChannelInterface log = new LogChannel( loggingObject );
+
+    FileObject tempFile = null;
+    try {
+      FileObject file = KettleVFS.getFileObject( dataSetFilename );
+
+      if ( writeMode == DataSetWriteMode.Replace || !file.exists() ) {
+        if ( writeMode == DataSetWriteMode.Upsert ) {
+          rows = new DataSetRowMerger( rowMeta, rows, writeMode, keyColumns, null ).getNewRows();
+        }
+        try ( DataSetBinaryRowWriter writer = new DataSetBinaryRowWriter( KettleVFS.getOutputStream( file, false ), rowMeta, true ) ) {
+          for ( Object[] row : rows ) {
+            writer.putRow( row );
+          }
+        }
+        return;
+      }
+
+      DataSetBinaryRowReader storedRows = new DataSetBinaryRowReader( tableName, file, rowMeta, rowMeta.getFieldNames() );
+      try {
+        if ( writeMode == DataSetWriteMode.Append && ( sortColumns == null || sortColumns.isEmpty() )
+          && hasSameColumns( storedRows.getFileRowMeta(), rowMeta ) ) {
+          storedRows.close();
+          try ( DataSetBinaryRowWriter writer = new DataSetBinaryRowWriter( KettleVFS.getOutputStream( file, true ), rowMeta, false ) ) {
+            for ( Object[] row : rows ) {
+              writer.putRow( row );
+            }
+          }
+          log.logBasic( "Appended " + rows.size() + " rows to data set file " + dataSetFilename );
+          return;
+        }
+
+        DataSetRowMerger merger = new DataSetRowMerger( rowMeta, rows, writeMode, keyColumns, sortColumns );
+        tempFile = KettleVFS.getFileObject( dataSetFilename + ".tmp" );
+        try ( DataSetBinaryRowWriter writer = new DataSetBinaryRowWriter( KettleVFS.getOutputStream( tempFile, false ), rowMeta, true ) ) {
+          merger.merge( storedRows, writer::putRow );
+        }
+        storedRows.close();
+        tempFile.moveTo( file );
+        tempFile = null;
+        log.logBasic( "Wrote " + rows.size() + " rows to data set file " + dataSetFilename + " (" + writeMode.name() + "), kept "
+          + merger.getNrKept() + " and replaced " + merger.getNrReplaced() + " stored rows" );
+      } finally {
+        storedRows.close();
+      }
+    } catch ( Exception e ) {
+      if ( tempFile != null ) {
+        try {
+          tempFile.delete();
+        } catch ( Exception deleteException ) {
+          log.logError( "Unable to remove temporary data set file", deleteException );
+        }
+      }
+      throw new KettleException( "Unable to write data set to file '" + dataSetFilename + "'", e );
+    }
+  }
+
+  /**
+   * Chunks can only be appended if they have exactly the columns of the file
+   */
+  private static boolean hasSameColumns( RowMetaInterface fileRowMeta, RowMetaInterface rowMeta ) {
+    if ( fileRowMeta.size() != rowMeta.size() ) {
+      return false;
+    }
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      ValueMetaInterface fileValueMeta = fileRowMeta.getValueMeta( i );
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+      if ( !fileValueMeta.getName().equals( valueMeta.getName() ) || fileValueMeta.getType() != valueMeta.getType() ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static void createTable( DataSetGroup group, String tableName, RowMetaInterface rowMeta ) throws KettleDatabaseException {
+
+    // Not needed with files
+
+  }
+}
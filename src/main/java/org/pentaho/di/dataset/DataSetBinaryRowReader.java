@@ -0,0 +1,356 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaFactory;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Reads the rows of a binary data set file chunk by chunk.
+ * Local files are read through a file channel, other files through Kettle VFS.
+ * Every chunk is read into the same buffer which only grows for larger chunks.
+ * Files are not memory mapped since a mapping keeps the file locked on Windows until it's garbage collected,
+ * which would make replacing the file after reading it fail.
+ * Only the requested columns are decoded, the others are skipped.
+ *
+ * @see DataSetBinaryFormat
+ */
+public class DataSetBinaryRowReader implements DataSetRowReader {
+
+  private final String dataSetName;
+  private final RowMetaInterface outputRowMeta;
+
+  private static final int INITIAL_BUFFER_SIZE = 65536;
+
+  private ReadableByteChannel channel;
+  private final ByteBuffer lengthBuffer;
+  private ByteBuffer blockBuffer;
+
+  private ValueMetaInterface[] fileValueMetas;
+  private ValueMetaString[] fileStringMetas;
+  private int[] fileIndexes;
+  private boolean[] projected;
+  private boolean[] converted;
+
+  private Object[][] chunkColumns;
+  private int chunkRowCount;
+  private int chunkRowIndex;
+
+  /**
+   * @param dataSetName   The name of the data set, for error reporting
+   * @param file          The binary data set file to read
+   * @param outputRowMeta The row metadata of the rows to hand out
+   * @param columnNames   For every value in the output row, the name of the column to read it from
+   * @throws KettleException
+   */
+  public DataSetBinaryRowReader( String dataSetName, FileObject file, RowMetaInterface outputRowMeta, String[] columnNames ) throws KettleException {
+    this.dataSetName = dataSetName;
+    this.outputRowMeta = outputRowMeta;
+    this.lengthBuffer = ByteBuffer.allocate( 4 );
+    this.blockBuffer = ByteBuffer.allocate( INITIAL_BUFFER_SIZE );
+
+    try {
+      if ( "file".equals( file.getName().getScheme() ) ) {
+        channel = FileChannel.open( Paths.get( KettleVFS.getFilename( file ) ), StandardOpenOption.READ );
+      } else {
+        channel = Channels.newChannel( KettleVFS.getInputStream( file ) );
+      }
+
+      readHeader( columnNames );
+    } catch ( Exception e ) {
+      close();
+      throw new KettleException( "Unable to open binary data set '" + dataSetName + "'", e );
+    }
+  }
+
+  private void readHeader( String[] columnNames ) throws IOException, KettleException {
+    byte[] magic = new byte[ DataSetBinaryFormat.MAGIC.length ];
+    ByteBuffer start = ByteBuffer.allocate( magic.length + 4 );
+    if ( !readFully( start ) ) {
+      throw new KettleException( "This is not a binary data set file" );
+    }
+    start.flip();
+    start.get( magic );
+    int version = start.getInt();
+    if ( !Arrays.equals( magic, DataSetBinaryFormat.MAGIC ) ) {
+      throw new KettleException( "This is not a binary data set file" );
+    }
+    if ( version != DataSetBinaryFormat.VERSION ) {
+      throw new KettleException( "Unsupported binary data set file version " + version );
+    }
+
+    ByteBuffer header = nextBlock();
+    int nrColumns = header.getInt();
+    fileValueMetas = new ValueMetaInterface[ nrColumns ];
+    fileStringMetas = new ValueMetaString[ nrColumns ];
+    for ( int i = 0; i < nrColumns; i++ ) {
+      String name = DataSetBinaryFormat.readString( header );
+      int type = header.getInt();
+      int length = header.getInt();
+      int precision = header.getInt();
+      String mask = DataSetBinaryFormat.readString( header );
+      ValueMetaInterface valueMeta = ValueMetaFactory.createValueMeta( name, type, length, precision );
+      if ( !mask.isEmpty() ) {
+        valueMeta.setConversionMask( mask );
+      }
+      fileValueMetas[ i ] = valueMeta;
+      ValueMetaString stringMeta = new ValueMetaString( name );
+      stringMeta.setConversionMetadata( valueMeta );
+      fileStringMetas[ i ] = stringMeta;
+    }
+
+    // Map the requested columns onto the columns in the file
+    //
+    fileIndexes = new int[ columnNames.length ];
+    projected = new boolean[ nrColumns ];
+    converted = new boolean[ columnNames.length ];
+    for ( int i = 0; i < columnNames.length; i++ ) {
+      fileIndexes[ i ] = -1;
+      for ( int f = 0; f < nrColumns; f++ ) {
+        if ( fileValueMetas[ f ].getName().equalsIgnoreCase( columnNames[ i ] ) ) {
+          fileIndexes[ i ] = f;
+          break;
+        }
+      }
+      if ( fileIndexes[ i ] < 0 ) {
+        throw new KettleException( "Unable to find column '" + columnNames[ i ] + "' in the binary data set file" );
+      }
+      projected[ fileIndexes[ i ] ] = true;
+      converted[ i ] = fileValueMetas[ fileIndexes[ i ] ].getType() != outputRowMeta.getValueMeta( i ).getType();
+    }
+    chunkColumns = new Object[ nrColumns ][];
+  }
+
+  /**
+   * @return The next length prefixed block of the file or null if we reached the end of the file.
+   * The block is only valid until the next block is read.
+   */
+  private ByteBuffer nextBlock() throws IOException {
+    lengthBuffer.clear();
+    if ( !readFully( lengthBuffer ) ) {
+      return null;
+    }
+    int length = lengthBuffer.getInt( 0 );
+    if ( blockBuffer.capacity() < length ) {
+      blockBuffer = ByteBuffer.allocate( Math.max( length, blockBuffer.capacity() * 2 ) );
+    }
+    blockBuffer.clear();
+    blockBuffer.limit( length );
+    if ( !readFully( blockBuffer ) ) {
+      throw new EOFException( "Unexpected end of the binary data set file" );
+    }
+    blockBuffer.flip();
+    return blockBuffer;
+  }
+
+  /**
+   * Fill the remaining space of the buffer from the file
+   *
+   * @return false if the end of the file was reached before anything was read
+   * @throws EOFException if the end of the file was reached halfway the buffer
+   */
+  private boolean readFully( ByteBuffer buffer ) throws IOException {
+    while ( buffer.hasRemaining() ) {
+      if ( channel.read( buffer ) < 0 ) {
+        if ( buffer.position() == 0 ) {
+          return false;
+        }
+        throw new EOFException( "Unexpected end of the binary data set file" );
+      }
+    }
+    return true;
+  }
+
+  private boolean readChunk() throws IOException, KettleValueException {
+    ByteBuffer chunk = nextBlock();
+    if ( chunk == null ) {
+      return false;
+    }
+    chunkRowCount = chunk.getInt();
+    chunkRowIndex = 0;
+    for ( int f = 0; f < fileValueMetas.length; f++ ) {
+      int columnLength = chunk.getInt();
+      if ( projected[ f ] ) {
+        ByteBuffer column = chunk.slice();
+        column.limit( columnLength );
+        chunkColumns[ f ] = decodeColumn( column, f, chunkRowCount );
+      }
+      chunk.position( chunk.position() + columnLength );
+    }
+    return true;
+  }
+
+  private Object[] decodeColumn( ByteBuffer buffer, int fileIndex, int nrRows ) throws KettleValueException {
+    ValueMetaInterface valueMeta = fileValueMetas[ fileIndex ];
+    byte encoding = buffer.get();
+    byte[] nulls = new byte[ ( nrRows + 7 ) / 8 ];
+    buffer.get( nulls );
+
+    Object[] values = new Object[ nrRows ];
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        long previous = 0L;
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            previous += DataSetBinaryFormat.unZigZag( DataSetBinaryFormat.readVarLong( buffer ) );
+            values[ r ] = previous;
+          }
+        }
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        long previousTime = 0L;
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            previousTime += DataSetBinaryFormat.unZigZag( DataSetBinaryFormat.readVarLong( buffer ) );
+            values[ r ] = new Date( previousTime );
+          }
+        }
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            values[ r ] = buffer.getDouble();
+          }
+        }
+        break;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            values[ r ] = buffer.get() != 0;
+          }
+        }
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            values[ r ] = new BigDecimal( DataSetBinaryFormat.readString( buffer ) );
+          }
+        }
+        break;
+      case ValueMetaInterface.TYPE_BINARY:
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            values[ r ] = DataSetBinaryFormat.readBytes( buffer );
+          }
+        }
+        break;
+      default:
+        String[] dictionary = null;
+        if ( encoding == DataSetBinaryFormat.ENCODING_DICTIONARY ) {
+          dictionary = new String[ (int) DataSetBinaryFormat.readVarLong( buffer ) ];
+          for ( int d = 0; d < dictionary.length; d++ ) {
+            dictionary[ d ] = DataSetBinaryFormat.readString( buffer );
+          }
+        }
+        boolean isString = valueMeta.getType() == ValueMetaInterface.TYPE_STRING;
+        for ( int r = 0; r < nrRows; r++ ) {
+          if ( !isNull( nulls, r ) ) {
+            String string;
+            if ( dictionary != null ) {
+              string = dictionary[ (int) DataSetBinaryFormat.readVarLong( buffer ) ];
+            } else {
+              string = DataSetBinaryFormat.readString( buffer );
+            }
+            values[ r ] = isString ? string : valueMeta.convertData( fileStringMetas[ fileIndex ], string );
+          }
+        }
+        break;
+    }
+    return values;
+  }
+
+  private static boolean isNull( byte[] nulls, int rowIndex ) {
+    return ( nulls[ rowIndex >> 3 ] & ( 1 << ( rowIndex & 7 ) ) ) != 0;
+  }
+
+  @Override
+  public Object[] getRow() throws KettleException {
+    try {
+      while ( chunkRowIndex >= chunkRowCount ) {
+        if ( !readChunk() ) {
+          return null;
+        }
+      }
+
+      Object[] row = RowDataUtil.allocateRowData( fileIndexes.length );
+      for ( int i = 0; i < fileIndexes.length; i++ ) {
+        int fileIndex = fileIndexes[ i ];
+        Object value = chunkColumns[ fileIndex ][ chunkRowIndex ];
+        if ( converted[ i ] ) {
+          value = outputRowMeta.getValueMeta( i ).convertData( fileValueMetas[ fileIndex ], value );
+        }
+        row[ i ] = value;
+      }
+      chunkRowIndex++;
+      return row;
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to read row from binary data set '" + dataSetName + "'", e );
+    }
+  }
+
+  /**
+   * @return The metadata of all the columns stored in the file, in the order of the file
+   */
+  public RowMetaInterface getFileRowMeta() {
+    RowMetaInterface fileRowMeta = new RowMeta();
+    for ( ValueMetaInterface valueMeta : fileValueMetas ) {
+      fileRowMeta.addValueMeta( valueMeta );
+    }
+    return fileRowMeta;
+  }
+
+  @Override
+  public void close() throws KettleException {
+    chunkColumns = null;
+    try {
+      if ( channel != null ) {
+        channel.close();
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error closing binary data set '" + dataSetName + "'", e );
+    } finally {
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows to a binary data set file in chunks of {@link DataSetBinaryFormat#CHUNK_SIZE} rows.
+ *
+ * @see DataSetBinaryFormat
+ */
+public class DataSetBinaryRowWriter implements AutoCloseable {
+
+  private final RowMetaInterface rowMeta;
+  private final DataOutputStream outputStream;
+  private final List<Object[]> chunkRows;
+
+  private final ByteArrayOutputStream chunkBytes;
+  private final DataOutputStream chunkOutput;
+  private final ByteArrayOutputStream columnBytes;
+  private final DataOutputStream columnOutput;
+
+  /**
+   * @param outputStream The stream to write to, closed when the writer is closed
+   * @param rowMeta      The row metadata of the rows to write, the names of the values are the column names
+   * @param writeHeader  true if the magic number and header need to be written, false to append chunks to an existing file
+   * @throws KettleException
+   */
+  public DataSetBinaryRowWriter( OutputStream outputStream, RowMetaInterface rowMeta, boolean writeHeader ) throws KettleException {
+    this.rowMeta = rowMeta;
+    this.outputStream = new DataOutputStream( new BufferedOutputStream( outputStream, 65536 ) );
+    this.chunkRows = new ArrayList<>( DataSetBinaryFormat.CHUNK_SIZE );
+    this.chunkBytes = new ByteArrayOutputStream( 65536 );
+    this.chunkOutput = new DataOutputStream( chunkBytes );
+    this.columnBytes = new ByteArrayOutputStream( 16384 );
+    this.columnOutput = new DataOutputStream( columnBytes );
+
+    if ( writeHeader ) {
+      try {
+        this.outputStream.write( DataSetBinaryFormat.MAGIC );
+        this.outputStream.writeInt( DataSetBinaryFormat.VERSION );
+
+        chunkOutput.writeInt( rowMeta.size() );
+        for ( ValueMetaInterface valueMeta : rowMeta.getValueMetaList() ) {
+          DataSetBinaryFormat.writeString( chunkOutput, valueMeta.getName() );
+          chunkOutput.writeInt( valueMeta.getType() );
+          chunkOutput.writeInt( valueMeta.getLength() );
+          chunkOutput.writeInt( valueMeta.getPrecision() );
+          DataSetBinaryFormat.writeString( chunkOutput, valueMeta.getConversionMask() == null ? "" : valueMeta.getConversionMask() );
+        }
+        writeBlock();
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to write binary data set header", e );
+      }
+    }
+  }
+
+  public void putRow( Object[] row ) throws KettleException {
+    chunkRows.add( row );
+    if ( chunkRows.size() >= DataSetBinaryFormat.CHUNK_SIZE ) {
+      writeChunk();
+    }
+  }
+
+  private void writeChunk() throws KettleException {
+    try {
+      chunkOutput.writeInt( chunkRows.size() );
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        columnBytes.reset();
+        writeColumn( rowMeta.getValueMeta( i ), i );
+        chunkOutput.writeInt( columnBytes.size() );
+        columnBytes.writeTo( chunkOutput );
+      }
+      writeBlock();
+      chunkRows.clear();
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to write chunk of binary data set rows", e );
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    chunkOutput.flush();
+    outputStream.writeInt( chunkBytes.size() );
+    chunkBytes.writeTo( outputStream );
+    chunkBytes.reset();
+  }
+
+  private void writeColumn( ValueMetaInterface valueMeta, int index ) throws IOException, KettleValueException {
+    int nrRows = chunkRows.size();
+
+    // Collect the non-null values and the null bitmap
+    //
+    byte[] nulls = new byte[ ( nrRows + 7 ) / 8 ];
+    List<Object> values = new ArrayList<>( nrRows );
+    for ( int r = 0; r < nrRows; r++ ) {
+      Object[] row = chunkRows.get( r );
+      Object value = index < row.length ? row[ index ] : null;
+      if ( valueMeta.isNull( value ) ) {
+        nulls[ r >> 3 ] |= 1 << ( r & 7 );
+      } else {
+        values.add( value );
+      }
+    }
+
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_DELTA );
+        columnOutput.write( nulls );
+        long previous = 0L;
+        for ( Object value : values ) {
+          long current = valueMeta.getInteger( value );
+          DataSetBinaryFormat.writeVarLong( columnOutput, DataSetBinaryFormat.zigZag( current - previous ) );
+          previous = current;
+        }
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_DELTA );
+        columnOutput.write( nulls );
+        long previousTime = 0L;
+        for ( Object value : values ) {
+          long time = valueMeta.getDate( value ).getTime();
+          DataSetBinaryFormat.writeVarLong( columnOutput, DataSetBinaryFormat.zigZag( time - previousTime ) );
+          previousTime = time;
+        }
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_PLAIN );
+        columnOutput.write( nulls );
+        for ( Object value : values ) {
+          columnOutput.writeDouble( valueMeta.getNumber( value ) );
+        }
+        break;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_PLAIN );
+        columnOutput.write( nulls );
+        for ( Object value : values ) {
+          columnOutput.writeBoolean( valueMeta.getBoolean( value ) );
+        }
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_PLAIN );
+        columnOutput.write( nulls );
+        for ( Object value : values ) {
+          BigDecimal bigNumber = valueMeta.getBigNumber( value );
+          DataSetBinaryFormat.writeString( columnOutput, bigNumber.toString() );
+        }
+        break;
+      case ValueMetaInterface.TYPE_BINARY:
+        columnOutput.writeByte( DataSetBinaryFormat.ENCODING_PLAIN );
+        columnOutput.write( nulls );
+        for ( Object value : values ) {
+          DataSetBinaryFormat.writeBytes( columnOutput, valueMeta.getBinary( value ) );
+        }
+        break;
+      default:
+        // Strings and all other types in their string form
+        //
+        List<String> strings = new ArrayList<>( values.size() );
+        for ( Object value : values ) {
+          strings.add( valueMeta.getString( value ) );
+        }
+        writeStrings( nulls, strings );
+        break;
+    }
+  }
+
+  private void writeStrings( byte[] nulls, List<String> strings ) throws IOException {
+
+    // See if a dictionary is worth it: at least every value needs to appear twice on average
+    //
+    Map<String, Integer> dictionary = new HashMap<>();
+    List<String> entries = new ArrayList<>();
+    for ( String string : strings ) {
+      if ( !dictionary.containsKey( string ) ) {
+        if ( dictionary.size() * 2 >= strings.size() ) {
+          dictionary = null;
+          break;
+        }
+        dictionary.put( string, entries.size() );
+        entries.add( string );
+      }
+    }
+
+    if ( dictionary != null && !strings.isEmpty() ) {
+      columnOutput.writeByte( DataSetBinaryFormat.ENCODING_DICTIONARY );
+      columnOutput.write( nulls );
+      DataSetBinaryFormat.writeVarLong( columnOutput, entries.size() );
+      for ( String entry : entries ) {
+        DataSetBinaryFormat.writeString( columnOutput, entry );
+      }
+      for ( String string : strings ) {
+        DataSetBinaryFormat.writeVarLong( columnOutput, dictionary.get( string ) );
+      }
+    } else {
+      columnOutput.writeByte( DataSetBinaryFormat.ENCODING_PLAIN );
+      columnOutput.write( nulls );
+      for ( String string : strings ) {
+        DataSetBinaryFormat.writeString( columnOutput, string );
+      }
+    }
+  }
+
+  @Override
+  public void close() throws KettleException {
+    try {
+      if ( !chunkRows.isEmpty() ) {
+        writeChunk();
+      }
+      outputStream.flush();
+    } finally {
+      try {
+        outputStream.close();
+      } catch ( IOException e ) {
+        throw new KettleException( "Error closing binary data set file", e );
+      }
+    }
+  }
+}
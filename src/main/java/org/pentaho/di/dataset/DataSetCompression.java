@@ -0,0 +1,161 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The compression codecs available for data set files.
+ * The codec of a file is recognized by its extension, which is appended to the normal extension of the file.
+ */
+public enum DataSetCompression {
+  None( "" ),
+  GZip( ".gz" ),
+  Deflate( ".deflate" ),
+  Zip( ".zip" ),
+  ;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private String extension;
+
+  DataSetCompression( String extension ) {
+    this.extension = extension;
+  }
+
+  /**
+   * Gets extension
+   *
+   * @return value of extension, appended to the filename of a compressed file
+   */
+  public String getExtension() {
+    return extension;
+  }
+
+  public static String[] getNames() {
+    String names[] = new String[ values().length ];
+    for ( int i = 0; i < names.length; i++ ) {
+      names[ i ] = values()[ i ].name();
+    }
+    return names;
+  }
+
+  public static DataSetCompression fromName( String name ) {
+    for ( DataSetCompression compression : values() ) {
+      if ( compression.name().equalsIgnoreCase( name ) ) {
+        return compression;
+      }
+    }
+    return None;
+  }
+
+  /**
+   * @param filename The name of a data set file
+   * @return The compression of the file, detected from its extension
+   */
+  public static DataSetCompression fromFilename( String filename ) {
+    if ( filename != null ) {
+      String lowerCase = filename.toLowerCase();
+      for ( DataSetCompression compression : values() ) {
+        if ( compression != None && lowerCase.endsWith( compression.extension ) ) {
+          return compression;
+        }
+      }
+    }
+    return None;
+  }
+
+  /**
+   * @param inputStream The stream of the file
+   * @return A stream decompressing the content of the file while it's being read
+   * @throws IOException
+   */
+  public InputStream decompress( InputStream inputStream ) throws IOException {
+    switch ( this ) {
+      case GZip:
+        return new GZIPInputStream( inputStream, BUFFER_SIZE );
+      case Deflate:
+        return new InflaterInputStream( inputStream, new Inflater(), BUFFER_SIZE ) {
+          @Override public void close() throws IOException {
+            // We passed our own inflater so it's not released by the stream
+            //
+            try {
+              super.close();
+            } finally {
+              inf.end();
+            }
+          }
+        };
+      case Zip:
+        ZipInputStream zipInputStream = new ZipInputStream( inputStream );
+        if ( zipInputStream.getNextEntry() == null ) {
+          zipInputStream.close();
+          throw new IOException( "No data set file found in zip file" );
+        }
+        return zipInputStream;
+      default:
+        return inputStream;
+    }
+  }
+
+  /**
+   * @param outputStream The stream of the file
+   * @param entryName    The name of the entry, only used by zip files
+   * @return A stream compressing everything that's written to the file
+   * @throws IOException
+   */
+  public OutputStream compress( OutputStream outputStream, String entryName ) throws IOException {
+    switch ( this ) {
+      case GZip:
+        return new GZIPOutputStream( outputStream, BUFFER_SIZE );
+      case Deflate:
+        return new DeflaterOutputStream( outputStream, new Deflater(), BUFFER_SIZE ) {
+          @Override public void close() throws IOException {
+            try {
+              super.close();
+            } finally {
+              def.end();
+            }
+          }
+        };
+      case Zip:
+        ZipOutputStream zipOutputStream = new ZipOutputStream( outputStream );
+        zipOutputStream.putNextEntry( new ZipEntry( entryName ) );
+        return zipOutputStream;
+      default:
+        return outputStream;
+    }
+  }
+}
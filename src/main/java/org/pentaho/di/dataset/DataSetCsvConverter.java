@@ -0,0 +1,227 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * The conversion plan for the columns read from a CSV data set file.
+ * It's calculated once from the data set row metadata so that we don't need to figure out how to convert every single value.
+ * The formats written by the CSV data set group (Integer "0", Number "0.#" and Date "yyyyMMdd-HHmmss.SSS") are parsed directly.
+ * Everything else, including values which don't look like what we write, goes through the standard Kettle conversion.
+ */
+public class DataSetCsvConverter {
+
+  public static final String INTEGER_MASK = "0";
+  public static final String NUMBER_MASK = "0.#";
+  public static final String DATE_MASK = "yyyyMMdd-HHmmss.SSS";
+
+  private static final int CONVERT_GENERIC = 0;
+  private static final int CONVERT_STRING = 1;
+  private static final int CONVERT_INTEGER = 2;
+  private static final int CONVERT_NUMBER = 3;
+  private static final int CONVERT_DATE = 4;
+
+  private final ValueMetaInterface[] valueMetas;
+  private final ValueMetaString[] stringMetas;
+  private final int[] conversions;
+  private final Calendar[] calendars;
+
+  /**
+   * @param setRowMeta   The row metadata of all the columns in the file
+   * @param fieldIndexes The indexes of the columns to convert, in the order in which they'll be converted
+   */
+  public DataSetCsvConverter( RowMetaInterface setRowMeta, int[] fieldIndexes ) {
+    valueMetas = new ValueMetaInterface[ fieldIndexes.length ];
+    stringMetas = new ValueMetaString[ fieldIndexes.length ];
+    conversions = new int[ fieldIndexes.length ];
+    calendars = new Calendar[ fieldIndexes.length ];
+
+    for ( int i = 0; i < fieldIndexes.length; i++ ) {
+      ValueMetaInterface valueMeta = setRowMeta.getValueMeta( fieldIndexes[ i ] );
+      valueMetas[ i ] = valueMeta;
+
+      ValueMetaString stringMeta = new ValueMetaString( valueMeta.getName() );
+      stringMeta.setConversionMetadata( valueMeta );
+      stringMetas[ i ] = stringMeta;
+
+      conversions[ i ] = determineConversion( valueMeta );
+      if ( conversions[ i ] == CONVERT_DATE ) {
+        Calendar calendar = new GregorianCalendar( valueMeta.getDateFormatTimeZone() );
+        calendar.setLenient( false );
+        calendars[ i ] = calendar;
+      }
+    }
+  }
+
+  private static int determineConversion( ValueMetaInterface valueMeta ) {
+    if ( valueMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL
+      || valueMeta.getTrimType() != ValueMetaInterface.TRIM_TYPE_NONE ) {
+      return CONVERT_GENERIC;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return CONVERT_STRING;
+      case ValueMetaInterface.TYPE_INTEGER:
+        return INTEGER_MASK.equals( valueMeta.getConversionMask() ) ? CONVERT_INTEGER : CONVERT_GENERIC;
+      case ValueMetaInterface.TYPE_NUMBER:
+        if ( NUMBER_MASK.equals( valueMeta.getConversionMask() ) && ".".equals( valueMeta.getDecimalSymbol() ) ) {
+          return CONVERT_NUMBER;
+        }
+        return CONVERT_GENERIC;
+      case ValueMetaInterface.TYPE_DATE:
+        if ( DATE_MASK.equals( valueMeta.getConversionMask() ) && valueMeta.getDateFormatTimeZone() != null ) {
+          return CONVERT_DATE;
+        }
+        return CONVERT_GENERIC;
+      default:
+        return CONVERT_GENERIC;
+    }
+  }
+
+  /**
+   * Convert a value read from the file to the data type of the data set field
+   *
+   * @param index The index of the converted column (not the index in the file)
+   * @param value The string value read from the file
+   * @return The converted value
+   * @throws KettleValueException In case the value could not be converted
+   */
+  public Object convert( int index, String value ) throws KettleValueException {
+    if ( value != null && !value.isEmpty() ) {
+      Object converted;
+      switch ( conversions[ index ] ) {
+        case CONVERT_STRING:
+          return value;
+        case CONVERT_INTEGER:
+          converted = parseInteger( value );
+          break;
+        case CONVERT_NUMBER:
+          converted = parseNumber( value );
+          break;
+        case CONVERT_DATE:
+          converted = parseDate( calendars[ index ], value );
+          break;
+        default:
+          converted = null;
+          break;
+      }
+      if ( converted != null ) {
+        return converted;
+      }
+    }
+    return valueMetas[ index ].convertData( stringMetas[ index ], value );
+  }
+
+  /**
+   * @return The parsed integer or null if the value isn't a plain number of digits
+   */
+  private static Long parseInteger( String value ) {
+    int length = value.length();
+    int start = value.charAt( 0 ) == '-' ? 1 : 0;
+    if ( length == start || length - start > 18 ) {
+      return null;
+    }
+    long result = 0;
+    for ( int i = start; i < length; i++ ) {
+      char c = value.charAt( i );
+      if ( c < '0' || c > '9' ) {
+        return null;
+      }
+      result = result * 10 + ( c - '0' );
+    }
+    return start == 0 ? result : -result;
+  }
+
+  /**
+   * @return The parsed number or null if the value isn't of the form [-]digits[.digits]
+   */
+  private static Double parseNumber( String value ) {
+    int length = value.length();
+    int start = value.charAt( 0 ) == '-' ? 1 : 0;
+    boolean digits = false;
+    boolean decimal = false;
+    for ( int i = start; i < length; i++ ) {
+      char c = value.charAt( i );
+      if ( c >= '0' && c <= '9' ) {
+        digits = true;
+      } else if ( c == '.' && !decimal ) {
+        decimal = true;
+      } else {
+        return null;
+      }
+    }
+    if ( !digits ) {
+      return null;
+    }
+    return Double.parseDouble( value );
+  }
+
+  /**
+   * @return The parsed date or null if the value is not a valid date in format yyyyMMdd-HHmmss.SSS
+   */
+  private static java.util.Date parseDate( Calendar calendar, String value ) {
+    if ( value.length() != DATE_MASK.length() || value.charAt( 8 ) != '-' || value.charAt( 15 ) != '.' ) {
+      return null;
+    }
+    int year = digits( value, 0, 4 );
+    int month = digits( value, 4, 6 );
+    int day = digits( value, 6, 8 );
+    int hour = digits( value, 9, 11 );
+    int minute = digits( value, 11, 13 );
+    int second = digits( value, 13, 15 );
+    int millisecond = digits( value, 16, 19 );
+    if ( year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millisecond < 0 ) {
+      return null;
+    }
+    try {
+      calendar.clear();
+      calendar.set( year, month - 1, day, hour, minute, second );
+      calendar.set( Calendar.MILLISECOND, millisecond );
+      return calendar.getTime();
+    } catch ( IllegalArgumentException e ) {
+      // Not a valid date, let the standard conversion handle it
+      //
+      return null;
+    }
+  }
+
+  private static int digits( String value, int from, int to ) {
+    int result = 0;
+    for ( int i = from; i < to; i++ ) {
+      char c = value.charAt( i );
+      if ( c < '0' || c > '9' ) {
+        return -1;
+      }
+      result = result * 10 + ( c - '0' );
+    }
+    return result;
+  }
+}
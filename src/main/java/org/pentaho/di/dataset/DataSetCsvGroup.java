@@ -2,35 +2,33 @@ package org.pentaho.di.dataset;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.csv.QuoteMode;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
-import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
-import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.dataset.util.DataSetConst;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -47,7 +45,7 @@ public class DataSetCsvGroup {
    * @param group
    * @return
    */
-  private static String getDataSetFolder( DataSetGroup group ) {
+  public static String getDataSetFolder( DataSetGroup group ) {
     String folderName = group.getFolderName();
     if ( StringUtils.isEmpty( folderName ) ) {
       folderName = System.getProperty( VARIABLE_DATASETS_BASE_PATH );
@@ -69,18 +67,18 @@ public class DataSetCsvGroup {
     return folderName;
   }
 
-  private static void setValueFormats( RowMetaInterface rowMeta ) {
+  public static void setValueFormats( RowMetaInterface rowMeta ) {
     for ( ValueMetaInterface valueMeta : rowMeta.getValueMetaList() ) {
       if ( StringUtils.isEmpty( valueMeta.getConversionMask() ) ) {
         switch ( valueMeta.getType() ) {
           case ValueMetaInterface.TYPE_INTEGER:
-            valueMeta.setConversionMask( "0" );
+            valueMeta.setConversionMask( DataSetCsvConverter.INTEGER_MASK );
             break;
           case ValueMetaInterface.TYPE_NUMBER:
-            valueMeta.setConversionMask( "0.#" );
+            valueMeta.setConversionMask( DataSetCsvConverter.NUMBER_MASK );
             break;
           case ValueMetaInterface.TYPE_DATE:
-            valueMeta.setConversionMask( "yyyyMMdd-HHmmss.SSS" );
+            valueMeta.setConversionMask( DataSetCsvConverter.DATE_MASK );
             break;
           default:
             break;
@@ -90,51 +88,112 @@ public class DataSetCsvGroup {
   }
 
   public static String getDataSetFilename( DataSetGroup dataSetGroup, String tableName ) {
+    return getDataSetFilename( dataSetGroup, tableName, getCompression( dataSetGroup ) );
+  }
+
+  /**
+   * @param dataSetGroup The data set group
+   * @param tableName    The table name of the data set
+   * @param compression  The compression of the file
+   * @return The name of the data set file with the extension of the compression appended
+   */
+  public static String getDataSetFilename( DataSetGroup dataSetGroup, String tableName, DataSetCompression compression ) {
     String setFolderName = getDataSetFolder( dataSetGroup );
-    setFolderName += tableName + ".csv";
+    setFolderName += tableName + ".csv" + compression.getExtension();
     return setFolderName;
   }
 
+  private static DataSetCompression getCompression( DataSetGroup dataSetGroup ) {
+    return dataSetGroup.getCompression() == null ? DataSetCompression.None : dataSetGroup.getCompression();
+  }
+
+  /**
+   * Find the file of a data set.
+   * If the file with the compression of the group doesn't exist we look for a file compressed in another way.
+   * That way the files keep on working when the compression of the group is changed, until they're written again.
+   *
+   * @param dataSetGroup The data set group
+   * @param tableName    The table name of the data set
+   * @return The data set file.  If no file exists the file with the compression of the group is returned.
+   * @throws KettleException
+   */
+  public static FileObject getDataSetFile( DataSetGroup dataSetGroup, String tableName ) throws KettleException {
+    String dataSetFilename = getDataSetFilename( dataSetGroup, tableName );
+    try {
+      FileObject file = KettleVFS.getFileObject( dataSetFilename );
+      if ( file.exists() ) {
+        return file;
+      }
+      for ( DataSetCompression compression : DataSetCompression.values() ) {
+        FileObject compressedFile = KettleVFS.getFileObject( getDataSetFilename( dataSetGroup, tableName, compression ) );
+        if ( compressedFile.exists() ) {
+          return compressedFile;
+        }
+      }
+      return file;
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to find data set file '" + dataSetFilename + "'", e );
+    }
+  }
+
 
   public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
+    try ( DataSetRowReader rowReader = getRowReader( log, group, dataSet ) ) {
+      return DataSetConst.readAllRows( rowReader );
+    }
+  }
+
+  /**
+   * Open a reader on all the rows of the data set in the order of the file.
+   *
+   * @param log     the logging channel to which you can write.
+   * @param group   the data set group
+   * @param dataSet the data set to read
+   * @return A reader handing out the rows while the file is being parsed
+   * @throws KettleException
+   */
+  public static final DataSetRowReader getRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
     RowMetaInterface setRowMeta = dataSet.getSetRowMeta( true );
     setValueFormats( setRowMeta );
-    String dataSetFilename = getDataSetFilename( group, dataSet.getTableName() );
-    List<Object[]> rows = new ArrayList<>();
-    final ValueMetaString constantValueMeta = new ValueMetaString( "constant" );
-
     try {
-      FileObject file = KettleVFS.getFileObject( dataSetFilename );
+      FileObject file = getDataSetFile( group, dataSet.getTableName() );
       if ( !file.exists() ) {
         // This is fine.  We haven't put rows in yet.
         //
-        return rows;
+        return new DataSetRowListReader( new ArrayList<Object[]>() );
       }
 
-      try (
-        Reader reader = new InputStreamReader( new BufferedInputStream( KettleVFS.getInputStream( file ) ) );
-        CSVParser csvParser = new CSVParser( reader, getCsvFormat( setRowMeta ) );
-      ) {
-        for ( CSVRecord csvRecord : csvParser ) {
-          if ( csvRecord.getRecordNumber() > 1 ) {
-            Object[] row = RowDataUtil.allocateRowData( setRowMeta.size() );
-            for ( int i = 0; i < setRowMeta.size(); i++ ) {
-              ValueMetaInterface valueMeta = setRowMeta.getValueMeta( i ).clone();
-              constantValueMeta.setConversionMetadata( valueMeta );
-              String value = csvRecord.get( i );
-              row[ i ] = valueMeta.convertData( constantValueMeta, value );
-            }
-            rows.add( row );
-          }
-        }
+      int[] fieldIndexes = new int[ setRowMeta.size() ];
+      for ( int i = 0; i < fieldIndexes.length; i++ ) {
+        fieldIndexes[ i ] = i;
       }
-      return rows;
+      return openRowReader( dataSet.getName(), file, setRowMeta, fieldIndexes );
     } catch ( Exception e ) {
       throw new KettleException( "Unable to get all rows for CSV data set '" + dataSet.getName() + "'", e );
     }
   }
 
 
+  /**
+   * Open a reader on a CSV data set file.
+   * Large uncompressed files on the local file system are parsed in parallel, other files are parsed sequentially.
+   * Compressed files are decompressed while they're being parsed.
+   *
+   * @param dataSetName  The name of the data set, for error reporting
+   * @param file         The CSV file to read
+   * @param setRowMeta   The row metadata of all the columns in the file
+   * @param fieldIndexes The indexes of the columns in the file to return, in the given order
+   * @return A reader handing out the rows in the order of the file
+   * @throws KettleException
+   */
+  public static final DataSetRowReader openRowReader( String dataSetName, FileObject file, RowMetaInterface setRowMeta, int[] fieldIndexes ) throws KettleException {
+    if ( DataSetCompression.fromFilename( file.getName().getBaseName() ) == DataSetCompression.None
+      && DataSetCsvParallelRowReader.isApplicable( file ) ) {
+      return new DataSetCsvParallelRowReader( dataSetName, DataSetCsvParallelRowReader.getLocalFile( file ), setRowMeta, fieldIndexes );
+    }
+    return new DataSetCsvRowReader( dataSetName, file, setRowMeta, fieldIndexes );
+  }
+
   /**
    * Get the rows for this data set in the format of the data set.
    *
@@ -144,6 +203,23 @@ public class DataSetCsvGroup {
    * @throws KettleException
    */
   public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    try ( DataSetRowReader rowReader = getRowReader( log, group, dataSet, location ) ) {
+      return DataSetConst.readAllRows( rowReader );
+    }
+  }
+
+  /**
+   * Open a reader on the rows for this data set in the format of the data set.
+   * If the location doesn't ask for a particular field order, or if the rows are stored in that order,
+   * the rows are handed out while the file is being parsed.
+   * Otherwise the rows are read and sorted first.
+   *
+   * @param log      the logging channel to which you can write.
+   * @param location The fields to obtain in the order given
+   * @return A reader for the rows of the given location
+   * @throws KettleException
+   */
+  public static final DataSetRowReader getRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
 
     RowMetaInterface setRowMeta = dataSet.getSetRowMeta( false );
 
@@ -152,17 +228,18 @@ public class DataSetCsvGroup {
     final RowMetaInterface outputRowMeta = dataSet.getMappedDataSetFieldsRowMeta( location );
 
     setValueFormats( setRowMeta );
-    String dataSetFilename = getDataSetFilename( group, dataSet.getTableName() );
-    List<Object[]> rows = new ArrayList<>();
-    final ValueMetaString constantValueMeta = new ValueMetaString( "constant" );
-
     try {
 
-      FileObject file = KettleVFS.getFileObject( dataSetFilename );
+      FileObject file = getDataSetFile( group, dataSet.getTableName() );
       if ( !file.exists() ) {
         // This is fine.  We haven't put rows in yet.
         //
-        return rows;
+        return new DataSetRowListReader( new ArrayList<Object[]>() );
+      }
+
+      if ( outputRowMeta.isEmpty() ) {
+        log.logError( "WARNING: No field mappings selected for data set '" + dataSet.getName() + "', returning empty set of rows" );
+        return new DataSetRowListReader( new ArrayList<Object[]>() );
       }
 
       List<String> sortFields = location.getFieldOrder();
@@ -177,57 +254,14 @@ public class DataSetCsvGroup {
         dataSetFieldIndexes[ i ] = setRowMeta.indexOfValue( dataSetFieldName );
       }
 
-      try (
-        Reader reader = new InputStreamReader( new BufferedInputStream( KettleVFS.getInputStream( file ) ) );
-        CSVParser csvParser = new CSVParser( reader, CSVFormat.DEFAULT );
-      ) {
-        for ( CSVRecord csvRecord : csvParser ) {
-          if ( csvRecord.getRecordNumber() > 1 ) {
-            Object[] row = RowDataUtil.allocateRowData( dataSetFieldIndexes.length );
-
-            // Only get certain values...
-            //
-            for ( int i = 0; i < dataSetFieldIndexes.length; i++ ) {
-              int index = dataSetFieldIndexes[ i ];
-
-              ValueMetaInterface valueMeta = setRowMeta.getValueMeta( index );
-              constantValueMeta.setConversionMetadata( valueMeta );
-              String value = csvRecord.get( index );
-              row[ i ] = valueMeta.convertData( constantValueMeta, value );
-            }
-            rows.add( row );
-          }
-        }
-      }
-
-      // Which fields are we sorting on (if any)
-      //
-      int[] sortIndexes = new int[ sortFields.size() ];
-      for ( int i = 0; i < sortIndexes.length; i++ ) {
-        sortIndexes[ i ] = outputRowMeta.indexOfValue( sortFields.get( i ) );
-      }
-
-      if ( outputRowMeta.isEmpty() ) {
-        log.logError( "WARNING: No field mappings selected for data set '" + dataSet.getName() + "', returning empty set of rows" );
-        return new ArrayList<>();
-      }
-
-      if ( !sortFields.isEmpty() ) {
-
-        // Sort the rows...
+      DataSetRowReader csvRowReader = openRowReader( dataSet.getName(), file, setRowMeta, dataSetFieldIndexes );
+      if ( sortFields.isEmpty() || dataSet.isSortedOn( sortFields ) ) {
+        // No sorting needed or the rows are stored sorted, simply stream the rows
         //
-        Collections.sort( rows, new Comparator<Object[]>() {
-          @Override public int compare( Object[] o1, Object[] o2 ) {
-            try {
-              return outputRowMeta.compare( o1, o2, sortIndexes );
-            } catch ( KettleValueException e ) {
-              throw new RuntimeException( "Unable to compare 2 rows", e );
-            }
-          }
-        } );
+        return csvRowReader;
       }
 
-      return rows;
+      return DataSetConst.getSortedRowReader( csvRowReader, outputRowMeta, sortFields );
 
     } catch (
       Exception e ) {
@@ -239,51 +273,173 @@ public class DataSetCsvGroup {
 
   public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
                                              RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    writeDataSetData( loggingObject, dataSetGroup, tableName, rowMeta, rows, DataSetWriteMode.Replace, null, null );
+  }
+
+  /**
+   * Write the rows to the data set file.
+   * In replace mode, or when there's no file yet, a new file is written.
+   * In append mode the rows are added at the end of an uncompressed or gzip file if the set isn't stored sorted
+   * and the file has the same columns.
+   * In all other cases the stored rows are streamed through a {@link DataSetRowMerger} into a temporary file which
+   * then replaces the data set file.
+   *
+   * @param writeMode   Replace the stored rows, append to them or upsert on the key columns
+   * @param keyColumns  The columns identifying a row in upsert mode
+   * @param sortColumns The columns the rows are stored sorted on, null or empty if they're not sorted
+   */
+  public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
+                                             RowMetaInterface rowMeta, List<Object[]> rows, DataSetWriteMode writeMode,
+                                             List<String> keyColumns, List<String> sortColumns ) throws KettleException {
 
     String dataSetFilename = getDataSetFilename( dataSetGroup, tableName );
 
     RowMetaInterface setRowMeta = rowMeta.clone(); // just making sure
     setValueFormats( setRowMeta );
 
-    OutputStream outputStream = null;
-    BufferedWriter writer = null;
-    CSVPrinter csvPrinter = null;
+    LogChannelInterface log = new LogChannel( loggingObject );
+    long startTime = System.currentTimeMillis();
+
+    FileObject tempFile = null;
     try {
 
       FileObject file = KettleVFS.getFileObject( dataSetFilename );
-      outputStream = KettleVFS.getOutputStream( file, false );
-      writer = new BufferedWriter( new OutputStreamWriter( outputStream ) );
-      CSVFormat csvFormat = getCsvFormat( rowMeta );
-      csvPrinter = new CSVPrinter( writer, csvFormat );
-
-      for ( Object[] row : rows ) {
-        List<String> strings = new ArrayList<>();
-        for ( int i = 0; i < setRowMeta.size(); i++ ) {
-          ValueMetaInterface valueMeta = setRowMeta.getValueMeta( i );
-          String string = valueMeta.getString( row[ i ] );
-          strings.add( string );
+      DataSetCompression compression = getCompression( dataSetGroup );
+
+      FileObject storedFile = null;
+      String[] storedColumns = null;
+      if ( writeMode != DataSetWriteMode.Replace ) {
+        storedFile = getDataSetFile( dataSetGroup, tableName );
+        if ( storedFile.exists() ) {
+          storedColumns = readHeader( storedFile );
         }
-        csvPrinter.printRecord( strings );
       }
-      csvPrinter.flush();
 
+      if ( storedColumns == null || storedColumns.length == 0 ) {
+        // Nothing stored yet, simply write the rows
+        //
+        if ( writeMode == DataSetWriteMode.Upsert ) {
+          rows = new DataSetRowMerger( rowMeta, rows, writeMode, keyColumns, null ).getNewRows();
+        }
+        long rowsWritten;
+        try ( DataSetCsvRowWriter writer = new DataSetCsvRowWriter( openChannel( file, compression, tableName, false ), setRowMeta ) ) {
+          for ( Object[] row : rows ) {
+            writer.writeRow( row );
+          }
+          rowsWritten = writer.getRowsWritten();
+        }
+        deleteOtherFiles( dataSetGroup, tableName, compression );
+        logWritten( log, dataSetFilename, rowsWritten, writeMode, startTime );
+        return;
+      }
 
-    } catch ( Exception e ) {
-      throw new KettleException( "Unable to write data set to file '" + dataSetFilename + "'", e );
-    } finally {
-      try {
-        if ( csvPrinter != null ) {
-          csvPrinter.close();
+      DataSetCompression storedCompression = DataSetCompression.fromFilename( storedFile.getName().getBaseName() );
+      if ( writeMode == DataSetWriteMode.Append && ( sortColumns == null || sortColumns.isEmpty() )
+        && Arrays.equals( storedColumns, rowMeta.getFieldNames() )
+        && ( storedCompression == DataSetCompression.None || storedCompression == DataSetCompression.GZip ) ) {
+        // A gzip file can consist of several compressed members one after the other
+        //
+        long rowsWritten;
+        WritableByteChannel channel = openChannel( storedFile, storedCompression, tableName, true );
+        try ( DataSetCsvRowWriter writer = new DataSetCsvRowWriter( channel, setRowMeta, DataSetCsvRowWriter.DEFAULT_BUFFER_SIZE, false ) ) {
+          for ( Object[] row : rows ) {
+            writer.writeRow( row );
+          }
+          rowsWritten = writer.getRowsWritten();
         }
-        if ( writer != null ) {
-          writer.close();
+        logWritten( log, storedFile.getName().getURI(), rowsWritten, writeMode, startTime );
+        return;
+      }
+
+      // Read the stored columns by name, in the order of the rows to write
+      //
+      RowMetaInterface storedRowMeta = new RowMeta();
+      for ( String storedColumn : storedColumns ) {
+        ValueMetaInterface valueMeta = setRowMeta.searchValueMeta( storedColumn );
+        storedRowMeta.addValueMeta( valueMeta != null ? valueMeta.clone() : new ValueMetaString( storedColumn ) );
+      }
+      int[] fieldIndexes = new int[ setRowMeta.size() ];
+      for ( int i = 0; i < fieldIndexes.length; i++ ) {
+        fieldIndexes[ i ] = Arrays.asList( storedColumns ).indexOf( setRowMeta.getValueMeta( i ).getName() );
+        if ( fieldIndexes[ i ] < 0 ) {
+          throw new KettleException( "Column '" + setRowMeta.getValueMeta( i ).getName() + "' is not stored in data set file '"
+            + storedFile.getName().getURI() + "', replace the rows instead" );
         }
-        if ( outputStream != null ) {
-          outputStream.close();
+      }
+
+      DataSetRowMerger merger = new DataSetRowMerger( rowMeta, rows, writeMode, keyColumns, sortColumns );
+      tempFile = KettleVFS.getFileObject( dataSetFilename + ".tmp" );
+      long rowsWritten;
+      try ( DataSetRowReader storedRows = new DataSetCsvRowReader( tableName, storedFile, storedRowMeta, fieldIndexes );
+            DataSetCsvRowWriter writer = new DataSetCsvRowWriter( openChannel( tempFile, compression, tableName, false ), setRowMeta ) ) {
+        merger.merge( storedRows, writer::writeRow );
+        rowsWritten = writer.getRowsWritten();
+      }
+      tempFile.moveTo( file );
+      tempFile = null;
+      deleteOtherFiles( dataSetGroup, tableName, compression );
+
+      logWritten( log, dataSetFilename, rowsWritten, writeMode, startTime );
+      log.logBasic( "Kept " + merger.getNrKept() + " and replaced " + merger.getNrReplaced() + " stored rows of data set file " + dataSetFilename );
+
+    } catch ( Exception e ) {
+      if ( tempFile != null ) {
+        try {
+          tempFile.delete();
+        } catch ( Exception deleteException ) {
+          log.logError( "Unable to remove temporary data set file", deleteException );
         }
-      } catch ( IOException e ) {
-        throw new KettleException( "Error closing file " + dataSetFilename + " : ", e );
       }
+      throw new KettleException( "Unable to write data set to file '" + dataSetFilename + "'", e );
+    }
+  }
+
+  /**
+   * Uncompressed local files are written straight to a file channel, other files through a channel on the VFS stream
+   */
+  private static WritableByteChannel openChannel( FileObject file, DataSetCompression compression, String tableName, boolean append ) throws Exception {
+    File localFile = compression == DataSetCompression.None ? DataSetCsvParallelRowReader.getLocalFile( file ) : null;
+    if ( localFile != null ) {
+      return FileChannel.open( localFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING );
+    }
+    return Channels.newChannel( compression.compress( KettleVFS.getOutputStream( file, append ), tableName + ".csv" ) );
+  }
+
+  /**
+   * Remove the files of the data set compressed in another way so they're not picked up anymore
+   */
+  private static void deleteOtherFiles( DataSetGroup dataSetGroup, String tableName, DataSetCompression compression ) throws Exception {
+    for ( DataSetCompression otherCompression : DataSetCompression.values() ) {
+      if ( otherCompression != compression ) {
+        KettleVFS.getFileObject( getDataSetFilename( dataSetGroup, tableName, otherCompression ) ).delete();
+      }
+    }
+  }
+
+  private static void logWritten( LogChannelInterface log, String filename, long rowsWritten, DataSetWriteMode writeMode, long startTime ) {
+    long duration = Math.max( 1L, System.currentTimeMillis() - startTime );
+    log.logBasic( "Wrote " + rowsWritten + " rows to data set file " + filename + " (" + writeMode.name() + ") in " + duration + "ms ("
+      + ( rowsWritten * 1000L / duration ) + " rows/s)" );
+  }
+
+  /**
+   * @param file The data set file
+   * @return The column names in the header of the file
+   */
+  private static String[] readHeader( FileObject file ) throws Exception {
+    DataSetCompression compression = DataSetCompression.fromFilename( file.getName().getBaseName() );
+    try ( CSVParser parser = new CSVParser( new InputStreamReader( compression.decompress( KettleVFS.getInputStream( file ) ) ), CSVFormat.DEFAULT ) ) {
+      Iterator<CSVRecord> records = parser.iterator();
+      if ( !records.hasNext() ) {
+        return new String[ 0 ];
+      }
+      CSVRecord header = records.next();
+      String[] columns = new String[ header.size() ];
+      for ( int i = 0; i < columns.length; i++ ) {
+        columns[ i ] = header.get( i );
+      }
+      return columns;
     }
   }
 
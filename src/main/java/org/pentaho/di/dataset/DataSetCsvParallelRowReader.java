@@ -0,0 +1,288 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+import java.io.CharArrayReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads a large local CSV data set file by parsing chunks of it in parallel on the common fork/join pool.
+ * Chunks end after a line feed which isn't inside a quoted value: the quotes are counted from the start of the file
+ * while the chunk boundaries are determined, just ahead of the parsing.
+ * The rows are handed out in the order of the file.  Only a few chunks per thread are parsed ahead of the reader.
+ * <p>
+ * Every chunk is read with a positional read of the file channel into its own buffer.  The file isn't memory mapped
+ * since a mapping keeps the file locked on Windows until it's garbage collected, which would make writing the data set
+ * after reading it fail.
+ * <p>
+ * The boundaries are found on the bytes of the file so this only works for character sets which encode quotes and
+ * line feeds as single bytes that can't appear inside other characters, see {@link #isApplicable(FileObject)}.
+ */
+public class DataSetCsvParallelRowReader implements DataSetRowReader {
+
+  /**
+   * Smaller files are read faster by a single thread
+   */
+  public static final long MIN_PARALLEL_FILE_SIZE = 16L * 1024 * 1024;
+
+  public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+  private final String dataSetName;
+  private final RowMetaInterface setRowMeta;
+  private final int[] fieldIndexes;
+  private final int chunkSize;
+  private final Charset charset;
+
+  private FileChannel channel;
+  private final long fileSize;
+  private final int maxChunksAhead;
+  private final Deque<ForkJoinTask<List<Object[]>>> pendingChunks;
+
+  private long nextChunkStart;
+  private long scanPosition;
+  private boolean inQuotes;
+  private final ByteBuffer scanBuffer;
+  private long scanBufferStart;
+
+  private Iterator<Object[]> currentRows;
+
+  /**
+   * @param dataSetName  The name of the data set, for error reporting
+   * @param file         The local CSV file to read
+   * @param setRowMeta   The row metadata of all the columns in the file
+   * @param fieldIndexes The indexes of the columns in the file to return, in the given order
+   * @throws KettleException
+   */
+  public DataSetCsvParallelRowReader( String dataSetName, File file, RowMetaInterface setRowMeta, int[] fieldIndexes ) throws KettleException {
+    this( dataSetName, file, setRowMeta, fieldIndexes, DEFAULT_CHUNK_SIZE );
+  }
+
+  DataSetCsvParallelRowReader( String dataSetName, File file, RowMetaInterface setRowMeta, int[] fieldIndexes, int chunkSize ) throws KettleException {
+    this.dataSetName = dataSetName;
+    this.setRowMeta = setRowMeta;
+    this.fieldIndexes = fieldIndexes;
+    this.chunkSize = chunkSize;
+    this.charset = Charset.defaultCharset();
+    this.maxChunksAhead = Math.max( 2, ForkJoinPool.getCommonPoolParallelism() * 2 );
+    this.pendingChunks = new ArrayDeque<>();
+    this.scanBuffer = ByteBuffer.allocate( SCAN_BUFFER_SIZE );
+    this.scanBuffer.limit( 0 );
+
+    try {
+      channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+      fileSize = channel.size();
+      scheduleChunks();
+    } catch ( Exception e ) {
+      close();
+      throw new KettleException( "Unable to open CSV data set '" + dataSetName + "'", e );
+    }
+  }
+
+  /**
+   * @param file The data set file
+   * @return true if the file is local, large enough to be worth parsing in parallel and the default character set allows it
+   */
+  public static boolean isApplicable( FileObject file ) {
+    try {
+      if ( getLocalFile( file ) == null || file.getContent().getSize() < MIN_PARALLEL_FILE_SIZE ) {
+        return false;
+      }
+    } catch ( IOException e ) {
+      return false;
+    }
+    Charset charset = Charset.defaultCharset();
+    return charset.equals( StandardCharsets.UTF_8 ) || charset.equals( StandardCharsets.US_ASCII ) || charset.equals( StandardCharsets.ISO_8859_1 );
+  }
+
+  /**
+   * @param file The data set file
+   * @return The local file or null if the file isn't on the local file system
+   */
+  public static File getLocalFile( FileObject file ) {
+    if ( !"file".equals( file.getName().getScheme() ) ) {
+      return null;
+    }
+    try {
+      return new File( file.getName().getPathDecoded() );
+    } catch ( Exception e ) {
+      return null;
+    }
+  }
+
+  @Override
+  public Object[] getRow() throws KettleException {
+    while ( currentRows == null || !currentRows.hasNext() ) {
+      ForkJoinTask<List<Object[]>> chunk = pendingChunks.pollFirst();
+      if ( chunk == null ) {
+        return null;
+      }
+      try {
+        currentRows = chunk.join().iterator();
+        scheduleChunks();
+      } catch ( Exception e ) {
+        throw new KettleException( "Unable to read rows from CSV data set '" + dataSetName + "'", e );
+      }
+    }
+    return currentRows.next();
+  }
+
+  private void scheduleChunks() throws IOException {
+    while ( pendingChunks.size() < maxChunksAhead && nextChunkStart < fileSize ) {
+      long start = nextChunkStart;
+      long end = findChunkEnd( start );
+      pendingChunks.addLast( ForkJoinPool.commonPool().submit( new ChunkParser( start, end ) ) );
+      nextChunkStart = end;
+    }
+  }
+
+  /**
+   * Scan from the start of the chunk to the first line feed outside of quotes after the chunk size.
+   * Quotes inside quoted values are doubled so counting them keeps track of where we are.
+   */
+  private long findChunkEnd( long start ) throws IOException {
+    long target = Math.min( fileSize, start + chunkSize );
+    long position = scanPosition;
+    while ( position < fileSize ) {
+      byte b = scanByte( position );
+      position++;
+      if ( b == '"' ) {
+        inQuotes = !inQuotes;
+      } else if ( b == '\n' && !inQuotes && position >= target ) {
+        break;
+      }
+    }
+    scanPosition = position;
+    return position;
+  }
+
+  private byte scanByte( long position ) throws IOException {
+    if ( position >= scanBufferStart + scanBuffer.limit() ) {
+      scanBufferStart = position;
+      scanBuffer.clear();
+      scanBuffer.limit( (int) Math.min( SCAN_BUFFER_SIZE, fileSize - position ) );
+      readFully( scanBuffer, position );
+      scanBuffer.flip();
+    }
+    return scanBuffer.get( (int) ( position - scanBufferStart ) );
+  }
+
+  /**
+   * Fill the remaining space of the buffer with the bytes of the file at the given position.
+   * Positional reads don't change the position of the channel so the chunk parsers can read at the same time.
+   */
+  private void readFully( ByteBuffer buffer, long position ) throws IOException {
+    while ( buffer.hasRemaining() ) {
+      int read = channel.read( buffer, position );
+      if ( read < 0 ) {
+        throw new EOFException( "Unexpected end of CSV data set file" );
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Parses and converts the rows of a chunk of the file
+   */
+  private class ChunkParser implements Callable<List<Object[]>> {
+    private final long start;
+    private final long end;
+
+    private ChunkParser( long start, long end ) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public List<Object[]> call() throws Exception {
+      ByteBuffer bytes = ByteBuffer.allocate( (int) ( end - start ) );
+      readFully( bytes, start );
+      bytes.flip();
+      CharBuffer chars = charset.decode( bytes );
+
+      // Conversion keeps state so every chunk gets its own converter
+      //
+      DataSetCsvConverter converter = new DataSetCsvConverter( setRowMeta, fieldIndexes );
+      List<Object[]> rows = new ArrayList<>();
+      try ( DataSetCsvTokenizer tokenizer = new DataSetCsvTokenizer(
+        new CharArrayReader( chars.array(), chars.arrayOffset() + chars.position(), chars.remaining() ), fieldIndexes ) ) {
+        String[] values = new String[ tokenizer.getNrValues() ];
+
+        // The first chunk starts with the header
+        //
+        if ( start == 0 ) {
+          tokenizer.nextRecord( values );
+        }
+        while ( tokenizer.nextRecord( values ) ) {
+          Object[] row = RowDataUtil.allocateRowData( fieldIndexes.length );
+          for ( int i = 0; i < fieldIndexes.length; i++ ) {
+            row[ i ] = converter.convert( i, values[ fieldIndexes[ i ] ] );
+          }
+          rows.add( row );
+        }
+      }
+      return rows;
+    }
+  }
+
+  @Override
+  public void close() throws KettleException {
+    for ( ForkJoinTask<List<Object[]>> chunk : pendingChunks ) {
+      chunk.cancel( true );
+    }
+    pendingChunks.clear();
+    currentRows = null;
+    try {
+      if ( channel != null ) {
+        channel.close();
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error closing CSV data set '" + dataSetName + "'", e );
+    } finally {
+      channel = null;
+    }
+  }
+}
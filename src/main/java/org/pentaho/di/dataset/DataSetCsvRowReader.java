@@ -0,0 +1,104 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Reads the rows of a CSV data set file one by one while the file is being parsed.
+ * The header line of the file is skipped.
+ * Compressed files are decompressed while they're being read.
+ * Only the values of the requested columns are extracted from the file, the other columns are skipped.
+ */
+public class DataSetCsvRowReader implements DataSetRowReader {
+
+  private final String dataSetName;
+  private final int[] fieldIndexes;
+  private final DataSetCsvConverter converter;
+
+  private DataSetCsvTokenizer tokenizer;
+  private final String[] values;
+
+  /**
+   * @param dataSetName  The name of the data set, for error reporting
+   * @param file         The CSV file to read
+   * @param setRowMeta   The row metadata of all the columns in the file
+   * @param fieldIndexes The indexes of the columns in the file to return, in the given order
+   * @throws KettleException
+   */
+  public DataSetCsvRowReader( String dataSetName, FileObject file, RowMetaInterface setRowMeta, int[] fieldIndexes ) throws KettleException {
+    this.dataSetName = dataSetName;
+    this.fieldIndexes = fieldIndexes;
+    this.converter = new DataSetCsvConverter( setRowMeta, fieldIndexes );
+
+    try {
+      DataSetCompression compression = DataSetCompression.fromFilename( file.getName().getBaseName() );
+      tokenizer = new DataSetCsvTokenizer( new InputStreamReader( compression.decompress( KettleVFS.getInputStream( file ) ) ), fieldIndexes );
+      values = new String[ tokenizer.getNrValues() ];
+
+      // Skip the header
+      //
+      tokenizer.nextRecord( values );
+    } catch ( Exception e ) {
+      close();
+      throw new KettleException( "Unable to open CSV data set '" + dataSetName + "'", e );
+    }
+  }
+
+  @Override
+  public Object[] getRow() throws KettleException {
+    try {
+      if ( !tokenizer.nextRecord( values ) ) {
+        return null;
+      }
+      Object[] row = RowDataUtil.allocateRowData( fieldIndexes.length );
+      for ( int i = 0; i < fieldIndexes.length; i++ ) {
+        row[ i ] = converter.convert( i, values[ fieldIndexes[ i ] ] );
+      }
+      return row;
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to read row from CSV data set '" + dataSetName + "'", e );
+    }
+  }
+
+  @Override
+  public void close() throws KettleException {
+    try {
+      if ( tokenizer != null ) {
+        tokenizer.close();
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error closing CSV data set '" + dataSetName + "'", e );
+    } finally {
+      tokenizer = null;
+    }
+  }
+}
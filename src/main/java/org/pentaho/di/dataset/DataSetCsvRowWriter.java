@@ -0,0 +1,469 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Writes rows to a CSV data set file.
+ * The output is the same as printing the values of {@link ValueMetaInterface#getString(Object)}
+ * with the {@link DataSetCsvGroup#getCsvFormat(RowMetaInterface)} format: a header line, comma separated values,
+ * minimal quoting and CR LF line endings.
+ * <p>
+ * Every line is formatted in a reused character buffer and encoded into a large byte buffer which is written to a channel.
+ * The formats written by the CSV data set group (Integer "0", Number "0.#" and Date "yyyyMMdd-HHmmss.SSS") are
+ * formatted directly, Strings are copied.  Everything else goes through the standard Kettle conversion.
+ */
+public class DataSetCsvRowWriter implements AutoCloseable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private static final char DELIMITER = ',';
+  private static final char QUOTE = '"';
+
+  private static final int FORMAT_GENERIC = 0;
+  private static final int FORMAT_STRING = 1;
+  private static final int FORMAT_INTEGER = 2;
+  private static final int FORMAT_NUMBER = 3;
+  private static final int FORMAT_DATE = 4;
+
+  private WritableByteChannel channel;
+
+  private final ValueMetaInterface[] valueMetas;
+  private final int[] formats;
+  private final DecimalFormat[] decimalFormats;
+  private final char[] minusSigns;
+  private final Calendar[] calendars;
+  private final StringBuffer numberBuffer;
+  private final FieldPosition fieldPosition;
+
+  private char[] line;
+  private int length;
+  private CharBuffer lineChars;
+  private final ByteBuffer bytes;
+  private final CharsetEncoder encoder;
+
+  private long rowsWritten;
+
+  /**
+   * @param channel    The channel to write to, closed when the writer is closed
+   * @param setRowMeta The row metadata of the rows to write, the names of the values end up in the header
+   * @throws KettleException
+   */
+  public DataSetCsvRowWriter( WritableByteChannel channel, RowMetaInterface setRowMeta ) throws KettleException {
+    this( channel, setRowMeta, DEFAULT_BUFFER_SIZE );
+  }
+
+  /**
+   * @param channel    The channel to write to, closed when the writer is closed
+   * @param setRowMeta The row metadata of the rows to write, the names of the values end up in the header
+   * @param bufferSize The size of the byte buffer
+   * @throws KettleException
+   */
+  public DataSetCsvRowWriter( WritableByteChannel channel, RowMetaInterface setRowMeta, int bufferSize ) throws KettleException {
+    this( channel, setRowMeta, bufferSize, true );
+  }
+
+  /**
+   * @param channel     The channel to write to, closed when the writer is closed
+   * @param setRowMeta  The row metadata of the rows to write, the names of the values end up in the header
+   * @param bufferSize  The size of the byte buffer
+   * @param writeHeader true if the header line needs to be written, false to append rows to an existing file
+   * @throws KettleException
+   */
+  public DataSetCsvRowWriter( WritableByteChannel channel, RowMetaInterface setRowMeta, int bufferSize, boolean writeHeader ) throws KettleException {
+    this.channel = channel;
+
+    int nrValues = setRowMeta.size();
+    valueMetas = new ValueMetaInterface[ nrValues ];
+    formats = new int[ nrValues ];
+    decimalFormats = new DecimalFormat[ nrValues ];
+    minusSigns = new char[ nrValues ];
+    calendars = new Calendar[ nrValues ];
+    numberBuffer = new StringBuffer( 64 );
+    fieldPosition = new FieldPosition( 0 );
+
+    for ( int i = 0; i < nrValues; i++ ) {
+      ValueMetaInterface valueMeta = setRowMeta.getValueMeta( i );
+      valueMetas[ i ] = valueMeta;
+      formats[ i ] = determineFormat( valueMeta );
+      switch ( formats[ i ] ) {
+        case FORMAT_INTEGER:
+        case FORMAT_NUMBER:
+          decimalFormats[ i ] = valueMeta.getDecimalFormat( false );
+          minusSigns[ i ] = decimalFormats[ i ].getDecimalFormatSymbols().getMinusSign();
+          break;
+        case FORMAT_DATE:
+          calendars[ i ] = Calendar.getInstance( valueMeta.getDateFormatTimeZone() );
+          break;
+        default:
+          break;
+      }
+    }
+
+    line = new char[ 1024 ];
+    lineChars = CharBuffer.wrap( line );
+    bytes = ByteBuffer.allocateDirect( bufferSize );
+    encoder = Charset.defaultCharset().newEncoder()
+      .onMalformedInput( CodingErrorAction.REPLACE )
+      .onUnmappableCharacter( CodingErrorAction.REPLACE );
+
+    if ( !writeHeader ) {
+      return;
+    }
+    try {
+      length = 0;
+      for ( int i = 0; i < nrValues; i++ ) {
+        if ( i > 0 ) {
+          append( DELIMITER );
+        }
+        int start = length;
+        append( valueMetas[ i ].getName() );
+        quoteIfNeeded( start, i == 0 );
+      }
+      endLine();
+    } catch ( Exception e ) {
+      try {
+        channel.close();
+      } catch ( IOException ce ) {
+        // Report the original problem
+        //
+      }
+      throw new KettleException( "Unable to write the CSV data set header", e );
+    }
+  }
+
+  private static int determineFormat( ValueMetaInterface valueMeta ) {
+    if ( valueMeta.getStorageType() != ValueMetaInterface.STORAGE_TYPE_NORMAL
+      || valueMeta.getTrimType() != ValueMetaInterface.TRIM_TYPE_NONE
+      || valueMeta.isOutputPaddingEnabled() ) {
+      return FORMAT_GENERIC;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return FORMAT_STRING;
+      case ValueMetaInterface.TYPE_INTEGER:
+        return DataSetCsvConverter.INTEGER_MASK.equals( valueMeta.getConversionMask() ) ? FORMAT_INTEGER : FORMAT_GENERIC;
+      case ValueMetaInterface.TYPE_NUMBER:
+        return DataSetCsvConverter.NUMBER_MASK.equals( valueMeta.getConversionMask() ) ? FORMAT_NUMBER : FORMAT_GENERIC;
+      case ValueMetaInterface.TYPE_DATE:
+        if ( DataSetCsvConverter.DATE_MASK.equals( valueMeta.getConversionMask() ) && valueMeta.getDateFormatTimeZone() != null ) {
+          return FORMAT_DATE;
+        }
+        return FORMAT_GENERIC;
+      default:
+        return FORMAT_GENERIC;
+    }
+  }
+
+  /**
+   * Write a row to the file
+   *
+   * @param row The row to write, in the format of the row metadata
+   * @throws KettleException
+   */
+  public void writeRow( Object[] row ) throws KettleException {
+    try {
+      length = 0;
+      for ( int i = 0; i < valueMetas.length; i++ ) {
+        if ( i > 0 ) {
+          append( DELIMITER );
+        }
+        Object value = row[ i ];
+        if ( value == null ) {
+          // Nulls are never quoted
+          //
+          continue;
+        }
+        int start = length;
+        formatValue( i, value );
+        quoteIfNeeded( start, i == 0 );
+      }
+      endLine();
+      rowsWritten++;
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to write row " + ( rowsWritten + 1 ) + " to CSV data set file", e );
+    }
+  }
+
+  private void formatValue( int index, Object value ) throws KettleException {
+    switch ( formats[ index ] ) {
+      case FORMAT_STRING:
+        append( value.toString() );
+        return;
+      case FORMAT_INTEGER:
+        if ( value instanceof Long ) {
+          appendLong( (Long) value, minusSigns[ index ] );
+          return;
+        }
+        break;
+      case FORMAT_NUMBER:
+        if ( value instanceof Double ) {
+          numberBuffer.setLength( 0 );
+          decimalFormats[ index ].format( ( (Double) value ).doubleValue(), numberBuffer, fieldPosition );
+          append( numberBuffer );
+          return;
+        }
+        break;
+      case FORMAT_DATE:
+        if ( value instanceof Date && appendDate( calendars[ index ], (Date) value ) ) {
+          return;
+        }
+        break;
+      default:
+        break;
+    }
+    String string = valueMetas[ index ].getString( value );
+    if ( string != null ) {
+      append( string );
+    }
+  }
+
+  private void appendLong( long value, char minusSign ) {
+    if ( value == Long.MIN_VALUE ) {
+      // Can't be negated
+      //
+      append( minusSign );
+      append( "9223372036854775808" );
+      return;
+    }
+    if ( value < 0 ) {
+      append( minusSign );
+      value = -value;
+    }
+    int digits = 1;
+    for ( long rest = value / 10; rest > 0; rest /= 10 ) {
+      digits++;
+    }
+    ensureCapacity( digits );
+    int position = length + digits;
+    do {
+      line[ --position ] = (char) ( '0' + ( value % 10 ) );
+      value /= 10;
+    } while ( value > 0 );
+    length += digits;
+  }
+
+  /**
+   * Format a date as yyyyMMdd-HHmmss.SSS
+   *
+   * @return false if the year doesn't fit in 4 digits, leave that to the standard conversion
+   */
+  private boolean appendDate( Calendar calendar, Date date ) {
+    calendar.setTime( date );
+    int year = calendar.get( Calendar.YEAR );
+    if ( year < 1 || year > 9999 || calendar.get( Calendar.ERA ) != 1 ) {
+      return false;
+    }
+    ensureCapacity( DataSetCsvConverter.DATE_MASK.length() );
+    appendDigits( year, 4 );
+    appendDigits( calendar.get( Calendar.MONTH ) + 1, 2 );
+    appendDigits( calendar.get( Calendar.DAY_OF_MONTH ), 2 );
+    line[ length++ ] = '-';
+    appendDigits( calendar.get( Calendar.HOUR_OF_DAY ), 2 );
+    appendDigits( calendar.get( Calendar.MINUTE ), 2 );
+    appendDigits( calendar.get( Calendar.SECOND ), 2 );
+    line[ length++ ] = '.';
+    appendDigits( calendar.get( Calendar.MILLISECOND ), 3 );
+    return true;
+  }
+
+  private void appendDigits( int value, int digits ) {
+    for ( int position = length + digits - 1; position >= length; position-- ) {
+      line[ position ] = (char) ( '0' + ( value % 10 ) );
+      value /= 10;
+    }
+    length += digits;
+  }
+
+  /**
+   * Quote the value formatted from the start position like the commons-csv minimal quote mode does.
+   * The quotes inside the value are doubled.
+   */
+  private void quoteIfNeeded( int start, boolean firstValue ) {
+    if ( !needsQuotes( start, firstValue ) ) {
+      return;
+    }
+    int nrQuotes = 0;
+    for ( int i = start; i < length; i++ ) {
+      if ( line[ i ] == QUOTE ) {
+        nrQuotes++;
+      }
+    }
+    ensureCapacity( nrQuotes + 2 );
+
+    // Shift the value to the right, back to front, doubling the quotes on the way
+    //
+    int target = length + nrQuotes + 1;
+    line[ target ] = QUOTE;
+    for ( int source = length - 1; source >= start; source-- ) {
+      char c = line[ source ];
+      line[ --target ] = c;
+      if ( c == QUOTE ) {
+        line[ --target ] = QUOTE;
+      }
+    }
+    line[ start ] = QUOTE;
+    length += nrQuotes + 2;
+  }
+
+  private boolean needsQuotes( int start, boolean firstValue ) {
+    if ( length == start ) {
+      // An empty first value is quoted, otherwise a line with only an empty value would be an empty line
+      //
+      return firstValue;
+    }
+    if ( line[ start ] <= '#' ) {
+      return true;
+    }
+    for ( int i = start; i < length; i++ ) {
+      char c = line[ i ];
+      if ( c == '\n' || c == '\r' || c == QUOTE || c == DELIMITER ) {
+        return true;
+      }
+    }
+    return line[ length - 1 ] <= ' ';
+  }
+
+  private void append( char c ) {
+    ensureCapacity( 1 );
+    line[ length++ ] = c;
+  }
+
+  private void append( String string ) {
+    int stringLength = string.length();
+    ensureCapacity( stringLength );
+    string.getChars( 0, stringLength, line, length );
+    length += stringLength;
+  }
+
+  private void append( StringBuffer buffer ) {
+    int bufferLength = buffer.length();
+    ensureCapacity( bufferLength );
+    buffer.getChars( 0, bufferLength, line, length );
+    length += bufferLength;
+  }
+
+  private void ensureCapacity( int extra ) {
+    if ( length + extra > line.length ) {
+      char[] bigger = new char[ Math.max( line.length * 2, length + extra ) ];
+      System.arraycopy( line, 0, bigger, 0, length );
+      line = bigger;
+      lineChars = CharBuffer.wrap( line );
+    }
+  }
+
+  /**
+   * Terminate the line and encode it into the byte buffer, writing the buffer to the channel when it's full
+   */
+  private void endLine() throws IOException {
+    append( '\r' );
+    append( '\n' );
+
+    lineChars.clear();
+    lineChars.limit( length );
+    while ( true ) {
+      CoderResult result = encoder.encode( lineChars, bytes, false );
+      if ( result.isOverflow() ) {
+        flushBytes();
+      } else if ( result.isUnderflow() ) {
+        break;
+      } else {
+        result.throwException();
+      }
+    }
+  }
+
+  private void flushBytes() throws IOException {
+    bytes.flip();
+    while ( bytes.hasRemaining() ) {
+      channel.write( bytes );
+    }
+    bytes.clear();
+  }
+
+  /**
+   * Gets rowsWritten
+   *
+   * @return value of rowsWritten, the number of rows written so far, not counting the header
+   */
+  public long getRowsWritten() {
+    return rowsWritten;
+  }
+
+  /**
+   * Write the buffered lines and close the channel
+   *
+   * @throws KettleException
+   */
+  @Override
+  public void close() throws KettleException {
+    if ( channel == null ) {
+      return;
+    }
+    try {
+      lineChars.clear();
+      lineChars.limit( 0 );
+      CoderResult result = encoder.encode( lineChars, bytes, true );
+      while ( result.isOverflow() ) {
+        flushBytes();
+        result = encoder.encode( lineChars, bytes, true );
+      }
+      result = encoder.flush( bytes );
+      while ( result.isOverflow() ) {
+        flushBytes();
+        result = encoder.flush( bytes );
+      }
+      flushBytes();
+    } catch ( CharacterCodingException e ) {
+      throw new KettleException( "Unable to encode CSV data set file", e );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write CSV data set file", e );
+    } finally {
+      try {
+        channel.close();
+      } catch ( IOException e ) {
+        throw new KettleException( "Error closing CSV data set file", e );
+      } finally {
+        channel = null;
+      }
+    }
+  }
+}
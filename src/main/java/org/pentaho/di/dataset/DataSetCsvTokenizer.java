@@ -0,0 +1,213 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits the records of a CSV data set file into values, only keeping the values of the projected columns.
+ * The columns which aren't asked for are skipped without building strings for them.
+ * It reads the format written by the CSV data set group (commons-csv default format):
+ * comma separated, values optionally enclosed in double quotes with doubled quotes inside,
+ * records separated by CRLF or LF and empty lines ignored.
+ */
+public class DataSetCsvTokenizer implements Closeable {
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private static final char DELIMITER = ',';
+  private static final char QUOTE = '"';
+  private static final char CR = '\r';
+  private static final char LF = '\n';
+
+  private final Reader reader;
+  private final boolean[] projected;
+  private final char[] buffer;
+  private final StringBuilder value;
+
+  private int position;
+  private int limit;
+
+  /**
+   * @param reader  The reader to tokenize, closed when the tokenizer is closed
+   * @param columns The indexes of the columns to keep the values of
+   */
+  public DataSetCsvTokenizer( Reader reader, int[] columns ) {
+    this.reader = reader;
+    int nrColumns = 0;
+    for ( int column : columns ) {
+      nrColumns = Math.max( nrColumns, column + 1 );
+    }
+    this.projected = new boolean[ nrColumns ];
+    for ( int column : columns ) {
+      projected[ column ] = true;
+    }
+    this.buffer = new char[ BUFFER_SIZE ];
+    this.value = new StringBuilder( 128 );
+  }
+
+  /**
+   * @return The number of values a record needs room for: the highest projected column index + 1
+   */
+  public int getNrValues() {
+    return projected.length;
+  }
+
+  /**
+   * Read the next record.
+   *
+   * @param values receives the values of the projected columns at their column index, null for a column missing in the record.
+   *               The array needs to be at least getNrValues() long.  Values of columns which aren't projected are left alone.
+   * @return false if there are no more records
+   * @throws IOException
+   */
+  public boolean nextRecord( String[] values ) throws IOException {
+    // Skip empty lines
+    //
+    int c = peek();
+    while ( c == CR || c == LF ) {
+      position++;
+      c = peek();
+    }
+    if ( c < 0 ) {
+      return false;
+    }
+
+    for ( int column = 0; column < projected.length; column++ ) {
+      values[ column ] = null;
+    }
+
+    int column = 0;
+    while ( true ) {
+      boolean keep = column < projected.length && projected[ column ];
+      String columnValue = readValue( keep );
+      if ( keep ) {
+        values[ column ] = columnValue;
+      }
+
+      c = peek();
+      if ( c == DELIMITER ) {
+        position++;
+        column++;
+        continue;
+      }
+      if ( c == CR ) {
+        position++;
+        if ( peek() == LF ) {
+          position++;
+        }
+      } else if ( c == LF ) {
+        position++;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Read a single value up to the next delimiter, line end or end of file, not consuming that.
+   *
+   * @param keep true if the value needs to be returned, false to skip it
+   * @return The value or null if it's skipped
+   */
+  private String readValue( boolean keep ) throws IOException {
+    value.setLength( 0 );
+
+    if ( peek() == QUOTE ) {
+      position++;
+      while ( true ) {
+        if ( position >= limit && !fill() ) {
+          throw new IOException( "End of file inside a quoted value" );
+        }
+        int start = position;
+        while ( position < limit && buffer[ position ] != QUOTE ) {
+          position++;
+        }
+        if ( keep ) {
+          value.append( buffer, start, position - start );
+        }
+        if ( position < limit ) {
+          // A quote: either a doubled quote or the end of the quoted part
+          //
+          position++;
+          if ( peek() == QUOTE ) {
+            position++;
+            if ( keep ) {
+              value.append( QUOTE );
+            }
+          } else {
+            break;
+          }
+        }
+      }
+    }
+
+    // Unquoted (part of the) value
+    //
+    while ( true ) {
+      if ( position >= limit && !fill() ) {
+        break;
+      }
+      int start = position;
+      while ( position < limit ) {
+        char c = buffer[ position ];
+        if ( c == DELIMITER || c == CR || c == LF ) {
+          break;
+        }
+        position++;
+      }
+      if ( keep ) {
+        value.append( buffer, start, position - start );
+      }
+      if ( position < limit ) {
+        break;
+      }
+    }
+
+    return keep ? value.toString() : null;
+  }
+
+  private int peek() throws IOException {
+    if ( position >= limit && !fill() ) {
+      return -1;
+    }
+    return buffer[ position ];
+  }
+
+  private boolean fill() throws IOException {
+    int read = reader.read( buffer, 0, buffer.length );
+    while ( read == 0 ) {
+      read = reader.read( buffer, 0, buffer.length );
+    }
+    position = 0;
+    limit = Math.max( read, 0 );
+    return read > 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * The conversion plan for the rows read from a database data set table.
+ * It's calculated once from the result set metadata and the data set field metadata so that every row is converted in a single pass,
+ * touching only the columns where the database returns a different data type than the data set specifies.
+ */
+public class DataSetDatabaseConverter {
+
+  private final int[] conversionIndexes;
+  private final ValueMetaInterface[] dbValueMetas;
+  private final ValueMetaInterface[] dataSetValueMetas;
+
+  /**
+   * @param dbRowMeta        The row metadata of the result set
+   * @param requestedRowMeta The row metadata of the data set fields in the same order
+   * @throws KettleException In case the number of columns doesn't match
+   */
+  public DataSetDatabaseConverter( RowMetaInterface dbRowMeta, RowMetaInterface requestedRowMeta ) throws KettleException {
+    if ( dbRowMeta.size() != requestedRowMeta.size() ) {
+      throw new KettleException( "The database returned " + dbRowMeta.size() + " columns while " + requestedRowMeta.size() + " fields were expected" );
+    }
+
+    int nrConversions = 0;
+    for ( int i = 0; i < dbRowMeta.size(); i++ ) {
+      if ( needsConversion( dbRowMeta.getValueMeta( i ), requestedRowMeta.getValueMeta( i ) ) ) {
+        nrConversions++;
+      }
+    }
+
+    conversionIndexes = new int[ nrConversions ];
+    dbValueMetas = new ValueMetaInterface[ nrConversions ];
+    dataSetValueMetas = new ValueMetaInterface[ nrConversions ];
+    int index = 0;
+    for ( int i = 0; i < dbRowMeta.size(); i++ ) {
+      ValueMetaInterface dbValueMeta = dbRowMeta.getValueMeta( i );
+      ValueMetaInterface dataSetValueMeta = requestedRowMeta.getValueMeta( i );
+      if ( needsConversion( dbValueMeta, dataSetValueMeta ) ) {
+        conversionIndexes[ index ] = i;
+        dbValueMetas[ index ] = dbValueMeta;
+        dataSetValueMetas[ index ] = dataSetValueMeta;
+        index++;
+      }
+    }
+  }
+
+  /**
+   * In case the data in the table is a different data type for some reasons we need to bring it back up to spec.
+   */
+  private static boolean needsConversion( ValueMetaInterface dbValueMeta, ValueMetaInterface dataSetValueMeta ) {
+    return dbValueMeta.getType() != dataSetValueMeta.getType();
+  }
+
+  /**
+   * Convert the values of a row read from the database in place.
+   *
+   * @param row The row to convert
+   * @return The same row
+   * @throws KettleValueException In case a value can't be converted
+   */
+  public Object[] convert( Object[] row ) throws KettleValueException {
+    for ( int i = 0; i < conversionIndexes.length; i++ ) {
+      int index = conversionIndexes[ i ];
+      row[ index ] = dataSetValueMetas[ i ].convertData( dbValueMetas[ i ], row[ index ] );
+    }
+    return row;
+  }
+
+  /**
+   * @return true if no value needs to be converted
+   */
+  public boolean isIdentity() {
+    return conversionIndexes.length == 0;
+  }
+}
@@ -1,49 +1,36 @@
 package org.pentaho.di.dataset;
 
-import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
-import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
-import org.pentaho.di.core.logging.LoggingObject;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
-import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.StringUtil;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class DataSetDatabaseGroup {
 
-  // Simply get all rows in the data set
-  //
-  public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
-
-    try {
-      DatabaseMeta databaseMeta = group.getDatabaseMeta();
-      synchronized ( databaseMeta ) {
-        String schemaTable = databaseMeta.getQuotedSchemaTableCombination( group.getSchemaName(), dataSet.getTableName() );
-        Database database = null;
-        List<Object[]> rows = null;
-
-        try {
-          database = new Database( new LoggingObject( dataSet.getName() ), group.getDatabaseMeta() );
-          database.connect();
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  public static final int DEFAULT_FETCH_SIZE = 1000;
 
-          rows = database.getRows( "SELECT * FROM " + schemaTable, 0 );
-        } finally {
-          if ( database != null ) {
-            database.disconnect();
-          }
-        }
-        return rows;
-      }
-    } catch ( Exception e ) {
-      throw new KettleException( "Unable to get all rows for database data set '" + dataSet.getName() + "'", e );
-    }
+  /**
+   * Report the progress of writing a data set table every so many rows
+   */
+  public static final int PROGRESS_ROWS = 50000;
 
+  // Simply get all rows in the data set, in the order of the database.
+  // The values are converted to the data types of the data set fields.
+  //
+  public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet ) throws KettleException {
+    DataSetDatabaseQuery query = DataSetDatabaseQuery.create( group, dataSet );
+    return readAllRows( log, group, dataSet, query );
   }
 
 
@@ -56,128 +43,91 @@ public class DataSetDatabaseGroup {
    * @throws KettleException
    */
   public static final List<Object[]> getAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
-    try {
-      RowMetaInterface setRowMeta = dataSet.getSetRowMeta( false );
-      DatabaseMeta databaseMeta = group.getDatabaseMeta();
-      synchronized ( databaseMeta ) {
-        String schemaTable = databaseMeta.getQuotedSchemaTableCombination( group.getSchemaName(), dataSet.getTableName() );
-        Database database = null;
-        List<Object[]> rows = null;
-        List<String> sortFields = location.getFieldOrder();
-        List<TransUnitTestFieldMapping> fieldMappings = location.getFieldMappings();
-
-
-        // Which columns do we need for the location (input or golden)
-        // See how we mapped the fields
-        //
-        List<String> selectedColumns = new ArrayList<>();
-        for ( TransUnitTestFieldMapping fieldMapping : fieldMappings ) {
-          // Which fields does the step need and get the column names for these fields.
-          //
-          String dataSetFieldName = fieldMapping.getDataSetFieldName();
-          String column = dataSet.findColumnForField( dataSetFieldName );
-          selectedColumns.add( column );
-        }
-
-        // Which columns are we sorting on (if any)
-        //
-        List<String> sortColumns = new ArrayList<>();
-        for ( String sortField : sortFields ) {
-          String sortColumn = dataSet.findColumnForField( sortField );
-          if ( sortColumn == null ) {
-            throw new KettleException( "Unable to find sort column with field name '" + sortField + "' (from mapping) in database data set '" + dataSet.getName() + "'" );
-          }
-          sortColumns.add( sortColumn );
-        }
-
-        try {
-          database = new Database( new LoggingObject( "DataSetDialog" ), group.getDatabaseMeta() );
-          database.connect();
-
-          String sql = "SELECT ";
-          for ( int i = 0; i < selectedColumns.size(); i++ ) {
-            String column = selectedColumns.get( i );
-            if ( i > 0 ) {
-              sql += ", ";
-            }
-            sql += databaseMeta.quoteField( column );
-          }
-          sql += " FROM " + schemaTable;
-
-          if ( !sortColumns.isEmpty() ) {
-            sql += " ORDER BY ";
-            boolean first = true;
-            for ( String sortColumn : sortColumns ) {
-              if ( first ) {
-                first = false;
-              } else {
-                sql += ", ";
-              }
-              sql += databaseMeta.quoteField( sortColumn );
-            }
-          }
-
-          if ( log.isDetailed() ) {
-            log.logDetailed( "---------------------------------------------" );
-            log.logDetailed( "SQL = " + sql );
-            log.logDetailed( "---------------------------------------------" );
-          }
-          rows = database.getRows( sql, 0 );
-
-          // Now, our work is not done...
-          // We will probably have data conversation issues so let's handle this...
-          //
-          RowMetaInterface dbRowMeta = database.getReturnRowMeta();
-          if ( log.isDetailed() ) {
-            log.logDetailed( "DB RowMeta = " + dbRowMeta.toStringMeta() );
-            log.logDetailed( "---------------------------------------------" );
-          }
-
-          // Correct data types if needed
-          //
-          RowMetaInterface requestedRowMeta = dataSet.getMappedDataSetFieldsRowMeta( location );
-          for ( int i = 0; i < dbRowMeta.size(); i++ ) {
-            // In case the data in the table is a different data type for some reasons, bring it back up to spec.
-            // The spec is given in getSetRowMeta()
-            //
-            ValueMetaInterface dataSetValueMeta = requestedRowMeta.getValueMeta( i );
-            ValueMetaInterface dbValueMeta = dbRowMeta.getValueMeta( i );
-            if ( dbValueMeta.getType() != dataSetValueMeta.getType() ) {
-              // Convert the values in the result set...
-              //
-              for ( Object[] row : rows ) {
-                row[ i ] = dataSetValueMeta.convertData( dbValueMeta, row[ i ] );
-              }
-            }
-          }
-        } finally {
-          if ( database != null ) {
-            database.disconnect();
-          }
-        }
+    DataSetDatabaseQuery query = DataSetDatabaseQuery.create( group, dataSet, location );
+    return readAllRows( log, group, dataSet, query );
+  }
 
-        return rows;
+  private static List<Object[]> readAllRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet, DataSetDatabaseQuery query ) throws KettleException {
+    try ( DataSetRowReader rowReader = openRowReader( log, group, dataSet, query ) ) {
+      List<Object[]> rows = new ArrayList<>();
+      Object[] row = rowReader.getRow();
+      while ( row != null ) {
+        rows.add( row );
+        row = rowReader.getRow();
       }
+      return rows;
     } catch ( Exception e ) {
       throw new KettleException( "Unable to get all rows for database data set '" + dataSet.getName() + "'", e );
     }
   }
 
+  /**
+   * Open a cursor on the rows of this data set in the format of the data set, in the order of the location.
+   *
+   * @param log      the logging channel to which you can write.
+   * @param location The fields to obtain in the order given
+   * @return A reader on the rows for the given location, close it when you're done.
+   * @throws KettleException
+   */
+  public static final DataSetRowReader getRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    return openRowReader( log, group, dataSet, DataSetDatabaseQuery.create( group, dataSet, location ) );
+  }
 
+  private static DataSetRowReader openRowReader( LogChannelInterface log, DataSetGroup group, DataSet dataSet, DataSetDatabaseQuery query ) throws KettleException {
+    DataSetDatabasePool pool = DataSetDatabasePool.getPool( group );
+    int fetchSize = group.getFetchSize() > 0 ? group.getFetchSize() : DEFAULT_FETCH_SIZE;
+    return new DataSetDatabaseRowReader( log, dataSet, pool, query, fetchSize );
+  }
+
+
+  /**
+   * Write the rows to the data set table, replacing the current content.
+   */
   public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
                                              RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    writeDataSetData( loggingObject, dataSetGroup, tableName, rowMeta, rows, DataSetWriteMode.Replace, null );
+  }
+
+  /**
+   * Write the rows to the data set table.
+   * In replace mode the table is truncated first, in append mode the rows are simply inserted.
+   * In upsert mode the rows with the key of a new row are deleted right before the new row is inserted.
+   * Like in the files of the other group types, keys with null values never match so those rows are always added.
+   * <p>
+   * The rows are inserted in JDBC batches of the group batch size if the database supports batch updates.
+   * When the group specifies a commit size we commit every so many rows, otherwise everything is written in a single transaction.
+   * Progress is logged every {@link #PROGRESS_ROWS} rows whatever the commit size.
+   */
+  public static final void writeDataSetData( LoggingObjectInterface loggingObject, DataSetGroup dataSetGroup, String tableName,
+                                             RowMetaInterface rowMeta, List<Object[]> rows, DataSetWriteMode writeMode,
+                                             List<String> keyColumns ) throws KettleException {
+
+    if ( writeMode == DataSetWriteMode.Upsert ) {
+      rows = new DataSetRowMerger( rowMeta, rows, writeMode, keyColumns, null ).getNewRows();
+    }
 
-    Database database = new Database( loggingObject, dataSetGroup.getDatabaseMeta() );
+    LogChannelInterface log = new LogChannel( loggingObject );
+    DatabaseMeta databaseMeta = dataSetGroup.getDatabaseMeta();
+    int batchSize = dataSetGroup.getBatchSize() > 0 ? dataSetGroup.getBatchSize() : DEFAULT_BATCH_SIZE;
+    int commitSize = dataSetGroup.getCommitSize();
+    boolean batch = batchSize > 1 && databaseMeta.supportsBatchUpdates();
+
+    DataSetDatabasePool pool = DataSetDatabasePool.getPool( dataSetGroup );
+    Database database = pool.borrowDatabase();
+    boolean reusable = false;
+    PreparedStatement deleteStatement = null;
     try {
-      database.connect();
+      database.setAutoCommit( false );
 
-      String schemaTable = dataSetGroup.getDatabaseMeta().getQuotedSchemaTableCombination( dataSetGroup.getSchemaName(), tableName );
+      String schemaTable = databaseMeta.getQuotedSchemaTableCombination( dataSetGroup.getSchemaName(), tableName );
 
       String sql;
       if ( database.checkTableExists( schemaTable ) ) {
-        // Clean out old junk, allow for rollback
-        //
-        database.truncateTable( schemaTable );
+        if ( writeMode == DataSetWriteMode.Replace ) {
+          // Clean out old junk, allow for rollback
+          //
+          database.truncateTable( schemaTable );
+        }
         sql = database.getAlterTableStatement( schemaTable, rowMeta, null, false, null, true );
       } else {
         sql = database.getCreateTableStatement( schemaTable, rowMeta, null, false, null, true );
@@ -185,28 +135,123 @@ public class DataSetDatabaseGroup {
       if ( !StringUtil.isEmpty( sql ) ) {
         database.execStatements( sql );
       }
-      database.prepareInsert( rowMeta, schemaTable );
+
+      long startTime = System.currentTimeMillis();
+      PreparedStatement insertStatement = database.prepareSQL( database.getInsertStatement( dataSetGroup.getSchemaName(), tableName, rowMeta ) );
+
+      // In upsert mode the stored rows with the keys are deleted in the same batches
+      //
+      int[] keyIndexes = null;
+      RowMetaInterface keyRowMeta = null;
+      if ( writeMode == DataSetWriteMode.Upsert ) {
+        keyIndexes = DataSetRowMerger.getKeyIndexes( rowMeta, keyColumns );
+        keyRowMeta = new RowMeta();
+        for ( int keyIndex : keyIndexes ) {
+          keyRowMeta.addValueMeta( rowMeta.getValueMeta( keyIndex ) );
+        }
+        deleteStatement = database.prepareSQL( getDeleteStatement( databaseMeta, schemaTable, keyRowMeta ) );
+      }
+
+      int batchCounter = 0;
+      long written = 0;
       for ( Object[] row : rows ) {
-        database.setValuesInsert( new RowMetaAndData( rowMeta, row ) );
-        database.insertRow();
+        if ( deleteStatement != null ) {
+          Object[] keyValues = new Object[ keyIndexes.length ];
+          for ( int i = 0; i < keyIndexes.length; i++ ) {
+            keyValues[ i ] = row[ keyIndexes[ i ] ];
+          }
+          database.setValues( keyRowMeta, keyValues, deleteStatement );
+          if ( batch ) {
+            deleteStatement.addBatch();
+          } else {
+            deleteStatement.executeUpdate();
+          }
+        }
+        database.setValues( rowMeta, row, insertStatement );
+        database.insertRow( insertStatement, batch, false );
+        written++;
+
+        if ( batch && ++batchCounter >= batchSize ) {
+          executeDeleteBatch( deleteStatement );
+          database.executeAndClearBatch( insertStatement );
+          batchCounter = 0;
+        }
+        if ( commitSize > 0 && ( written % commitSize ) == 0 ) {
+          if ( batch && batchCounter > 0 ) {
+            executeDeleteBatch( deleteStatement );
+            database.executeAndClearBatch( insertStatement );
+            batchCounter = 0;
+          }
+          database.commit( true );
+          if ( log.isDetailed() ) {
+            log.logDetailed( "Committed " + written + " rows to data set table " + schemaTable );
+          }
+        }
+        if ( log.isBasic() && ( written % PROGRESS_ROWS ) == 0 ) {
+          log.logBasic( "Wrote " + written + " of " + rows.size() + " rows to data set table " + schemaTable );
+        }
+      }
+
+      // Flush the last batch, commit and close the statement
+      //
+      if ( batch && batchCounter > 0 ) {
+        executeDeleteBatch( deleteStatement );
       }
+      database.emptyAndCommit( insertStatement, batch, batchCounter );
 
-      database.commit();
+      if ( log.isBasic() ) {
+        log.logBasic( "Wrote " + written + " rows to data set table " + schemaTable + " (" + writeMode.name() + ") in "
+          + ( System.currentTimeMillis() - startTime ) + "ms" );
+      }
+      reusable = true;
+    } catch ( Exception e ) {
+      try {
+        database.rollback( true );
+      } catch ( Exception rollbackException ) {
+        log.logError( "Error rolling back data set table changes", rollbackException );
+      }
+      throw new KettleException( "Unable to write rows to data set table '" + tableName + "'", e );
     } finally {
-      database.disconnect();
+      if ( deleteStatement != null ) {
+        try {
+          deleteStatement.close();
+        } catch ( SQLException e ) {
+          log.logError( "Error closing the data set delete statement", e );
+        }
+      }
+      pool.releaseDatabase( database, reusable );
     }
 
   }
 
+  private static String getDeleteStatement( DatabaseMeta databaseMeta, String schemaTable, RowMetaInterface keyRowMeta ) {
+    StringBuilder sql = new StringBuilder( "DELETE FROM " ).append( schemaTable ).append( " WHERE " );
+    for ( int i = 0; i < keyRowMeta.size(); i++ ) {
+      if ( i > 0 ) {
+        sql.append( " AND " );
+      }
+      sql.append( databaseMeta.quoteField( keyRowMeta.getValueMeta( i ).getName() ) ).append( " = ?" );
+    }
+    return sql.toString();
+  }
+
+  private static void executeDeleteBatch( PreparedStatement deleteStatement ) throws SQLException {
+    if ( deleteStatement != null ) {
+      deleteStatement.executeBatch();
+      deleteStatement.clearBatch();
+    }
+  }
 
-  public static void createTable( DataSetGroup group, String tableName, RowMetaInterface rowMeta ) throws KettleDatabaseException {
+
+  public static void createTable( DataSetGroup group, String tableName, RowMetaInterface rowMeta ) throws KettleException {
 
     DatabaseMeta databaseMeta = group.getDatabaseMeta();
     String schemaTable = databaseMeta.getQuotedSchemaTableCombination( group.getSchemaName(), tableName );
+    DataSetDatabasePool pool = DataSetDatabasePool.getPool( group );
     Database database = null;
+    boolean reusable = false;
     try {
-      database = new Database( new LoggingObject( "DataSetDialog" ), databaseMeta );
-      database.connect();
+      database = pool.borrowDatabase();
       String sql;
       if ( database.checkTableExists( schemaTable ) ) {
         sql = database.getAlterTableStatement( schemaTable, rowMeta, null, false, null, true );
@@ -218,10 +263,9 @@ public class DataSetDatabaseGroup {
         //
         database.execStatement( sql );
       }
+      reusable = true;
     } finally {
-      if ( database != null ) {
-        database.disconnect();
-      }
+      pool.releaseDatabase( database, reusable );
     }
   }
 }
@@ -0,0 +1,184 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LoggingObject;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps connected databases around per data set group so that reading and writing many data sets,
+ * possibly from multiple threads at once, doesn't connect and disconnect for every data set.
+ * A borrowed database is used by a single thread until it's released again.
+ */
+public class DataSetDatabasePool {
+
+  public static final int MAX_IDLE_DATABASES = 8;
+
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Map<String, DataSetDatabasePool> pools = new HashMap<>();
+
+  private final DatabaseMeta databaseMeta;
+  private final LoggingObjectInterface loggingObject;
+  private final Deque<Database> idleDatabases;
+  private boolean closed;
+
+  private DataSetDatabasePool( String groupName, DatabaseMeta databaseMeta ) {
+    this.databaseMeta = databaseMeta;
+    this.loggingObject = new LoggingObject( "Data set group " + groupName );
+    this.idleDatabases = new ArrayDeque<>();
+    this.closed = false;
+  }
+
+  /**
+   * Get the pool for the database of the given group.
+   * Changing the database connection settings of a group gives you a new pool.
+   *
+   * @param group The data set group
+   * @return The pool of databases for the group
+   * @throws KettleException in case the group doesn't have a database
+   */
+  public static DataSetDatabasePool getPool( DataSetGroup group ) throws KettleException {
+    DatabaseMeta databaseMeta = group.getDatabaseMeta();
+    if ( databaseMeta == null ) {
+      throw new KettleException( "No database specified in data set group '" + group.getName() + "'" );
+    }
+    String key = group.getName() + "\n" + databaseMeta.getXML();
+    synchronized ( pools ) {
+      DataSetDatabasePool pool = pools.get( key );
+      if ( pool == null ) {
+        pool = new DataSetDatabasePool( group.getName(), databaseMeta );
+        pools.put( key, pool );
+      }
+      return pool;
+    }
+  }
+
+  /**
+   * Disconnect all idle databases of all pools.  Databases which are borrowed at this time are disconnected when released.
+   */
+  public static void closeAll() {
+    synchronized ( pools ) {
+      for ( DataSetDatabasePool pool : pools.values() ) {
+        pool.close();
+      }
+      pools.clear();
+    }
+  }
+
+  /**
+   * Get a connected database for exclusive use.  Release it when you're done with it.
+   *
+   * @return A connected database
+   * @throws KettleDatabaseException in case we can't connect
+   */
+  public Database borrowDatabase() throws KettleDatabaseException {
+    while ( true ) {
+      Database database;
+      synchronized ( this ) {
+        database = idleDatabases.pollFirst();
+      }
+      if ( database == null ) {
+        break;
+      }
+      if ( isValid( database ) ) {
+        return database;
+      }
+      database.disconnect();
+    }
+
+    Database database = new Database( loggingObject, databaseMeta );
+    database.connect();
+    return database;
+  }
+
+  /**
+   * Give back a borrowed database.
+   *
+   * @param database The database to give back
+   * @param reusable false if something went wrong and we don't know the state of the connection, it's disconnected in that case.
+   */
+  public void releaseDatabase( Database database, boolean reusable ) {
+    if ( database == null ) {
+      return;
+    }
+    if ( reusable ) {
+      try {
+        // Hand it out again in the state we got it in.
+        // Database.isAutoCommit() reflects the commit size, not the connection, so ask JDBC.
+        //
+        Connection connection = database.getConnection();
+        if ( connection != null && !connection.getAutoCommit() ) {
+          database.rollback( true );
+          database.setAutoCommit( true );
+        }
+        synchronized ( this ) {
+          if ( !closed && idleDatabases.size() < MAX_IDLE_DATABASES ) {
+            idleDatabases.addFirst( database );
+            return;
+          }
+        }
+      } catch ( Exception e ) {
+        // Don't re-use this one
+      }
+    }
+    database.disconnect();
+  }
+
+  private synchronized void close() {
+    closed = true;
+    for ( Database database : idleDatabases ) {
+      database.disconnect();
+    }
+    idleDatabases.clear();
+  }
+
+  private boolean isValid( Database database ) {
+    try {
+      Connection connection = database.getConnection();
+      return connection != null && !connection.isClosed() && connection.isValid( VALIDATION_TIMEOUT_SECONDS );
+    } catch ( Exception e ) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets databaseMeta
+   *
+   * @return value of databaseMeta
+   */
+  public DatabaseMeta getDatabaseMeta() {
+    return databaseMeta;
+  }
+}
@@ -0,0 +1,150 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The query to read the rows of a database data set for a location (input or golden) in the requested order.
+ * It's calculated before a connection is borrowed and never changes afterwards so it can be used from multiple threads at once.
+ */
+public final class DataSetDatabaseQuery {
+
+  private final String sql;
+  private final RowMetaInterface requestedRowMeta;
+
+  private DataSetDatabaseQuery( String sql, RowMetaInterface requestedRowMeta ) {
+    this.sql = sql;
+    this.requestedRowMeta = requestedRowMeta;
+  }
+
+  /**
+   * Calculate the query to read all the fields of a data set, in the order of the data set fields and of the database.
+   *
+   * @param group   The database data set group
+   * @param dataSet The data set to read
+   * @return The query
+   * @throws KettleException
+   */
+  public static DataSetDatabaseQuery create( DataSetGroup group, DataSet dataSet ) throws KettleException {
+    DatabaseMeta databaseMeta = group.getDatabaseMeta();
+    String schemaTable = databaseMeta.getQuotedSchemaTableCombination( group.getSchemaName(), dataSet.getTableName() );
+
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    List<DataSetField> fields = dataSet.getFields();
+    for ( int i = 0; i < fields.size(); i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( databaseMeta.quoteField( fields.get( i ).getColumnName() ) );
+    }
+    sql.append( " FROM " ).append( schemaTable );
+
+    return new DataSetDatabaseQuery( sql.toString(), dataSet.getSetRowMeta( false ) );
+  }
+
+  /**
+   * Calculate the query to read the mapped fields of a data set for the given location.
+   *
+   * @param group    The database data set group
+   * @param dataSet  The data set to read
+   * @param location The location with the field mappings and field order
+   * @return The query
+   * @throws KettleException In case a mapped field or sort field can't be found
+   */
+  public static DataSetDatabaseQuery create( DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    DatabaseMeta databaseMeta = group.getDatabaseMeta();
+    String schemaTable = databaseMeta.getQuotedSchemaTableCombination( group.getSchemaName(), dataSet.getTableName() );
+
+    // Which columns do we need for the location (input or golden)
+    // See how we mapped the fields
+    //
+    List<String> selectedColumns = new ArrayList<>();
+    for ( TransUnitTestFieldMapping fieldMapping : location.getFieldMappings() ) {
+      // Which fields does the step need and get the column names for these fields.
+      //
+      String dataSetFieldName = fieldMapping.getDataSetFieldName();
+      String column = dataSet.findColumnForField( dataSetFieldName );
+      if ( column == null ) {
+        throw new KettleException( "Unable to find column for field name '" + dataSetFieldName + "' (from mapping) in database data set '" + dataSet.getName() + "'" );
+      }
+      selectedColumns.add( column );
+    }
+
+    // Which columns are we sorting on (if any)
+    //
+    List<String> sortColumns = new ArrayList<>();
+    for ( String sortField : location.getFieldOrder() ) {
+      String sortColumn = dataSet.findColumnForField( sortField );
+      if ( sortColumn == null ) {
+        throw new KettleException( "Unable to find sort column with field name '" + sortField + "' (from mapping) in database data set '" + dataSet.getName() + "'" );
+      }
+      sortColumns.add( sortColumn );
+    }
+
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    for ( int i = 0; i < selectedColumns.size(); i++ ) {
+      if ( i > 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( databaseMeta.quoteField( selectedColumns.get( i ) ) );
+    }
+    sql.append( " FROM " ).append( schemaTable );
+
+    if ( !sortColumns.isEmpty() ) {
+      sql.append( " ORDER BY " );
+      for ( int i = 0; i < sortColumns.size(); i++ ) {
+        if ( i > 0 ) {
+          sql.append( ", " );
+        }
+        sql.append( databaseMeta.quoteField( sortColumns.get( i ) ) );
+      }
+    }
+
+    return new DataSetDatabaseQuery( sql.toString(), dataSet.getMappedDataSetFieldsRowMeta( location ) );
+  }
+
+  /**
+   * Gets sql
+   *
+   * @return value of sql
+   */
+  public String getSql() {
+    return sql;
+  }
+
+  /**
+   * The value metadata can't be shared between threads because of the date and number formatters it keeps around.
+   *
+   * @return A copy of the layout of the rows as specified in the data set
+   */
+  public RowMetaInterface getRequestedRowMeta() {
+    return requestedRowMeta.clone();
+  }
+}
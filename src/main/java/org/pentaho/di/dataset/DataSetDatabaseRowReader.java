@@ -0,0 +1,169 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Reads the rows of a database data set through a forward only cursor.
+ * The JDBC driver fetches the given number of rows at a time and every row is converted to the data set types as it arrives,
+ * following a conversion plan calculated once from the result set metadata.
+ * The database connection is borrowed from the group pool until the reader is closed.
+ */
+public class DataSetDatabaseRowReader implements DataSetRowReader {
+
+  private final String dataSetName;
+  private final DataSetDatabasePool pool;
+
+  private Database database;
+  private PreparedStatement statement;
+  private ResultSet resultSet;
+  private boolean reusable;
+
+  private RowMetaInterface dbRowMeta;
+  private DataSetDatabaseConverter converter;
+
+  /**
+   * @param log       The log channel to write to
+   * @param dataSet   The data set to read
+   * @param pool      The pool to borrow a connection from
+   * @param query     The query to execute
+   * @param fetchSize The number of rows to fetch at a time or 0 to use the driver default
+   * @throws KettleException
+   */
+  public DataSetDatabaseRowReader( LogChannelInterface log, DataSet dataSet, DataSetDatabasePool pool, DataSetDatabaseQuery query, int fetchSize ) throws KettleException {
+    this.dataSetName = dataSet.getName();
+    this.pool = pool;
+    this.reusable = false;
+
+    try {
+      database = pool.borrowDatabase();
+
+      String sql = query.getSql();
+      if ( log.isDetailed() ) {
+        log.logDetailed( "---------------------------------------------" );
+        log.logDetailed( "SQL = " + sql + " (fetch size " + fetchSize + ")" );
+        log.logDetailed( "---------------------------------------------" );
+      }
+
+      // Some drivers (PostgreSQL) only honor the fetch size outside of auto-commit mode.
+      // The pool restores auto-commit when we give the connection back.
+      //
+      database.setAutoCommit( false );
+      statement = database.getConnection().prepareStatement( sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+      if ( fetchSize > 0 ) {
+        statement.setFetchSize( fetchSize );
+      }
+
+      // We execute the statement ourselves: Database.openQuery() replaces the fetch size with its own
+      //
+      resultSet = statement.executeQuery();
+
+      // We will probably have data conversation issues so let's handle those while reading...
+      //
+      dbRowMeta = getRowMeta( database.getDatabaseMeta(), resultSet.getMetaData() );
+      if ( log.isDetailed() ) {
+        log.logDetailed( "DB RowMeta = " + dbRowMeta.toStringMeta() );
+        log.logDetailed( "---------------------------------------------" );
+      }
+      converter = new DataSetDatabaseConverter( dbRowMeta, query.getRequestedRowMeta() );
+    } catch ( Exception e ) {
+      close();
+      throw new KettleException( "Unable to open database data set '" + dataSetName + "'", e );
+    }
+  }
+
+  /**
+   * Determine the row metadata of the result set the same way the Database class does it for the queries it opens.
+   */
+  private static RowMetaInterface getRowMeta( DatabaseMeta databaseMeta, ResultSetMetaData resultSetMeta ) throws KettleException, SQLException {
+    List<ValueMetaInterface> valueMetaPluginClasses = ValueMetaFactory.getValueMetaPluginClasses();
+    RowMetaInterface rowMeta = new RowMeta();
+    for ( int i = 1; i <= resultSetMeta.getColumnCount(); i++ ) {
+      String name = resultSetMeta.getColumnLabel( i );
+      ValueMetaInterface valueMeta = null;
+      for ( ValueMetaInterface pluginValueMeta : valueMetaPluginClasses ) {
+        valueMeta = pluginValueMeta.getValueFromSQLType( databaseMeta, name, resultSetMeta, i, databaseMeta.isMySQLVariant(), false );
+        if ( valueMeta != null ) {
+          break;
+        }
+      }
+      if ( valueMeta == null ) {
+        throw new KettleException( "Unable to determine the data type of column '" + name + "'" );
+      }
+      rowMeta.addValueMeta( valueMeta );
+    }
+    return rowMeta;
+  }
+
+  @Override
+  public Object[] getRow() throws KettleException {
+    try {
+      Object[] row = database.getRow( resultSet, null, dbRowMeta );
+      if ( row == null ) {
+        return null;
+      }
+
+      return converter.convert( row );
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to read row from database data set '" + dataSetName + "'", e );
+    }
+  }
+
+  @Override
+  public void close() throws KettleException {
+    if ( database == null ) {
+      return;
+    }
+    try {
+      if ( resultSet != null ) {
+        database.closeQuery( resultSet );
+      }
+      if ( statement != null ) {
+        statement.close();
+      }
+      reusable = true;
+    } catch ( Exception e ) {
+      throw new KettleException( "Error closing database data set '" + dataSetName + "'", e );
+    } finally {
+      pool.releaseDatabase( database, reusable );
+      database = null;
+      statement = null;
+      resultSet = null;
+    }
+  }
+}
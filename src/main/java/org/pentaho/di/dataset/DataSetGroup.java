@@ -58,10 +58,26 @@ public class DataSetGroup {
   @MetaStoreAttribute
   private String folderName;
 
+  @MetaStoreAttribute( key = "batch_size" )
+  private int batchSize;
+
+  @MetaStoreAttribute( key = "commit_size" )
+  private int commitSize;
+
+  @MetaStoreAttribute( key = "fetch_size" )
+  private int fetchSize;
+
+  @MetaStoreAttribute( key = "compression" )
+  private DataSetCompression compression;
+
   public DataSetGroup() {
     // empty constructor for the IMetaStore factory
     //
     type = DataSetGroupType.Database;
+    batchSize = DataSetDatabaseGroup.DEFAULT_BATCH_SIZE;
+    commitSize = 0;
+    fetchSize = DataSetDatabaseGroup.DEFAULT_FETCH_SIZE;
+    compression = DataSetCompression.None;
   }
 
   public String getName() {
@@ -105,12 +121,18 @@ public class DataSetGroup {
    * @return The rows
    * @throws KettleException
    */
-  public List<Object[]> getAllRows( LogChannelInterface log, DataSet dataSet ) throws KettleException {
+  public List<Object[]> getAllRows( final LogChannelInterface log, final DataSet dataSet ) throws KettleException {
+    return DataSetRowCache.getRows( log, this, dataSet, null, () -> readAllRows( log, dataSet ) );
+  }
+
+  private List<Object[]> readAllRows( LogChannelInterface log, DataSet dataSet ) throws KettleException {
     switch ( type ) {
       case Database:
         return DataSetDatabaseGroup.getAllRows( log, this, dataSet );
       case CSV:
         return DataSetCsvGroup.getAllRows( log, this, dataSet );
+      case Binary:
+        return DataSetBinaryGroup.getAllRows( log, this, dataSet );
       default:
         throw new KettleException( type.name() + " : not supported yet" );
     }
@@ -125,32 +147,103 @@ public class DataSetGroup {
    * @return
    * @throws KettleException
    */
-  public List<Object[]> getAllRows( LogChannelInterface log, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+  public List<Object[]> getAllRows( final LogChannelInterface log, final DataSet dataSet, final TransUnitTestSetLocation location ) throws KettleException {
+    return DataSetRowCache.getRows( log, this, dataSet, location, () -> readAllRows( log, dataSet, location ) );
+  }
+
+  private List<Object[]> readAllRows( LogChannelInterface log, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
     switch ( type ) {
       case Database:
         return DataSetDatabaseGroup.getAllRows( log, this, dataSet, location );
       case CSV:
         return DataSetCsvGroup.getAllRows( log, this, dataSet, location );
+      case Binary:
+        return DataSetBinaryGroup.getAllRows( log, this, dataSet, location );
       default:
         throw new KettleException( type.name() + " : not supported yet" );
     }
   }
 
-  public void writeDataSetData( String tableName, RowMetaInterface rowMeta, List<Object[]> dataRows ) throws KettleException {
-    SimpleLoggingObject loggingObject = new SimpleLoggingObject( "Writing Data Set", LoggingObjectType.TRANS, null );
-
+  /**
+   * Open a reader on the dataset rows in a particular format in a particular order, determined by the given location.
+   * Where possible the rows are handed out while they're being read so that they don't all need to be kept in memory.
+   *
+   * @param log
+   * @param dataSet
+   * @param location
+   * @return A reader for the rows, close it when done
+   * @throws KettleException
+   */
+  public DataSetRowReader getRowReader( LogChannelInterface log, DataSet dataSet, TransUnitTestSetLocation location ) throws KettleException {
+    List<Object[]> cachedRows = DataSetRowCache.findRows( this, dataSet, location );
+    if ( cachedRows != null ) {
+      return new DataSetRowListReader( cachedRows );
+    }
     switch ( type ) {
       case Database:
-        DataSetDatabaseGroup.writeDataSetData( loggingObject, this, tableName, rowMeta, dataRows );
-        break;
+        return DataSetDatabaseGroup.getRowReader( log, this, dataSet, location );
       case CSV:
-        DataSetCsvGroup.writeDataSetData( loggingObject, this, tableName, rowMeta, dataRows );
-        break;
+        return DataSetCsvGroup.getRowReader( log, this, dataSet, location );
+      case Binary:
+        return DataSetBinaryGroup.getRowReader( log, this, dataSet, location );
       default:
         throw new KettleException( type.name() + " : not supported yet" );
     }
   }
 
+  /**
+   * File based groups always hand out the rows of a location sorted on the location field order, using Kettle value comparisons.
+   * Databases sort with their own collation so those rows need to be sorted again before comparing.
+   *
+   * @return true if the rows read for a location are already sorted on its field order
+   */
+  public boolean isReadingSortedRows() {
+    return type == DataSetGroupType.CSV || type == DataSetGroupType.Binary;
+  }
+
+  public void writeDataSetData( String tableName, RowMetaInterface rowMeta, List<Object[]> dataRows ) throws KettleException {
+    writeDataSetData( tableName, rowMeta, dataRows, DataSetWriteMode.Replace, null, null );
+  }
+
+  /**
+   * Write rows to a data set table or file.
+   *
+   * @param tableName   The table name of the data set
+   * @param rowMeta     The row metadata of the rows, named after the columns
+   * @param dataRows    The rows to write
+   * @param writeMode   Replace the stored rows, append to them or upsert on the key columns
+   * @param keyColumns  The columns identifying a row in upsert mode
+   * @param sortColumns The columns the rows are stored sorted on, null or empty if they're not sorted
+   * @throws KettleException
+   */
+  public void writeDataSetData( String tableName, RowMetaInterface rowMeta, List<Object[]> dataRows, DataSetWriteMode writeMode,
+                                List<String> keyColumns, List<String> sortColumns ) throws KettleException {
+    SimpleLoggingObject loggingObject = new SimpleLoggingObject( "Writing Data Set", LoggingObjectType.TRANS, null );
+    if ( writeMode == null ) {
+      writeMode = DataSetWriteMode.Replace;
+    }
+
+    try {
+      switch ( type ) {
+        case Database:
+          DataSetDatabaseGroup.writeDataSetData( loggingObject, this, tableName, rowMeta, dataRows, writeMode, keyColumns );
+          break;
+        case CSV:
+          DataSetCsvGroup.writeDataSetData( loggingObject, this, tableName, rowMeta, dataRows, writeMode, keyColumns, sortColumns );
+          break;
+        case Binary:
+          DataSetBinaryGroup.writeDataSetData( loggingObject, this, tableName, rowMeta, dataRows, writeMode, keyColumns, sortColumns );
+          break;
+        default:
+          throw new KettleException( type.name() + " : not supported yet" );
+      }
+    } finally {
+      // Even a failed write can leave part of the rows behind
+      //
+      DataSetRowCache.invalidate( this, tableName );
+    }
+  }
+
   public void verifySettings() throws KettleException {
     if ( type == null ) {
       throw new KettleException( "No group type specified" );
@@ -162,11 +255,13 @@ public class DataSetGroup {
         }
         break;
       case CSV:
+      case Binary:
         break;
     }
   }
 
   public void createTable( String tableName, RowMetaInterface rowMeta ) throws KettleException {
+    DataSetRowCache.invalidate( this, tableName );
     switch ( type ) {
       case Database:
         DataSetDatabaseGroup.createTable( this, tableName, rowMeta );
@@ -174,6 +269,9 @@ public class DataSetGroup {
       case CSV:
         DataSetCsvGroup.createTable( this, tableName, rowMeta );
         break;
+      case Binary:
+        DataSetBinaryGroup.createTable( this, tableName, rowMeta );
+        break;
       default:
         throw new KettleException( type.name() + " : not supported yet" );
     }
@@ -267,4 +365,68 @@ public class DataSetGroup {
   public void setFolderName( String folderName ) {
     this.folderName = folderName;
   }
+
+  /**
+   * Gets batchSize
+   *
+   * @return value of batchSize, the number of rows to insert per JDBC batch when writing to a database
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize The batchSize to set
+   */
+  public void setBatchSize( int batchSize ) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets commitSize
+   *
+   * @return value of commitSize, the number of rows to write per transaction or 0 to write all rows in a single transaction
+   */
+  public int getCommitSize() {
+    return commitSize;
+  }
+
+  /**
+   * @param commitSize The commitSize to set
+   */
+  public void setCommitSize( int commitSize ) {
+    this.commitSize = commitSize;
+  }
+
+  /**
+   * Gets fetchSize
+   *
+   * @return value of fetchSize, the number of rows to fetch at a time when reading from a database
+   */
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @param fetchSize The fetchSize to set
+   */
+  public void setFetchSize( int fetchSize ) {
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Gets compression
+   *
+   * @return value of compression, the codec used to write the files of a CSV group
+   */
+  public DataSetCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * @param compression The compression to set
+   */
+  public void setCompression( DataSetCompression compression ) {
+    this.compression = compression;
+  }
 }
@@ -1,7 +1,7 @@
 package org.pentaho.di.dataset;
 
 public enum DataSetGroupType {
-  Database, CSV,
+  Database, CSV, Binary,
   ;
 
 
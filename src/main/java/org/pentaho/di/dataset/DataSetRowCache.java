@@ -0,0 +1,340 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.dataset.util.DataSetConst;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the rows of recently read data sets in memory so that tests sharing the same reference data sets
+ * don't read and parse them over and over again.
+ * The cache is shared by everything running in the JVM and is bounded by an estimated number of bytes.
+ * The least recently used rows are evicted first.
+ * <p>
+ * Cached rows are only handed out as long as the content of the data set didn't change:
+ * for files we look at the modification time and size, for all groups we keep a version stamp which is increased
+ * every time a data set is written through a group.  Databases changed outside of the data sets are not detected.
+ */
+public class DataSetRowCache {
+
+  /**
+   * The maximum size of the cache in MB, 0 disables caching
+   */
+  public static final String VARIABLE_DATASETS_ROW_CACHE_SIZE = "DATASETS_ROW_CACHE_SIZE_MB";
+
+  public static final int DEFAULT_CACHE_SIZE_MB = 64;
+
+  /**
+   * A single set of rows can take at most this part of the cache so that it doesn't evict everything else
+   */
+  private static final int MAX_ENTRY_FRACTION = 4;
+
+  public interface RowLoader {
+    List<Object[]> loadRows() throws KettleException;
+  }
+
+  private static class CacheEntry {
+    private final String sourceKey;
+    private final String fingerprint;
+    private final Object[][] rows;
+    private final long bytes;
+
+    private CacheEntry( String sourceKey, String fingerprint, Object[][] rows, long bytes ) {
+      this.sourceKey = sourceKey;
+      this.fingerprint = fingerprint;
+      this.rows = rows;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final Map<String, CacheEntry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+  private static final Map<String, Long> versions = new HashMap<>();
+
+  private static long maxBytes = Const.toLong( System.getProperty( VARIABLE_DATASETS_ROW_CACHE_SIZE ), DEFAULT_CACHE_SIZE_MB ) * 1024 * 1024;
+  private static long bytes;
+  private static long hits;
+  private static long misses;
+  private static long evictions;
+
+  /**
+   * Get the rows of a data set from the cache or load and cache them if they're not available or outdated.
+   *
+   * @param log      the log channel to report on
+   * @param group    the group of the data set
+   * @param dataSet  the data set to read
+   * @param location the location for which the rows are read or null for all the rows in the order of the data set
+   * @param loader   reads the rows when they're not in the cache
+   * @return The rows, owned by the caller
+   * @throws KettleException
+   */
+  public static List<Object[]> getRows( LogChannelInterface log, DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location, RowLoader loader ) throws KettleException {
+    if ( getMaxBytes() <= 0 ) {
+      return loader.loadRows();
+    }
+
+    String sourceKey = getSourceKey( group, dataSet.getTableName() );
+    String key = getKey( sourceKey, dataSet, location );
+
+    // Calculate the fingerprint before reading so that changes during the read invalidate the rows later on
+    //
+    String fingerprint = getFingerprint( group, sourceKey, dataSet.getTableName() );
+
+    List<Object[]> rows = getCachedRows( key, fingerprint );
+    if ( rows != null ) {
+      if ( log != null && log.isDetailed() ) {
+        log.logDetailed( "Found " + rows.size() + " rows of data set '" + dataSet.getName() + "' in the row cache" );
+      }
+      return rows;
+    }
+
+    countMiss();
+    rows = loader.loadRows();
+    put( sourceKey, key, fingerprint, rows );
+    return rows;
+  }
+
+  /**
+   * Get the rows of a data set only if they're available in the cache.
+   * Not finding them isn't counted as a miss since nothing is loaded into the cache.
+   *
+   * @param group    the group of the data set
+   * @param dataSet  the data set to read
+   * @param location the location for which the rows are read or null for all the rows in the order of the data set
+   * @return The rows, owned by the caller, or null if they weren't cached
+   */
+  public static List<Object[]> findRows( DataSetGroup group, DataSet dataSet, TransUnitTestSetLocation location ) {
+    if ( getMaxBytes() <= 0 ) {
+      return null;
+    }
+    String sourceKey = getSourceKey( group, dataSet.getTableName() );
+    return getCachedRows( getKey( sourceKey, dataSet, location ), getFingerprint( group, sourceKey, dataSet.getTableName() ) );
+  }
+
+  /**
+   * Forget the rows of a data set table, call this when it was written or re-created.
+   *
+   * @param group     The data set group
+   * @param tableName The table or file name of the data set
+   */
+  public static synchronized void invalidate( DataSetGroup group, String tableName ) {
+    String sourceKey = getSourceKey( group, tableName );
+    Long version = versions.get( sourceKey );
+    versions.put( sourceKey, version == null ? 1L : version + 1 );
+
+    Iterator<CacheEntry> iterator = entries.values().iterator();
+    while ( iterator.hasNext() ) {
+      CacheEntry entry = iterator.next();
+      if ( entry.sourceKey.equals( sourceKey ) ) {
+        bytes -= entry.bytes;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Remove all rows from the cache, for example when data set groups changed.
+   */
+  public static synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  /**
+   * @return A description of the cache usage: hits, misses, evictions and size
+   */
+  public static synchronized String getStatistics() {
+    long lookups = hits + misses;
+    return "Data set row cache: " + hits + " hits, " + misses + " misses (" + ( lookups == 0 ? 0 : hits * 100 / lookups ) + "% hit ratio), "
+      + evictions + " evictions, " + entries.size() + " data sets using " + ( bytes / 1024 ) + "kB of " + ( maxBytes / 1024 ) + "kB";
+  }
+
+  public static synchronized long getHits() {
+    return hits;
+  }
+
+  public static synchronized long getMisses() {
+    return misses;
+  }
+
+  public static synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public static synchronized long getBytes() {
+    return bytes;
+  }
+
+  public static synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Change the maximum size of the cache, evicting rows if needed.
+   *
+   * @param maxBytes The maximum estimated size of the cached rows, 0 disables caching
+   */
+  public static synchronized void setMaxBytes( long maxBytes ) {
+    DataSetRowCache.maxBytes = maxBytes;
+    evict();
+  }
+
+  private static synchronized List<Object[]> getCachedRows( String key, String fingerprint ) {
+    CacheEntry entry = entries.get( key );
+    if ( entry == null || !entry.fingerprint.equals( fingerprint ) ) {
+      return null;
+    }
+    hits++;
+
+    // The cached block never changes, the caller gets its own rows
+    //
+    List<Object[]> rows = new ArrayList<>( entry.rows.length );
+    for ( Object[] row : entry.rows ) {
+      rows.add( row.clone() );
+    }
+    return rows;
+  }
+
+  private static synchronized void countMiss() {
+    misses++;
+  }
+
+  private static void put( String sourceKey, String key, String fingerprint, List<Object[]> rows ) {
+    long size = 16L + rows.size() * 8L;
+    for ( Object[] row : rows ) {
+      size += DataSetConst.estimateRowSize( row );
+    }
+
+    // Keep a copy of the rows, the caller is free to modify its own
+    //
+    Object[][] block = new Object[ rows.size() ][];
+    for ( int i = 0; i < block.length; i++ ) {
+      block[ i ] = rows.get( i ).clone();
+    }
+
+    synchronized ( DataSetRowCache.class ) {
+      CacheEntry previous = entries.remove( key );
+      if ( previous != null ) {
+        bytes -= previous.bytes;
+      }
+      if ( size > maxBytes / MAX_ENTRY_FRACTION ) {
+        return;
+      }
+      entries.put( key, new CacheEntry( sourceKey, fingerprint, block, size ) );
+      bytes += size;
+      evict();
+    }
+  }
+
+  private static synchronized void evict() {
+    Iterator<CacheEntry> iterator = entries.values().iterator();
+    while ( bytes > maxBytes && iterator.hasNext() ) {
+      CacheEntry entry = iterator.next();
+      bytes -= entry.bytes;
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private static String getSourceKey( DataSetGroup group, String tableName ) {
+    StringBuilder key = new StringBuilder();
+    key.append( group.getType() ).append( '|' ).append( group.getName() ).append( '|' );
+    switch ( group.getType() ) {
+      case CSV:
+        key.append( DataSetCsvGroup.getDataSetFilename( group, tableName ) );
+        break;
+      case Binary:
+        key.append( DataSetBinaryGroup.getDataSetFilename( group, tableName ) );
+        break;
+      default:
+        if ( group.getDatabaseMeta() != null ) {
+          key.append( group.getDatabaseMeta().getName() ).append( '|' );
+        }
+        key.append( Const.NVL( group.getSchemaName(), "" ) ).append( '|' ).append( tableName );
+        break;
+    }
+    return key.toString();
+  }
+
+  /**
+   * The rows differ for every data set definition and every location mapping and order.
+   */
+  private static String getKey( String sourceKey, DataSet dataSet, TransUnitTestSetLocation location ) {
+    StringBuilder key = new StringBuilder( sourceKey );
+    for ( DataSetField field : dataSet.getFields() ) {
+      key.append( '|' ).append( field.getFieldName() ).append( ':' ).append( field.getColumnName() )
+        .append( ':' ).append( field.getType() ).append( ':' ).append( field.getLength() ).append( ':' ).append( field.getPrecision() );
+    }
+    if ( location != null ) {
+      key.append( "|mapping" );
+      for ( TransUnitTestFieldMapping mapping : location.getFieldMappings() ) {
+        key.append( '|' ).append( mapping.getDataSetFieldName() );
+      }
+      key.append( "|order|" ).append( StringUtils.join( location.getFieldOrder(), '|' ) );
+    }
+    return key.toString();
+  }
+
+  private static String getFingerprint( DataSetGroup group, String sourceKey, String tableName ) {
+    Long version;
+    synchronized ( DataSetRowCache.class ) {
+      version = versions.get( sourceKey );
+    }
+    String fingerprint = "v" + ( version == null ? 0L : version );
+
+    if ( group.getType() == DataSetGroupType.CSV || group.getType() == DataSetGroupType.Binary ) {
+      try {
+        // CSV files can be compressed in various ways, look at the file that's actually read
+        //
+        FileObject file;
+        if ( group.getType() == DataSetGroupType.CSV ) {
+          file = DataSetCsvGroup.getDataSetFile( group, tableName );
+        } else {
+          file = KettleVFS.getFileObject( DataSetBinaryGroup.getDataSetFilename( group, tableName ) );
+        }
+        if ( file.exists() ) {
+          fingerprint += "|" + file.getName().getBaseName() + "|" + file.getContent().getLastModifiedTime() + "|" + file.getContent().getSize();
+        } else {
+          fingerprint += "|missing";
+        }
+      } catch ( Exception e ) {
+        // Never use cached rows if we can't tell what's in the file
+        //
+        fingerprint += "|" + System.nanoTime();
+      }
+    }
+    return fingerprint;
+  }
+}
@@ -0,0 +1,52 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hands out the rows of a list which was already read into memory.
+ */
+public class DataSetRowListReader implements DataSetRowReader {
+
+  private Iterator<Object[]> iterator;
+
+  public DataSetRowListReader( List<Object[]> rows ) {
+    this.iterator = rows.iterator();
+  }
+
+  @Override
+  public Object[] getRow() {
+    if ( iterator.hasNext() ) {
+      return iterator.next();
+    }
+    return null;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+}
@@ -0,0 +1,277 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.dataset.util.RowKeyEncoder;
+import org.pentaho.di.dataset.util.RowSorter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the rows written in append or upsert mode with the rows stored in a data set file.
+ * The stored rows are streamed through, only the new rows are kept in memory.
+ * <p>
+ * In upsert mode a stored row with the key of a new row is replaced by it.  If the new rows contain the same key more
+ * than once the last row wins.  Like in SQL a key with a null value never matches another key: new rows with a null key
+ * value are always added and stored rows with a null key value are never replaced.  When the data set is stored sorted
+ * the new rows are merged in at their sorted position, otherwise replaced rows keep their position and the other new
+ * rows are added at the end.
+ */
+public class DataSetRowMerger {
+
+  public interface RowConsumer {
+    void putRow( Object[] row ) throws KettleException;
+  }
+
+  private final RowMetaInterface rowMeta;
+  private final int[] keyIndexes;
+  private final RowKeyEncoder keyEncoder;
+  private final Comparator<Object[]> sortComparator;
+
+  private final List<Object[]> newRows;
+  private final Map<Object, Object[]> newRowsByKey;
+
+  private long nrReplaced;
+  private long nrKept;
+
+  /**
+   * @param rowMeta     The metadata of the stored and the new rows, named after the columns
+   * @param newRows     The rows to write
+   * @param writeMode   Append or Upsert
+   * @param keyColumns  The columns identifying a row in upsert mode
+   * @param sortColumns The columns the data set is stored sorted on, empty if it isn't sorted
+   * @throws KettleException
+   */
+  public DataSetRowMerger( RowMetaInterface rowMeta, List<Object[]> newRows, DataSetWriteMode writeMode,
+                           List<String> keyColumns, List<String> sortColumns ) throws KettleException {
+    this.rowMeta = rowMeta;
+
+    List<Object[]> rowsToWrite;
+    if ( writeMode == DataSetWriteMode.Upsert ) {
+      keyIndexes = getKeyIndexes( rowMeta, keyColumns );
+      keyEncoder = RowKeyEncoder.isSupported( rowMeta, keyIndexes ) ? new RowKeyEncoder( rowMeta, keyIndexes ) : null;
+
+      // Keep the last row for every key, at the position of that last row so that sorted rows stay sorted
+      //
+      newRowsByKey = new LinkedHashMap<>();
+      for ( Object[] row : newRows ) {
+        Object key = getKey( row );
+        if ( key == null ) {
+          // A key which doesn't match anything, not even itself
+          //
+          key = new Object();
+        }
+        newRowsByKey.remove( key );
+        newRowsByKey.put( key, row );
+      }
+      rowsToWrite = new ArrayList<>( newRowsByKey.values() );
+    } else {
+      keyIndexes = null;
+      keyEncoder = null;
+      newRowsByKey = null;
+      rowsToWrite = new ArrayList<>( newRows );
+    }
+
+    if ( sortColumns == null || sortColumns.isEmpty() ) {
+      sortComparator = null;
+    } else {
+      RowSorter sorter = RowSorter.create( rowMeta, sortColumns );
+      sortComparator = sorter.getRowComparator();
+      sorter.sort( rowsToWrite );
+    }
+    this.newRows = rowsToWrite;
+  }
+
+  /**
+   * @param rowMeta    The metadata of the rows
+   * @param keyColumns The key columns
+   * @return The indexes of the key columns in the rows
+   * @throws KettleException if no key columns are given or a key column can't be found
+   */
+  public static int[] getKeyIndexes( RowMetaInterface rowMeta, List<String> keyColumns ) throws KettleException {
+    if ( keyColumns == null || keyColumns.isEmpty() ) {
+      throw new KettleException( "Writing rows in upsert mode needs key columns" );
+    }
+    int[] keyIndexes = new int[ keyColumns.size() ];
+    for ( int i = 0; i < keyIndexes.length; i++ ) {
+      keyIndexes[ i ] = rowMeta.indexOfValue( keyColumns.get( i ) );
+      if ( keyIndexes[ i ] < 0 ) {
+        throw new KettleException( "Unable to find key column '" + keyColumns.get( i ) + "' in : " + Arrays.toString( rowMeta.getFieldNames() ) );
+      }
+    }
+    return keyIndexes;
+  }
+
+  /**
+   * @return The new rows to write.  In upsert mode only the last row for every key without null values is kept.
+   */
+  public List<Object[]> getNewRows() {
+    return newRows;
+  }
+
+  /**
+   * Pass the stored rows and the new rows in the order in which they need to be written
+   *
+   * @param storedRows The stored rows, in the order of the file
+   * @param output     Receives the rows to write
+   * @throws KettleException
+   */
+  public void merge( DataSetRowReader storedRows, RowConsumer output ) throws KettleException {
+    nrReplaced = 0;
+    nrKept = 0;
+    try {
+      if ( sortComparator != null ) {
+        mergeSorted( storedRows, output );
+      } else {
+        mergeUnsorted( storedRows, output );
+      }
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Error merging new rows into the stored data set rows", e );
+    }
+  }
+
+  private void mergeSorted( DataSetRowReader storedRows, RowConsumer output ) throws KettleException {
+    Set<Object> newKeys = newRowsByKey == null ? null : new HashSet<>( newRowsByKey.keySet() );
+    int next = 0;
+    Object[] storedRow;
+    while ( ( storedRow = storedRows.getRow() ) != null ) {
+      Object key = newKeys == null ? null : getKey( storedRow );
+      if ( key != null && newKeys.contains( key ) ) {
+        // The new version of the row is written at its own sorted position
+        //
+        nrReplaced++;
+        continue;
+      }
+      while ( next < newRows.size() && sortComparator.compare( newRows.get( next ), storedRow ) < 0 ) {
+        output.putRow( newRows.get( next++ ) );
+      }
+      output.putRow( storedRow );
+      nrKept++;
+    }
+    while ( next < newRows.size() ) {
+      output.putRow( newRows.get( next++ ) );
+    }
+  }
+
+  private void mergeUnsorted( DataSetRowReader storedRows, RowConsumer output ) throws KettleException {
+    Map<Object, Object[]> pendingRows = newRowsByKey == null ? null : new LinkedHashMap<>( newRowsByKey );
+    Object[] storedRow;
+    while ( ( storedRow = storedRows.getRow() ) != null ) {
+      Object key = pendingRows == null ? null : getKey( storedRow );
+      if ( key != null ) {
+        Object[] newRow = pendingRows.remove( key );
+        if ( newRow != null ) {
+          output.putRow( newRow );
+          nrReplaced++;
+          continue;
+        }
+      }
+      output.putRow( storedRow );
+      nrKept++;
+    }
+    for ( Object[] newRow : pendingRows == null ? newRows : pendingRows.values() ) {
+      output.putRow( newRow );
+    }
+  }
+
+  /**
+   * @return The key of the row or null if a key value is null
+   */
+  private Object getKey( Object[] row ) throws KettleValueException {
+    for ( int keyIndex : keyIndexes ) {
+      if ( rowMeta.getValueMeta( keyIndex ).isNull( row[ keyIndex ] ) ) {
+        return null;
+      }
+    }
+    if ( keyEncoder != null ) {
+      return ByteBuffer.wrap( keyEncoder.encode( row ) );
+    }
+    return new RowKey( row );
+  }
+
+  /**
+   * Gets nrReplaced
+   *
+   * @return value of nrReplaced, the number of stored rows replaced during the last merge
+   */
+  public long getNrReplaced() {
+    return nrReplaced;
+  }
+
+  /**
+   * Gets nrKept
+   *
+   * @return value of nrKept, the number of stored rows written unchanged during the last merge
+   */
+  public long getNrKept() {
+    return nrKept;
+  }
+
+  /**
+   * The key of a row with types the key encoder doesn't support, compared with the value metadata
+   */
+  private class RowKey {
+    private final Object[] row;
+    private final int hashCode;
+
+    private RowKey( Object[] row ) {
+      this.row = row;
+      int hash = 1;
+      for ( int keyIndex : keyIndexes ) {
+        try {
+          hash = hash * 31 + rowMeta.getValueMeta( keyIndex ).hashCode( row[ keyIndex ] );
+        } catch ( KettleValueException e ) {
+          hash = hash * 31;
+        }
+      }
+      this.hashCode = hash;
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+
+    @Override public boolean equals( Object obj ) {
+      if ( !( obj instanceof RowKey ) ) {
+        return false;
+      }
+      try {
+        return rowMeta.compare( row, ( (RowKey) obj ).row, keyIndexes ) == 0;
+      } catch ( KettleValueException e ) {
+        return false;
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * A cursor over the rows of a data set.
+ * Rows are handed out one at a time so that the complete data set never needs to be kept in memory.
+ * Every row handed out is owned by the caller.
+ * Always close the reader when you're done with it, also when an error occurred.
+ */
+public interface DataSetRowReader extends AutoCloseable {
+
+  /**
+   * Get the next row from the data set
+   *
+   * @return The next row or null if there are no more rows
+   * @throws KettleException In case there was an error reading or converting the data
+   */
+  Object[] getRow() throws KettleException;
+
+  /**
+   * Release the resources held by this reader.
+   *
+   * @throws KettleException
+   */
+  @Override
+  void close() throws KettleException;
+}
@@ -0,0 +1,67 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.StringUtil;
+
+import java.util.Arrays;
+
+/**
+ * How rows are written to a data set:
+ * <ul>
+ * <li>Replace: the rows replace the current content of the data set</li>
+ * <li>Append: the rows are added to the current content</li>
+ * <li>Upsert: rows with the key of a stored row replace it, the other rows are added</li>
+ * </ul>
+ */
+public enum DataSetWriteMode {
+  Replace, Append, Upsert,
+  ;
+
+  public static String[] getNames() {
+    String names[] = new String[ values().length ];
+    for ( int i = 0; i < names.length; i++ ) {
+      names[ i ] = values()[ i ].name();
+    }
+    return names;
+  }
+
+  /**
+   * @param name The name of the write mode, case insensitive
+   * @return The write mode, Replace if no name is given
+   * @throws KettleException in case the name isn't the name of a write mode
+   */
+  public static DataSetWriteMode fromName( String name ) throws KettleException {
+    if ( StringUtil.isEmpty( name ) ) {
+      return Replace;
+    }
+    for ( DataSetWriteMode writeMode : values() ) {
+      if ( writeMode.name().equalsIgnoreCase( name.trim() ) ) {
+        return writeMode;
+      }
+    }
+    throw new KettleException( "Unknown data set write mode '" + name + "', use one of " + Arrays.toString( getNames() ) );
+  }
+}
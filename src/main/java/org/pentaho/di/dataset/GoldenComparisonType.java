@@ -0,0 +1,33 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.dataset;
+
+/**
+ * The way the rows of a step are compared to the rows of a golden data set.
+ * SORTED sorts both sides on the location field order and compares row by row.
+ * HASHED compares the rows regardless of their order.
+ * STREAMING compares the rows while the transformation runs, the step needs to produce them in the golden data set order.
+ */
+public enum GoldenComparisonType {
+  SORTED, HASHED, STREAMING;
+}
@@ -46,9 +46,13 @@ public class TransUnitTestSetLocation {
   @MetaStoreAttribute( key = "field_order" )
   protected List<String> fieldOrder;
 
+  @MetaStoreAttribute( key = "comparison_type" )
+  protected GoldenComparisonType comparisonType;
+
   public TransUnitTestSetLocation() {
     fieldMappings = new ArrayList<TransUnitTestFieldMapping>();
     fieldOrder = new ArrayList<String>();
+    comparisonType = GoldenComparisonType.SORTED;
   }
 
   public TransUnitTestSetLocation( String stepname, String dataSetName, List<TransUnitTestFieldMapping> fieldMappings, List<String> fieldOrder ) {
@@ -100,4 +104,17 @@ public class TransUnitTestSetLocation {
     this.fieldOrder = fieldOrder;
   }
 
+  /**
+   * Only used for golden data sets.
+   *
+   * @return The way the step rows are compared to the golden rows
+   */
+  public GoldenComparisonType getComparisonType() {
+    return comparisonType;
+  }
+
+  public void setComparisonType( GoldenComparisonType comparisonType ) {
+    this.comparisonType = comparisonType;
+  }
+
 }
@@ -45,7 +45,9 @@ import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.dataset.DataSet;
 import org.pentaho.di.dataset.DataSetField;
+import org.pentaho.di.dataset.DataSetDatabasePool;
 import org.pentaho.di.dataset.DataSetGroup;
+import org.pentaho.di.dataset.DataSetRowCache;
 import org.pentaho.di.dataset.TransTweak;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.TransUnitTestFieldMapping;
@@ -201,6 +203,9 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
       //
       if ( message == null ) {
         groupFactory.saveElement( dataSetGroup );
+        FactoriesHierarchy.invalidateCache();
+        DataSetDatabasePool.closeAll();
+        DataSetRowCache.clear();
         break;
       } else {
         MessageBox box = new MessageBox( spoon.getShell(), SWT.OK );
@@ -234,6 +239,9 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
         //
         if ( message == null ) {
           groupFactory.saveElement( dataSetGroup );
+          FactoriesHierarchy.invalidateCache();
+          DataSetDatabasePool.closeAll();
+          DataSetRowCache.clear();
           break;
         } else {
           MessageBox box = new MessageBox( spoon.getShell(), SWT.OK );
@@ -265,6 +273,9 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
         // TODO: Find the unit tests for this group, if there are any, we can't remove the group
         //
         groupFactory.deleteElement( groupName );
+        FactoriesHierarchy.invalidateCache();
+        DataSetDatabasePool.closeAll();
+        DataSetRowCache.clear();
       }
     } catch ( Exception e ) {
       new ErrorDialog( spoon.getShell(), "Error", "Error retrieving the list of data set groups or deleting a group", e );
@@ -293,6 +304,7 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
           }
           break;
         case CSV:
+        case Binary:
           break;
       }
     }
@@ -383,6 +395,7 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
         //
         if ( message == null ) {
           setFactory.saveElement( dataSet );
+          FactoriesHierarchy.invalidateCache();
           break;
         } else {
           MessageBox box = new MessageBox( spoon.getShell(), SWT.OK );
@@ -435,6 +448,7 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
       try {
         FactoriesHierarchy hierarchy = getHierarchy();
         hierarchy.getSetFactory().deleteElement( setName );
+        FactoriesHierarchy.invalidateCache();
       } catch ( Exception exception ) {
         new ErrorDialog( Spoon.getInstance().getShell(),
           BaseMessages.getString( PKG, "DataSetHelper.ErrorDeletingDataSet.Title" ),
@@ -466,7 +480,7 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
     try {
 
       List<DatabaseMeta> databases = getAvailableDatabases( spoon.getRepository() );
-      FactoriesHierarchy hierarchy = new FactoriesHierarchy( metaStore, databases );
+      FactoriesHierarchy hierarchy = FactoriesHierarchy.getCachedHierarchy( metaStore, databases );
 
       MetaStoreFactory<DataSet> setFactory = hierarchy.getSetFactory();
       List<String> setNames = setFactory.getElementNames();
@@ -681,6 +695,21 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
         }
         goldenLocation.setFieldOrder( setFieldOrder );
 
+        // File based golden data can be stored in this order so tests don't need to sort it every time
+        //
+        if ( !setFieldOrder.isEmpty() && dataSet.getGroup().isReadingSortedRows() && !dataSet.isSortedOn( setFieldOrder ) ) {
+          MessageBox box = new MessageBox( spoon.getShell(), SWT.YES | SWT.NO | SWT.ICON_QUESTION );
+          box.setText( BaseMessages.getString( PKG, "DataSetHelper.StoreSorted.Title" ) );
+          box.setMessage( BaseMessages.getString( PKG, "DataSetHelper.StoreSorted.Message", dataSet.getName(), setFieldOrder.toString() ) );
+          if ( ( box.open() & SWT.YES ) != 0 ) {
+            List<Object[]> setRows = dataSet.getAllRows( LogChannel.UI );
+            dataSet.setSortFields( setFieldOrder );
+            dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), setRows );
+            setFactory.saveElement( dataSet );
+            FactoriesHierarchy.invalidateCache();
+          }
+        }
+
         // Save the unit test...
         //
         saveUnitTest( getHierarchy().getTestFactory(), unitTest, transMeta );
@@ -757,7 +786,7 @@ public class DataSetHelper extends AbstractXulEventHandler implements ISpoonMenu
       Spoon spoon = Spoon.getInstance();
 
       List<DatabaseMeta> databases = getAvailableDatabases( spoon.getRepository() );
-      FactoriesHierarchy hierarchy = new FactoriesHierarchy( spoon.getMetaStore(), databases );
+      FactoriesHierarchy hierarchy = FactoriesHierarchy.getCachedHierarchy( spoon.getMetaStore(), databases );
       return hierarchy;
     } catch ( Exception e ) {
       throw new KettleException( "Unable to get MetaStore factories hierarchy", e );
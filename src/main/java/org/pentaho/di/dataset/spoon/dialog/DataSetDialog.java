@@ -75,6 +75,7 @@ import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.persist.MetaStoreFactory;
 import org.pentaho.metastore.util.PentahoDefaults;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -90,6 +91,7 @@ public class DataSetDialog extends Dialog {
   private Text wName;
   private Text wDescription;
   private Text wTableName;
+  private Text wSortFields;
   private Combo wDataSetGroup;
   private TableView wFieldMapping;
 
@@ -198,6 +200,25 @@ public class DataSetDialog extends Dialog {
     wTableName.setLayoutData( fdTableName );
     lastControl = wTableName;
 
+    // The fields the rows are stored sorted on, set when assigning a golden data set...
+    //
+    Label wlSortFields = new Label( shell, SWT.RIGHT );
+    props.setLook( wlSortFields );
+    wlSortFields.setText( BaseMessages.getString( PKG, "DataSetDialog.SortFields.Label" ) );
+    FormData fdlSortFields = new FormData();
+    fdlSortFields.top = new FormAttachment( lastControl, margin );
+    fdlSortFields.left = new FormAttachment( 0, 0 );
+    fdlSortFields.right = new FormAttachment( middle, -margin );
+    wlSortFields.setLayoutData( fdlSortFields );
+    wSortFields = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( wSortFields );
+    FormData fdSortFields = new FormData();
+    fdSortFields.top = new FormAttachment( lastControl, margin );
+    fdSortFields.left = new FormAttachment( middle, 0 );
+    fdSortFields.right = new FormAttachment( 100, 0 );
+    wSortFields.setLayoutData( fdSortFields );
+    lastControl = wSortFields;
+
     // The data set group...
     //
     Label wlGroup = new Label( shell, SWT.RIGHT );
@@ -533,8 +554,6 @@ public class DataSetDialog extends Dialog {
 
       DataSet set = new DataSet();
       getInfo( set );
-      DataSetGroup group = set.getGroup();
-
       // get rows from the data set...
       //
       List<Object[]> rows = set.getAllRows( LogChannel.UI );
@@ -551,7 +570,7 @@ public class DataSetDialog extends Dialog {
       if ( newList != null ) {
         // Write the rows back to the data set
         //
-        group.writeDataSetData( set.getTableName(), columnsRowMeta, newList );
+        set.writeDataSetData( columnsRowMeta, newList );
       }
 
     } catch ( Exception e ) {
@@ -591,6 +610,9 @@ public class DataSetDialog extends Dialog {
     wDescription.setText( Const.NVL( dataSet.getDescription(), "" ) );
     wDataSetGroup.setText( Const.NVL( dataSet.getGroup() == null ? null : dataSet.getGroup().getName(), "" ) );
     wTableName.setText( Const.NVL( dataSet.getTableName(), "" ) );
+    if ( dataSet.getSortFields() != null ) {
+      wSortFields.setText( StringUtils.join( dataSet.getSortFields(), ", " ) );
+    }
     for ( int i = 0; i < dataSet.getFields().size(); i++ ) {
       DataSetField field = dataSet.getFields().get( i );
       int colnr = 1;
@@ -619,6 +641,9 @@ public class DataSetDialog extends Dialog {
     set.setDescription( wDescription.getText() );
     set.setGroup( DataSetConst.findDataSetGroup( groups, wDataSetGroup.getText() ) );
     set.setTableName( wTableName.getText() );
+    if ( set != dataSet && dataSet.getSortFields() != null ) {
+      set.setSortFields( new ArrayList<>( dataSet.getSortFields() ) );
+    }
     set.getFields().clear();
     int nrFields = wFieldMapping.nrNonEmpty();
     for ( int i = 0; i < nrFields; i++ ) {
@@ -45,6 +45,8 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.dataset.DataSetCompression;
+import org.pentaho.di.dataset.DataSetDatabaseGroup;
 import org.pentaho.di.dataset.DataSetGroup;
 import org.pentaho.di.dataset.DataSetGroupType;
 import org.pentaho.di.i18n.BaseMessages;
@@ -76,10 +78,14 @@ public class DataSetGroupDialog extends Dialog {
   //
   private Combo wDatabase;
   private Text wSchemaName;
+  private Text wBatchSize;
+  private Text wCommitSize;
+  private Text wFetchSize;
 
   // CSV type
   //
   private TextVar wFolderName;
+  private Combo wCompression;
 
   private Button wOK, wCancel;
 
@@ -224,6 +230,63 @@ public class DataSetGroupDialog extends Dialog {
     fdSchemaName.left = new FormAttachment( middle, 0 );
     fdSchemaName.right = new FormAttachment( 100, 0 );
     wSchemaName.setLayoutData( fdSchemaName );
+    lastGroupControl = wSchemaName;
+
+    // The number of rows per insert batch
+    //
+    Label wlBatchSize = new Label( wgDatabase, SWT.RIGHT );
+    props.setLook( wlBatchSize );
+    wlBatchSize.setText( BaseMessages.getString( PKG, "DataSetGroupDialog.GroupBatchSize.Label" ) );
+    FormData fdlBatchSize = new FormData();
+    fdlBatchSize.top = new FormAttachment( lastGroupControl, margin );
+    fdlBatchSize.left = new FormAttachment( 0, 0 );
+    fdlBatchSize.right = new FormAttachment( middle, -margin );
+    wlBatchSize.setLayoutData( fdlBatchSize );
+    wBatchSize = new Text( wgDatabase, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchSize );
+    FormData fdBatchSize = new FormData();
+    fdBatchSize.top = new FormAttachment( wlBatchSize, 0, SWT.CENTER );
+    fdBatchSize.left = new FormAttachment( middle, 0 );
+    fdBatchSize.right = new FormAttachment( 100, 0 );
+    wBatchSize.setLayoutData( fdBatchSize );
+    lastGroupControl = wBatchSize;
+
+    // The number of rows per transaction
+    //
+    Label wlCommitSize = new Label( wgDatabase, SWT.RIGHT );
+    props.setLook( wlCommitSize );
+    wlCommitSize.setText( BaseMessages.getString( PKG, "DataSetGroupDialog.GroupCommitSize.Label" ) );
+    FormData fdlCommitSize = new FormData();
+    fdlCommitSize.top = new FormAttachment( lastGroupControl, margin );
+    fdlCommitSize.left = new FormAttachment( 0, 0 );
+    fdlCommitSize.right = new FormAttachment( middle, -margin );
+    wlCommitSize.setLayoutData( fdlCommitSize );
+    wCommitSize = new Text( wgDatabase, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCommitSize );
+    FormData fdCommitSize = new FormData();
+    fdCommitSize.top = new FormAttachment( wlCommitSize, 0, SWT.CENTER );
+    fdCommitSize.left = new FormAttachment( middle, 0 );
+    fdCommitSize.right = new FormAttachment( 100, 0 );
+    wCommitSize.setLayoutData( fdCommitSize );
+    lastGroupControl = wCommitSize;
+
+    // The number of rows to fetch at a time when reading
+    //
+    Label wlFetchSize = new Label( wgDatabase, SWT.RIGHT );
+    props.setLook( wlFetchSize );
+    wlFetchSize.setText( BaseMessages.getString( PKG, "DataSetGroupDialog.GroupFetchSize.Label" ) );
+    FormData fdlFetchSize = new FormData();
+    fdlFetchSize.top = new FormAttachment( lastGroupControl, margin );
+    fdlFetchSize.left = new FormAttachment( 0, 0 );
+    fdlFetchSize.right = new FormAttachment( middle, -margin );
+    wlFetchSize.setLayoutData( fdlFetchSize );
+    wFetchSize = new Text( wgDatabase, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wFetchSize );
+    FormData fdFetchSize = new FormData();
+    fdFetchSize.top = new FormAttachment( wlFetchSize, 0, SWT.CENTER );
+    fdFetchSize.left = new FormAttachment( middle, 0 );
+    fdFetchSize.right = new FormAttachment( 100, 0 );
+    wFetchSize.setLayoutData( fdFetchSize );
 
     FormData fdgDatabase = new FormData();
     fdgDatabase.top = new FormAttachment( lastControl, margin * 2 );
@@ -234,7 +297,7 @@ public class DataSetGroupDialog extends Dialog {
 
     wgCsv = new Group( shell, SWT.NO_BACKGROUND | SWT.SHADOW_ETCHED_IN );
     props.setLook( wgCsv );
-    wgCsv.setText( "CSV settings" );
+    wgCsv.setText( "CSV and Binary settings" );
     FormLayout csvGroupLayout = new FormLayout();
     csvGroupLayout.spacing = 10;
     csvGroupLayout.marginTop = 10;
@@ -260,6 +323,25 @@ public class DataSetGroupDialog extends Dialog {
     fdFolderName.right = new FormAttachment( 100, 0 );
     wFolderName.setLayoutData( fdFolderName );
 
+    // The compression of the CSV files...
+    //
+    Label wlCompression = new Label( wgCsv, SWT.RIGHT );
+    props.setLook( wlCompression );
+    wlCompression.setText( BaseMessages.getString( PKG, "DataSetGroupDialog.GroupCompression.Label" ) );
+    FormData fdlCompression = new FormData();
+    fdlCompression.top = new FormAttachment( wFolderName, margin );
+    fdlCompression.left = new FormAttachment( 0, 0 );
+    fdlCompression.right = new FormAttachment( middle, -margin );
+    wlCompression.setLayoutData( fdlCompression );
+    wCompression = new Combo( wgCsv, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCompression );
+    wCompression.setItems( DataSetCompression.getNames() );
+    FormData fdCompression = new FormData();
+    fdCompression.top = new FormAttachment( wlCompression, 0, SWT.CENTER );
+    fdCompression.left = new FormAttachment( middle, 0 );
+    fdCompression.right = new FormAttachment( 100, 0 );
+    wCompression.setLayoutData( fdCompression );
+
     FormData fdgCsv = new FormData();
     fdgCsv.top = new FormAttachment( lastControl, margin * 2 );
     fdgCsv.left = new FormAttachment( 0, 0 );
@@ -297,6 +379,9 @@ public class DataSetGroupDialog extends Dialog {
     wName.addSelectionListener( selAdapter );
     wDescription.addSelectionListener( selAdapter );
     wSchemaName.addSelectionListener( selAdapter );
+    wBatchSize.addSelectionListener( selAdapter );
+    wCommitSize.addSelectionListener( selAdapter );
+    wFetchSize.addSelectionListener( selAdapter );
     wFolderName.addSelectionListener( selAdapter );
     wGroupType.addSelectionListener( selAdapter );
 
@@ -327,9 +412,14 @@ public class DataSetGroupDialog extends Dialog {
     wgDatabase.setEnabled( type == DataSetGroupType.Database );
     wDatabase.setEnabled( type == DataSetGroupType.Database );
     wSchemaName.setEnabled( type == DataSetGroupType.Database );
+    wBatchSize.setEnabled( type == DataSetGroupType.Database );
+    wCommitSize.setEnabled( type == DataSetGroupType.Database );
+    wFetchSize.setEnabled( type == DataSetGroupType.Database );
 
-    wgCsv.setEnabled( type == DataSetGroupType.CSV );
-    wFolderName.setEnabled( type == DataSetGroupType.CSV );
+    boolean fileBased = type == DataSetGroupType.CSV || type == DataSetGroupType.Binary;
+    wgCsv.setEnabled( fileBased );
+    wFolderName.setEnabled( fileBased );
+    wCompression.setEnabled( type == DataSetGroupType.CSV );
 
   }
 
@@ -349,7 +439,11 @@ public class DataSetGroupDialog extends Dialog {
     wGroupType.setText( dataSetGroup.getType() == null ? DataSetGroupType.Database.name() : dataSetGroup.getType().name() );
     wDatabase.setText( Const.NVL( dataSetGroup.getDatabaseMeta() == null ? null : dataSetGroup.getDatabaseMeta().getName(), "" ) );
     wSchemaName.setText( Const.NVL( dataSetGroup.getSchemaName(), "" ) );
+    wBatchSize.setText( Integer.toString( dataSetGroup.getBatchSize() ) );
+    wCommitSize.setText( Integer.toString( dataSetGroup.getCommitSize() ) );
+    wFetchSize.setText( Integer.toString( dataSetGroup.getFetchSize() ) );
     wFolderName.setText( Const.NVL( dataSetGroup.getFolderName(), "" ) );
+    wCompression.setText( dataSetGroup.getCompression() == null ? DataSetCompression.None.name() : dataSetGroup.getCompression().name() );
 
     enableGroups();
 
@@ -368,7 +462,11 @@ public class DataSetGroupDialog extends Dialog {
     dataSetGroup.setType( DataSetGroupType.fromName( wGroupType.getText() ) );
     dataSetGroup.setDatabaseMeta( DatabaseMeta.findDatabase( databases, wDatabase.getText() ) );
     dataSetGroup.setSchemaName( wSchemaName.getText() );
+    dataSetGroup.setBatchSize( Const.toInt( wBatchSize.getText(), DataSetDatabaseGroup.DEFAULT_BATCH_SIZE ) );
+    dataSetGroup.setCommitSize( Const.toInt( wCommitSize.getText(), 0 ) );
+    dataSetGroup.setFetchSize( Const.toInt( wFetchSize.getText(), DataSetDatabaseGroup.DEFAULT_FETCH_SIZE ) );
     dataSetGroup.setFolderName( wFolderName.getText() );
+    dataSetGroup.setCompression( DataSetCompression.fromName( wCompression.getText() ) );
 
     ok = true;
 
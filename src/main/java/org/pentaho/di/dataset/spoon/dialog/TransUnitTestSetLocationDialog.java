@@ -50,6 +50,7 @@ import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.dataset.DataSet;
 import org.pentaho.di.dataset.TransUnitTestFieldMapping;
 import org.pentaho.di.dataset.TransUnitTestSetLocation;
+import org.pentaho.di.dataset.util.DataSetConst;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.ui.core.PropsUI;
 import org.pentaho.di.ui.core.dialog.EnterMappingDialog;
@@ -70,6 +71,7 @@ public class TransUnitTestSetLocationDialog extends Dialog {
   private TransUnitTestSetLocation location;
   private final List<DataSet> dataSets;
   private final Map<String, RowMetaInterface> stepFieldsMap;
+  private final boolean golden;
 
   private String[] stepNames;
   private String[] datasetNames;
@@ -78,6 +80,7 @@ public class TransUnitTestSetLocationDialog extends Dialog {
 
   private Combo wStepName;
   private Combo wDatasetName;
+  private Combo wComparisonType;
   private TableView wFieldMappings;
   private TableView wFieldOrder;
 
@@ -96,10 +99,18 @@ public class TransUnitTestSetLocationDialog extends Dialog {
   private List<DatabaseMeta> databases;
 
   public TransUnitTestSetLocationDialog( Shell parent, TransUnitTestSetLocation location, List<DataSet> dataSets, Map<String, RowMetaInterface> stepFieldsMap ) {
+    this( parent, location, dataSets, stepFieldsMap, false );
+  }
+
+  /**
+   * @param golden true if the location is for a golden data set, this enables the comparison settings
+   */
+  public TransUnitTestSetLocationDialog( Shell parent, TransUnitTestSetLocation location, List<DataSet> dataSets, Map<String, RowMetaInterface> stepFieldsMap, boolean golden ) {
     super( parent, SWT.NONE );
     this.location = location;
     this.dataSets = dataSets;
     this.stepFieldsMap = stepFieldsMap;
+    this.golden = golden;
     props = PropsUI.getInstance();
     ok = false;
 
@@ -164,6 +175,27 @@ public class TransUnitTestSetLocationDialog extends Dialog {
     wDatasetName.setLayoutData( fdDatasetName );
     lastControl = wDatasetName;
 
+    // How to compare step output with the golden rows
+    //
+    Label wlComparisonType = new Label( shell, SWT.RIGHT );
+    props.setLook( wlComparisonType );
+    wlComparisonType.setText( BaseMessages.getString( PKG, "TransUnitTestSetLocationDialog.ComparisonType.Label" ) );
+    FormData fdlComparisonType = new FormData();
+    fdlComparisonType.top = new FormAttachment( lastControl, margin );
+    fdlComparisonType.left = new FormAttachment( 0, 0 );
+    fdlComparisonType.right = new FormAttachment( middle, -margin );
+    wlComparisonType.setLayoutData( fdlComparisonType );
+    wComparisonType = new Combo( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER | SWT.READ_ONLY );
+    wComparisonType.setItems( DataSetConst.getComparisonTypeDescriptions() );
+    FormData fdComparisonType = new FormData();
+    fdComparisonType.top = new FormAttachment( lastControl, margin );
+    fdComparisonType.left = new FormAttachment( middle, 0 );
+    fdComparisonType.right = new FormAttachment( 100, 0 );
+    wComparisonType.setLayoutData( fdComparisonType );
+    wlComparisonType.setEnabled( golden );
+    wComparisonType.setEnabled( golden );
+    lastControl = wComparisonType;
+
     // The field mapping from the step to the data set...
     //
     Label wlFieldMapping = new Label( shell, SWT.LEFT );
@@ -401,6 +433,7 @@ public class TransUnitTestSetLocationDialog extends Dialog {
 
     wStepName.setText( Const.NVL( location.getStepname(), "" ) );
     wDatasetName.setText( Const.NVL( location.getDataSetName(), "" ) );
+    wComparisonType.setText( DataSetConst.getComparisonTypeDescription( location.getComparisonType() ) );
 
     for ( int i = 0; i < location.getFieldMappings().size(); i++ ) {
       TransUnitTestFieldMapping fieldMapping = location.getFieldMappings().get( i );
@@ -436,6 +469,9 @@ public class TransUnitTestSetLocationDialog extends Dialog {
 
     loc.setStepname( wStepName.getText() );
     loc.setDataSetName( wDatasetName.getText() );
+    if ( golden ) {
+      loc.setComparisonType( DataSetConst.getComparisonTypeForDescription( wComparisonType.getText() ) );
+    }
     loc.getFieldMappings().clear();
 
     int nrMappings = wFieldMappings.nrNonEmpty();
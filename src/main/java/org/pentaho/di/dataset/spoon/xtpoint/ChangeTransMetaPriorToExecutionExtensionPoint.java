@@ -33,8 +33,10 @@ import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.util.DataSetConst;
+import org.pentaho.di.dataset.util.DataSetPrefetcher;
 import org.pentaho.di.dataset.util.FactoriesHierarchy;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 
@@ -80,12 +82,11 @@ public class ChangeTransMetaPriorToExecutionExtensionPoint implements ExtensionP
     FactoriesHierarchy factoriesHierarchy = null;
 
 
-    // The next factory hierarchy initialization is very expensive. 
-    // See how we can cache this or move it upstairs somewhere.
+    // The factory hierarchy initialization is very expensive so we re-use the one from a previous run if we can.
     //
     List<DatabaseMeta> databases = DataSetConst.getAvailableDatabases( transMeta.getRepository(), transMeta.getSharedObjects() );
     try {
-      factoriesHierarchy = new FactoriesHierarchy( transMeta.getMetaStore(), databases );
+      factoriesHierarchy = FactoriesHierarchy.getCachedHierarchy( transMeta.getMetaStore(), databases );
       unitTest = factoriesHierarchy.getTestFactory().loadElement( unitTestName );
     } catch ( MetaStoreException e ) {
       throw new KettleException( "Unable to load unit test '" + unitTestName + "'", e );
@@ -95,10 +96,42 @@ public class ChangeTransMetaPriorToExecutionExtensionPoint implements ExtensionP
       throw new KettleException( "Unit test '" + unitTestName + "' was not found or could not be loaded" );
     }
 
+    // Start reading the golden data sets while the transformation is being prepared
+    //
+    DataSetPrefetcher prefetcher = null;
+    if ( !"N".equalsIgnoreCase( transMeta.getVariable( DataSetConst.VARIABLE_UNIT_TEST_PREFETCH ) ) ) {
+      DataSetPrefetcher previous = (DataSetPrefetcher) trans.getExtensionDataMap().get( DataSetConst.DATA_SET_PREFETCHER );
+      if ( previous != null ) {
+        previous.cancel();
+      }
+      prefetcher = DataSetPrefetcher.prefetch( log, unitTest, factoriesHierarchy );
+      trans.getExtensionDataMap().put( DataSetConst.DATA_SET_PREFETCHER, prefetcher );
+
+      // Don't keep reading for a failed or stopped transformation.
+      // If it's validated anyway the golden rows are read at that time.
+      //
+      final DataSetPrefetcher transPrefetcher = prefetcher;
+      trans.addTransListener( new TransAdapter() {
+        @Override public void transFinished( Trans finishedTrans ) {
+          if ( finishedTrans.getErrors() > 0 || finishedTrans.isStopped() ) {
+            transPrefetcher.cancel();
+          }
+        }
+      } );
+    }
+
     // Get a modified copy of the transformation using the unit test information
     //
-    TransMetaModifier modifier = new TransMetaModifier( transMeta, unitTest );
-    TransMeta copyTransMeta = modifier.getTestTransformation( log, trans, factoriesHierarchy );
+    TransMeta copyTransMeta;
+    try {
+      TransMetaModifier modifier = new TransMetaModifier( transMeta, unitTest );
+      copyTransMeta = modifier.getTestTransformation( log, trans, factoriesHierarchy );
+    } catch ( KettleException | RuntimeException e ) {
+      if ( prefetcher != null ) {
+        prefetcher.cancel();
+      }
+      throw e;
+    }
 
 
     // Now replace the metadata in the Trans object...
@@ -23,6 +23,7 @@
 package org.pentaho.di.dataset.spoon.xtpoint;
 
 import org.apache.commons.lang.StringUtils;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -35,11 +36,14 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.StringUtil;
 import org.pentaho.di.dataset.DataSet;
+import org.pentaho.di.dataset.DataSetRowReader;
+import org.pentaho.di.dataset.GoldenComparisonType;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.TransUnitTestFieldMapping;
 import org.pentaho.di.dataset.TransUnitTestSetLocation;
 import org.pentaho.di.dataset.util.DataSetConst;
 import org.pentaho.di.dataset.util.FactoriesHierarchy;
+import org.pentaho.di.dataset.util.StreamingGoldenValidator;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.trans.RowProducer;
 import org.pentaho.di.trans.Trans;
@@ -56,6 +60,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author matt
@@ -66,6 +73,24 @@ import java.util.Map;
   description = "Inject a bunch of rows into a step during preview" )
 public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInterface {
 
+  private static ExecutorService injectionExecutor;
+
+  /**
+   * The injecting threads block as long as the steps don't take rows, all of them need to be able to run at the same time.
+   * That's why the pool isn't bounded, idle threads are re-used for the next injection and go away after a minute.
+   */
+  private static synchronized ExecutorService getInjectionExecutor() {
+    if ( injectionExecutor == null ) {
+      final AtomicInteger threadNr = new AtomicInteger( 0 );
+      injectionExecutor = Executors.newCachedThreadPool( runnable -> {
+        Thread thread = new Thread( runnable, "DataSetInjector-" + threadNr.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+      } );
+    }
+    return injectionExecutor;
+  }
+
   @Override
   public void callExtensionPoint( LogChannelInterface log, Object object ) throws KettleException {
     if ( !( object instanceof Trans ) ) {
@@ -95,7 +120,7 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
       }
 
       List<DatabaseMeta> databases = DataSetConst.getAvailableDatabases( repository, transMeta.getSharedObjects() );
-      FactoriesHierarchy factoriesHierarchy = new FactoriesHierarchy( metaStore, databases );
+      FactoriesHierarchy factoriesHierarchy = FactoriesHierarchy.getCachedHierarchy( metaStore, databases );
 
       // If the transformation has a variable set with the unit test in it, we're dealing with a unit test situation.
       //
@@ -131,11 +156,20 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
         TransUnitTestSetLocation goldenLocation = unitTest.findGoldenLocation( stepname );
         if ( goldenLocation != null ) {
           String goldenDataSetName = goldenLocation.getDataSetName();
-          if ( !StringUtil.isEmpty( goldenDataSetName ) ) {
+          if ( !StringUtil.isEmpty( goldenDataSetName ) && goldenLocation.getComparisonType() == GoldenComparisonType.STREAMING ) {
+
+            log.logDetailed( "Validating rows while they arrive, step='" + stepMeta.getName() + "', golden set '" + goldenDataSetName );
+
+            validateGoldenRowsWhileRunning( trans, unitTest, factoriesHierarchy, stepMeta, goldenLocation );
+
+          } else if ( !StringUtil.isEmpty( goldenDataSetName ) ) {
 
             log.logDetailed( "Capturing rows for validation at transformation end, step='" + stepMeta.getName() + "', golden set '" + goldenDataSetName );
 
-            final RowCollection rowCollection = new RowCollection();
+            // Rows beyond the memory budget are kept in temporary files
+            //
+            long memoryBudgetMb = Const.toLong( trans.getVariable( DataSetConst.VARIABLE_UNIT_TEST_MEMORY_BUDGET ), RowCollection.DEFAULT_MEMORY_BUDGET_MB );
+            final RowCollection rowCollection = new RowCollection( memoryBudgetMb * 1024L * 1024L );
 
             // Create a row collection map if it's missing...
             //
@@ -159,7 +193,11 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
                 if ( rowCollection.getRowMeta() == null ) {
                   rowCollection.setRowMeta( rowMeta );
                 }
-                rowCollection.getRows().add( row );
+                try {
+                  rowCollection.addRow( row );
+                } catch ( KettleException e ) {
+                  throw new KettleStepException( "Error keeping result row of step '" + stepMeta.getName() + "'", e );
+                }
               }
             } );
           }
@@ -172,6 +210,41 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
 
   }
 
+  private void validateGoldenRowsWhileRunning( final Trans trans, TransUnitTest unitTest, FactoriesHierarchy factoriesHierarchy,
+                                               final StepMeta stepMeta, TransUnitTestSetLocation goldenLocation ) throws KettleException {
+
+    LogChannelInterface log = trans.getLogChannel();
+    DataSet goldenDataSet = unitTest.getGoldenDataSet( log, factoriesHierarchy, goldenLocation );
+    int window = Const.toInt( trans.getVariable( DataSetConst.VARIABLE_UNIT_TEST_STREAMING_WINDOW ), 0 );
+    int maxErrors = Const.toInt( trans.getVariable( DataSetConst.VARIABLE_UNIT_TEST_MAX_ERRORS ), 0 );
+
+    final StreamingGoldenValidator validator = new StreamingGoldenValidator( trans, unitTest, goldenLocation, goldenDataSet, window, maxErrors );
+
+    // Create a validator map if it's missing...
+    //
+    @SuppressWarnings( "unchecked" )
+    Map<String, StreamingGoldenValidator> validatorMap = (Map<String, StreamingGoldenValidator>) trans.getExtensionDataMap().get( DataSetConst.STREAMING_VALIDATOR_MAP );
+    if ( validatorMap == null ) {
+      validatorMap = new HashMap<String, StreamingGoldenValidator>();
+      trans.getExtensionDataMap().put( DataSetConst.STREAMING_VALIDATOR_MAP, validatorMap );
+    }
+    validatorMap.put( stepMeta.getName(), validator );
+
+    // Compare the rows as they pass, nothing is kept after that
+    //
+    StepInterface stepInterface = trans.findStepInterface( stepMeta.getName(), 0 );
+    stepInterface.addRowListener( new RowAdapter() {
+      @Override
+      public void rowReadEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        try {
+          validator.validateRow( rowMeta, row );
+        } catch ( KettleException e ) {
+          throw new KettleStepException( "Error validating row against golden data set '" + stepMeta.getName() + "'", e );
+        }
+      }
+    } );
+  }
+
   private void injectDataSetIntoStep( final Trans trans, final String dataSetName,
                                       final MetaStoreFactory<DataSet> dataSetFactory, final StepMeta stepMeta,
                                       TransUnitTestSetLocation inputLocation ) throws MetaStoreException, KettleException {
@@ -193,9 +266,6 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
 
     if ( combi != null ) {
 
-      // Get the rows of the mapped values in the mapped order sorted as asked
-      //
-      final List<Object[]> dataSetRows = dataSet.getAllRows( log, inputLocation );
       RowMetaInterface dataSetRowMeta = dataSet.getMappedDataSetFieldsRowMeta( inputLocation );
 
       // The rows to inject are always driven by the dataset, NOT the step it replaces (!) for simplicity
@@ -221,31 +291,69 @@ public class InjectDataSetIntoTransExtensionPoint implements ExtensionPointInter
 
       log.logDetailed( "Injecting data set '" + dataSetName + "' into step '" + stepMeta.getName() + "', fields: " + Arrays.toString( injectRowMeta.getFieldNames() ) );
 
+      // Get the rows of the mapped values in the mapped order sorted as asked
+      // The rows are read while they're being injected so they never all need to be in memory.
+      //
+      final DataSetRowReader dataSetRowReader = dataSet.getRowReader( log, inputLocation );
+
+      // When the data set rows already have the injected layout we can pass them as they are.
+      // The rows handed out by a reader are ours so nobody else is going to change them.
+      //
+      boolean identity = fieldIndexes.length == dataSetRowMeta.size();
+      for ( int i = 0; identity && i < fieldIndexes.length; i++ ) {
+        identity = fieldIndexes[ i ] == i;
+      }
+      final boolean passThrough = identity;
+      final StepInterface stepInterface = combi.step;
+
       // Pass rows
       //
       Runnable runnable = new Runnable() {
         @Override
         public void run() {
+          long start = System.currentTimeMillis();
+          long nrRows = 0;
           try {
 
-            for ( Object[] dataSetRow : dataSetRows ) {
+            Object[] dataSetRow = dataSetRowReader.getRow();
+            while ( dataSetRow != null && !trans.isStopped() ) {
               // pass the row with the external names, in the right order and with the selected columns from the data set
               //
-              Object[] row = RowDataUtil.allocateRowData( injectRowMeta.size() );
-              for ( int i = 0; i < fieldIndexes.length; i++ ) {
-                row[ i ] = dataSetRow[ fieldIndexes[ i ] ];
+              Object[] row;
+              if ( passThrough ) {
+                row = dataSetRow;
+              } else {
+                row = RowDataUtil.allocateRowData( injectRowMeta.size() );
+                for ( int i = 0; i < fieldIndexes.length; i++ ) {
+                  row[ i ] = dataSetRow[ fieldIndexes[ i ] ];
+                }
               }
               rowProducer.putRow( injectRowMeta, row );
+              nrRows++;
+              dataSetRow = dataSetRowReader.getRow();
             }
-            rowProducer.finished();
 
-          } catch ( Exception e ) {
-            throw new RuntimeException( "Problem injecting data set '" + dataSetName + "' row into step '" + stepMeta.getName() + "'", e );
+            long duration = Math.max( 1L, System.currentTimeMillis() - start );
+            log.logBasic( "Injected " + nrRows + " rows of data set '" + dataSetName + "' into step '" + stepMeta.getName() + "' in "
+              + duration + "ms (" + ( nrRows * 1000L / duration ) + " rows/s" + ( passThrough ? ", passed as read)" : ")" ) );
+
+          } catch ( Throwable e ) {
+            // Fail the transformation instead of leaving the step waiting for rows which never come
+            //
+            log.logError( "Problem injecting data set '" + dataSetName + "' row into step '" + stepMeta.getName() + "' after " + nrRows + " rows", e );
+            stepInterface.setErrors( stepInterface.getErrors() + 1 );
+            trans.stopAll();
+          } finally {
+            rowProducer.finished();
+            try {
+              dataSetRowReader.close();
+            } catch ( KettleException e ) {
+              log.logError( "Error closing data set '" + dataSetName + "'", e );
+            }
           }
         }
       };
-      Thread thread = new Thread( runnable );
-      thread.start();
+      getInjectionExecutor().execute( runnable );
 
 
     }
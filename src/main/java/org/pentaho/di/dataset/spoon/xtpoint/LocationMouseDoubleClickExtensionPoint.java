@@ -78,7 +78,7 @@ public class LocationMouseDoubleClickExtensionPoint implements ExtensionPointInt
 
     Spoon spoon = Spoon.getInstance();
     try {
-      FactoriesHierarchy hierarchy = new FactoriesHierarchy( spoon.getMetaStore(), spoon.getActiveDatabases() );
+      FactoriesHierarchy hierarchy = FactoriesHierarchy.getCachedHierarchy( spoon.getMetaStore(), spoon.getActiveDatabases() );
       List<DataSet> dataSets = hierarchy.getSetFactory().getElements();
       Map<String, RowMetaInterface> stepFieldsMap = new HashMap<>();
       for ( StepMeta stepMeta : transMeta.getSteps() ) {
@@ -121,7 +121,7 @@ public class LocationMouseDoubleClickExtensionPoint implements ExtensionPointInt
 
             TransUnitTestSetLocation goldenLocation = unitTest.findGoldenLocation( stepName );
             if ( goldenLocation != null ) {
-              TransUnitTestSetLocationDialog dialog = new TransUnitTestSetLocationDialog( spoon.getShell(), goldenLocation, dataSets, stepFieldsMap );
+              TransUnitTestSetLocationDialog dialog = new TransUnitTestSetLocationDialog( spoon.getShell(), goldenLocation, dataSets, stepFieldsMap, true );
               if ( dialog.open() ) {
                 spoon.refreshGraph();
               }
@@ -141,7 +141,7 @@ public class LocationMouseDoubleClickExtensionPoint implements ExtensionPointInt
     List<DatabaseMeta> databases = spoon.getActiveDatabases();
     IMetaStore metaStore = spoon.getMetaStore();
     try {
-      FactoriesHierarchy factoriesHierarchy = new FactoriesHierarchy( metaStore, databases );
+      FactoriesHierarchy factoriesHierarchy = FactoriesHierarchy.getCachedHierarchy( metaStore, databases );
       MetaStoreFactory<DataSet> setFactory = factoriesHierarchy.getSetFactory();
       MetaStoreFactory<DataSetGroup> groupFactory = factoriesHierarchy.getGroupFactory();
 
@@ -155,6 +155,7 @@ public class LocationMouseDoubleClickExtensionPoint implements ExtensionPointInt
         //
         if ( message == null ) {
           setFactory.saveElement( dataSet );
+          FactoriesHierarchy.invalidateCache();
           break;
         } else {
           MessageBox box = new MessageBox( spoon.getShell(), SWT.OK );
@@ -22,24 +22,364 @@
 
 package org.pentaho.di.dataset.spoon.xtpoint;
 
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.dataset.DataSetRowListReader;
+import org.pentaho.di.dataset.DataSetRowReader;
+import org.pentaho.di.dataset.util.DataSetConst;
+import org.pentaho.di.dataset.util.RowSorter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
+/**
+ * The rows captured from a step during a unit test.
+ * When a memory budget is given, the rows are written to temporary files in blocks once the budget is exceeded.
+ * The blocks are written with the Kettle row serialization of the row metadata.
+ * Sorting a collection with spilled rows sorts every block by itself and merges the blocks while reading.
+ * Call dispose() to remove the temporary files.
+ */
 public class RowCollection {
 
+  public static final int DEFAULT_MEMORY_BUDGET_MB = 128;
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private static class SpillFile {
+    private final File file;
+    private final int nrRows;
+
+    private SpillFile( File file, int nrRows ) {
+      this.file = file;
+      this.nrRows = nrRows;
+    }
+  }
+
   private RowMetaInterface rowMeta;
   private List<Object[]> rows;
+  private final long memoryBudget;
+  private long memoryUsed;
+  private long nrRows;
+  private final List<SpillFile> spillFiles;
+  private boolean disposed;
 
+  /**
+   * Create a collection which keeps all the rows in memory
+   */
   public RowCollection() {
-    rowMeta = null;
-    rows = new ArrayList<Object[]>();
+    this( 0L );
+  }
+
+  /**
+   * @param memoryBudget The estimated number of bytes of rows to keep in memory, 0 to never spill rows to disk
+   */
+  public RowCollection( long memoryBudget ) {
+    this.rowMeta = null;
+    this.rows = new ArrayList<Object[]>();
+    this.memoryBudget = memoryBudget;
+    this.spillFiles = new ArrayList<>();
   }
 
   public RowCollection( RowMetaInterface rowMeta, List<Object[]> rows ) {
+    this();
     this.rowMeta = rowMeta;
-    this.rows = rows;
+    setRows( rows );
+  }
+
+  /**
+   * Add a row to the collection, spilling the rows in memory to disk if the memory budget is exceeded.
+   * Set the row metadata before adding rows.
+   *
+   * @param row The row to add
+   * @throws KettleException In case the rows couldn't be written to disk
+   */
+  public void addRow( Object[] row ) throws KettleException {
+    rows.add( row );
+    nrRows++;
+    if ( memoryBudget > 0 ) {
+      memoryUsed += DataSetConst.estimateRowSize( row );
+      if ( memoryUsed > memoryBudget ) {
+        spill();
+      }
+    }
+  }
+
+  /**
+   * @return The number of rows in the collection, in memory and on disk
+   */
+  public long size() {
+    return nrRows;
+  }
+
+  /**
+   * @return true if rows of this collection were written to disk
+   */
+  public boolean isSpilled() {
+    return !spillFiles.isEmpty();
+  }
+
+  /**
+   * Get a reader for the rows of the collection.
+   * Spilled rows are read back from disk, the rows are handed out in the order in which they were added or sorted.
+   *
+   * @return A reader over all the rows, close it when done
+   * @throws KettleException
+   */
+  public DataSetRowReader getRowReader() throws KettleException {
+    checkDisposed();
+    if ( spillFiles.isEmpty() ) {
+      return new DataSetRowListReader( rows );
+    }
+
+    final List<SpillFile> files = new ArrayList<>( spillFiles );
+    final List<Object[]> memoryRows = rows;
+    return new DataSetRowReader() {
+      private int fileIndex = -1;
+      private SpillReader spillReader;
+      private DataSetRowReader memoryReader;
+
+      @Override
+      public Object[] getRow() throws KettleException {
+        while ( memoryReader == null ) {
+          if ( spillReader != null ) {
+            Object[] row = spillReader.getRow();
+            if ( row != null ) {
+              return row;
+            }
+            spillReader.close();
+            spillReader = null;
+          }
+          fileIndex++;
+          if ( fileIndex < files.size() ) {
+            spillReader = new SpillReader( files.get( fileIndex ) );
+          } else {
+            memoryReader = new DataSetRowListReader( memoryRows );
+          }
+        }
+        return memoryReader.getRow();
+      }
+
+      @Override
+      public void close() throws KettleException {
+        if ( spillReader != null ) {
+          spillReader.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Sort the rows of the collection and get a reader over the sorted rows.
+   * Rows in memory are sorted in place.  Spilled rows are sorted per block which fits in the memory budget
+   * and the sorted blocks are merged while the rows are read.
+   *
+   * @param sortIndexes The indexes of the fields to sort on
+   * @return A reader over the sorted rows, close it when done
+   * @throws KettleException In case there was an error comparing or reading the rows
+   */
+  public DataSetRowReader getSortedRowReader( final int[] sortIndexes ) throws KettleException {
+    checkDisposed();
+    RowSorter sorter = new RowSorter( rowMeta, sortIndexes );
+
+    if ( spillFiles.isEmpty() ) {
+      sorter.sort( rows );
+      return new DataSetRowListReader( rows );
+    }
+
+    // Every block fits in memory, sort them one by one
+    //
+    spill();
+    for ( int i = 0; i < spillFiles.size(); i++ ) {
+      SpillFile spillFile = spillFiles.get( i );
+      List<Object[]> blockRows = readBlock( spillFile );
+      sorter.sort( blockRows );
+      spillFiles.set( i, writeBlock( blockRows ) );
+      spillFile.file.delete();
+    }
+    return new MergingRowReader( spillFiles, sorter );
+  }
+
+  /**
+   * Remove the temporary files holding the spilled rows.  The collection can't be read anymore after this if it spilled rows.
+   */
+  public void dispose() {
+    for ( SpillFile spillFile : spillFiles ) {
+      spillFile.file.delete();
+    }
+    spillFiles.clear();
+    disposed = true;
+  }
+
+  private void checkDisposed() throws KettleException {
+    if ( disposed && nrRows != rows.size() ) {
+      throw new KettleException( "The spilled rows of this row collection were already removed" );
+    }
+  }
+
+  private void spill() throws KettleException {
+    if ( rows.isEmpty() ) {
+      return;
+    }
+    spillFiles.add( writeBlock( rows ) );
+    rows = new ArrayList<Object[]>();
+    memoryUsed = 0L;
+  }
+
+  private SpillFile writeBlock( List<Object[]> blockRows ) throws KettleException {
+    File file = null;
+    try {
+      file = File.createTempFile( "unit-test-rows-", ".bin" );
+      file.deleteOnExit();
+      try ( DataOutputStream outputStream = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE ) ) ) {
+        for ( Object[] row : blockRows ) {
+          rowMeta.writeData( outputStream, row );
+        }
+      }
+      return new SpillFile( file, blockRows.size() );
+    } catch ( Exception e ) {
+      if ( file != null ) {
+        file.delete();
+      }
+      throw new KettleException( "Unable to write " + blockRows.size() + " rows to a temporary file", e );
+    }
+  }
+
+  private List<Object[]> readBlock( SpillFile spillFile ) throws KettleException {
+    List<Object[]> blockRows = new ArrayList<>( spillFile.nrRows );
+    try ( SpillReader spillReader = new SpillReader( spillFile ) ) {
+      Object[] row = spillReader.getRow();
+      while ( row != null ) {
+        blockRows.add( row );
+        row = spillReader.getRow();
+      }
+    }
+    return blockRows;
+  }
+
+  /**
+   * Reads the rows of a single spill file
+   */
+  private class SpillReader implements DataSetRowReader {
+    private final SpillFile spillFile;
+    private final DataInputStream inputStream;
+    private int rowNr;
+
+    private SpillReader( SpillFile spillFile ) throws KettleException {
+      this.spillFile = spillFile;
+      try {
+        this.inputStream = new DataInputStream( new BufferedInputStream( new FileInputStream( spillFile.file ), BUFFER_SIZE ) );
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to open temporary file " + spillFile.file, e );
+      }
+    }
+
+    @Override
+    public Object[] getRow() throws KettleException {
+      if ( rowNr >= spillFile.nrRows ) {
+        return null;
+      }
+      rowNr++;
+      try {
+        return rowMeta.readData( inputStream );
+      } catch ( Exception e ) {
+        throw new KettleException( "Unable to read row " + rowNr + " from temporary file " + spillFile.file, e );
+      }
+    }
+
+    @Override
+    public void close() throws KettleException {
+      try {
+        inputStream.close();
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to close temporary file " + spillFile.file, e );
+      }
+    }
+  }
+
+  /**
+   * Hands out the rows of a number of sorted spill files in sorted order
+   */
+  private class MergingRowReader implements DataSetRowReader {
+
+    /**
+     * The next row of a spill file with its sort key, extracted once when it enters the heap
+     */
+    private class Head {
+      private final Object[] row;
+      private final Object sortKey;
+      private final SpillReader reader;
+
+      private Head( Object[] row, Object sortKey, SpillReader reader ) {
+        this.row = row;
+        this.sortKey = sortKey;
+        this.reader = reader;
+      }
+    }
+
+    private final RowSorter sorter;
+    private final List<SpillReader> readers;
+    private final PriorityQueue<Head> heads;
+
+    private MergingRowReader( List<SpillFile> files, RowSorter sorter ) throws KettleException {
+      this.sorter = sorter;
+      readers = new ArrayList<>( files.size() );
+      final Comparator<Object> comparator = sorter.getSortKeyComparator();
+      heads = new PriorityQueue<>( Math.max( 1, files.size() ), new Comparator<Head>() {
+        @Override public int compare( Head head1, Head head2 ) {
+          return comparator.compare( head1.sortKey, head2.sortKey );
+        }
+      } );
+      try {
+        for ( SpillFile file : files ) {
+          SpillReader reader = new SpillReader( file );
+          readers.add( reader );
+          Object[] row = reader.getRow();
+          if ( row != null ) {
+            heads.add( new Head( row, sorter.getSortKey( row ), reader ) );
+          }
+        }
+      } catch ( KettleException e ) {
+        close();
+        throw e;
+      } catch ( RuntimeException e ) {
+        close();
+        throw new KettleException( "Error merging sorted rows", e );
+      }
+    }
+
+    @Override
+    public Object[] getRow() throws KettleException {
+      Head head = heads.poll();
+      if ( head == null ) {
+        return null;
+      }
+      try {
+        Object[] next = head.reader.getRow();
+        if ( next != null ) {
+          heads.add( new Head( next, sorter.getSortKey( next ), head.reader ) );
+        }
+      } catch ( RuntimeException e ) {
+        throw new KettleException( "Error merging sorted rows", e );
+      }
+      return head.row;
+    }
+
+    @Override
+    public void close() throws KettleException {
+      for ( SpillReader reader : readers ) {
+        reader.close();
+      }
+    }
   }
 
   public RowMetaInterface getRowMeta() {
@@ -50,11 +390,36 @@ public class RowCollection {
     this.rowMeta = rowMeta;
   }
 
+  /**
+   * Get all the rows of the collection in a list.
+   * Spilled rows are read back from disk so only use this for collections which fit in memory.
+   *
+   * @return The rows
+   */
   public List<Object[]> getRows() {
-    return rows;
+    if ( spillFiles.isEmpty() && nrRows == rows.size() ) {
+      return rows;
+    }
+    try ( DataSetRowReader rowReader = getRowReader() ) {
+      return DataSetConst.readAllRows( rowReader );
+    } catch ( KettleException e ) {
+      throw new IllegalStateException( "Unable to read the rows of the collection", e );
+    }
   }
 
+  /**
+   * Replace the rows of the collection, spilled rows are removed.
+   *
+   * @param rows The new rows, kept in memory
+   */
   public void setRows( List<Object[]> rows ) {
+    for ( SpillFile spillFile : spillFiles ) {
+      spillFile.file.delete();
+    }
+    spillFiles.clear();
     this.rows = rows;
+    this.nrRows = rows == null ? 0L : rows.size();
+    this.memoryUsed = 0L;
+    this.disposed = false;
   }
-}
\ No newline at end of file
+}
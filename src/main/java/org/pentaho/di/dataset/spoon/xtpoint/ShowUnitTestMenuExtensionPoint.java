@@ -147,14 +147,14 @@ public class ShowUnitTestMenuExtensionPoint implements ExtensionPointInterface {
               for ( final TransUnitTestSetLocation location : inputLocations ) {
                 MenuItem testItem = new MenuItem( locationsMenu, SWT.PUSH );
                 testItem.setText( "Input: " + Const.NVL( location.getStepname(), "" ) + " --> " + Const.NVL( location.getDataSetName(), "" ) );
-                testItem.addListener( SWT.Selection, event -> editLocation( location, spoon, transMeta ) );
+                testItem.addListener( SWT.Selection, event -> editLocation( location, false, spoon, transMeta ) );
               }
 
               List<TransUnitTestSetLocation> goldenLocations = unitTest.getGoldenDataSets();
               for ( final TransUnitTestSetLocation location : goldenLocations ) {
                 MenuItem testItem = new MenuItem( locationsMenu, SWT.PUSH );
                 testItem.setText( "Golden: " + Const.NVL( location.getStepname(), "" ) + " --> " + Const.NVL( location.getDataSetName(), "" ) );
-                testItem.addListener( SWT.Selection, event -> editLocation( location, spoon, transMeta ) );
+                testItem.addListener( SWT.Selection, event -> editLocation( location, true, spoon, transMeta ) );
               }
             }
 
@@ -232,15 +232,15 @@ public class ShowUnitTestMenuExtensionPoint implements ExtensionPointInterface {
     }
   }
 
-  private void editLocation( TransUnitTestSetLocation location, Spoon spoon, TransMeta transMeta ) {
+  private void editLocation( TransUnitTestSetLocation location, boolean golden, Spoon spoon, TransMeta transMeta ) {
     try {
-      FactoriesHierarchy hierarchy = new FactoriesHierarchy( spoon.getMetaStore(), spoon.getActiveDatabases() );
+      FactoriesHierarchy hierarchy = FactoriesHierarchy.getCachedHierarchy( spoon.getMetaStore(), spoon.getActiveDatabases() );
 
       Map<String, RowMetaInterface> stepFieldsMap = new HashMap<>();
       for ( StepMeta stepMeta : transMeta.getSteps() ) {
         stepFieldsMap.put( stepMeta.getName(), transMeta.getStepFields( stepMeta ) );
       }
-      TransUnitTestSetLocationDialog dialog = new TransUnitTestSetLocationDialog( spoon.getShell(), location, hierarchy.getSetFactory().getElements(), stepFieldsMap );
+      TransUnitTestSetLocationDialog dialog = new TransUnitTestSetLocationDialog( spoon.getShell(), location, hierarchy.getSetFactory().getElements(), stepFieldsMap, golden );
       if ( dialog.open() ) {
         spoon.refreshGraph();
       }
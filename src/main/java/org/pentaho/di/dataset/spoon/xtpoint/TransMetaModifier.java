@@ -9,6 +9,7 @@ import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.dataset.DataSet;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.TransUnitTestDatabaseReplacement;
@@ -19,6 +20,7 @@ import org.pentaho.di.dataset.util.DataSetConst;
 import org.pentaho.di.dataset.util.FactoriesHierarchy;
 import org.pentaho.di.trans.TransHopMeta;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepErrorMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
 import org.pentaho.di.trans.steps.injector.InjectorMeta;
@@ -46,14 +48,8 @@ public class TransMetaModifier {
     // OK, so now replace an input step with a data set attached with an Injector step...
     // However, we don't want to have the user see this so we need to copy trans.transMeta first...
     //
-    // Clone seems to has problems so we'll take the long (XML) way around...
-    InputStream stream;
-    try {
-      stream = new ByteArrayInputStream( transMeta.getXML().getBytes( Const.XML_ENCODING ) );
-    } catch ( UnsupportedEncodingException e ) {
-      throw new KettleException( "Encoding error", e );
-    }
-    TransMeta copyTransMeta = new TransMeta( stream, transMeta.getRepository(), true, transMeta, null );
+    TransMeta copyTransMeta = copyTransMeta( transMeta, unitTest.getDatabaseReplacements().isEmpty() );
+
     // Pass the metadata references...
     //
     copyTransMeta.setRepository( transMeta.getRepository() );
@@ -149,6 +145,74 @@ public class TransMetaModifier {
     return copyTransMeta;
   }
 
+  /**
+   * Copy the transformation metadata so that we can modify it without the user noticing.
+   *
+   * The structural copy clones the transformation, its steps and hops in memory.  The hops, error handling, info and target streams
+   * and step metadata of the clone still reference the original steps and variables so we point those to the copies.
+   * The step metadata keeps referencing the original database connections so when those need to be replaced we take the long (XML)
+   * way around which re-creates all connections.
+   *
+   * @param transMeta  The transformation metadata to copy
+   * @param structural true if we can do a structural copy, false to serialize to XML and parse it back
+   * @return The copy
+   * @throws KettleException
+   */
+  public static TransMeta copyTransMeta( TransMeta transMeta, boolean structural ) throws KettleException {
+    TransMeta copyTransMeta = null;
+    if ( structural ) {
+      copyTransMeta = (TransMeta) transMeta.realClone( false );
+    }
+    if ( copyTransMeta == null ) {
+      InputStream stream;
+      try {
+        stream = new ByteArrayInputStream( transMeta.getXML().getBytes( Const.XML_ENCODING ) );
+      } catch ( UnsupportedEncodingException e ) {
+        throw new KettleException( "Encoding error", e );
+      }
+      return new TransMeta( stream, transMeta.getRepository(), true, transMeta, null );
+    }
+
+    // The clone shares the variable space with the original, give it its own
+    //
+    VariableSpace variables = new Variables();
+    variables.initializeVariablesFrom( transMeta );
+    copyTransMeta.shareVariablesWith( variables );
+    copyTransMeta.setInternalKettleVariables();
+
+    for ( int i = 0; i < copyTransMeta.nrTransHops(); i++ ) {
+      TransHopMeta hop = copyTransMeta.getTransHop( i );
+      hop.setFromStep( findCopiedStep( copyTransMeta, hop.getFromStep() ) );
+      hop.setToStep( findCopiedStep( copyTransMeta, hop.getToStep() ) );
+    }
+    for ( StepMeta stepMeta : copyTransMeta.getSteps() ) {
+      stepMeta.getStepMetaInterface().setParentStepMeta( stepMeta );
+
+      // Steps like Filter Rows or Switch/Case send rows to info and target streams which reference steps by name
+      //
+      stepMeta.getStepMetaInterface().searchInfoAndTargetSteps( copyTransMeta.getSteps() );
+      if ( stepMeta.getStepErrorMeta() != null ) {
+        StepErrorMeta stepErrorMeta = stepMeta.getStepErrorMeta().clone();
+        stepErrorMeta.setSourceStep( stepMeta );
+        stepErrorMeta.setTargetStep( findCopiedStep( copyTransMeta, stepErrorMeta.getTargetStep() ) );
+        stepMeta.setStepErrorMeta( stepErrorMeta );
+      }
+    }
+
+    return copyTransMeta;
+  }
+
+  private static StepMeta findCopiedStep( TransMeta copyTransMeta, StepMeta original ) throws KettleException {
+    if ( original == null ) {
+      return null;
+    }
+    StepMeta copy = copyTransMeta.findStep( original.getName() );
+    if ( copy == null ) {
+      throw new KettleException( "Unable to find step '" + original.getName() + "' in the copy of the transformation" );
+    }
+    return copy;
+  }
+
   private void handleInputDataSet( LogChannelInterface log, TransUnitTestSetLocation inputLocation, TransUnitTest unitTest, TransMeta transMeta, StepMeta stepMeta,
                                    FactoriesHierarchy factoriesHierarchy ) throws KettleException {
 
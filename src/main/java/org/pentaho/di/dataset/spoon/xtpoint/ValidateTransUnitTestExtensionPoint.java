@@ -80,7 +80,7 @@ public class ValidateTransUnitTestExtensionPoint implements ExtensionPointInterf
       }
 
       List<DatabaseMeta> databases = DataSetConst.getAvailableDatabases( repository, transMeta.getSharedObjects() );
-      FactoriesHierarchy factoriesHierarchy = new FactoriesHierarchy( metaStore, databases );
+      FactoriesHierarchy factoriesHierarchy = FactoriesHierarchy.getCachedHierarchy( metaStore, databases );
 
       // If the transformation has a variable set with the unit test in it, we're dealing with a unit test situation.
       //
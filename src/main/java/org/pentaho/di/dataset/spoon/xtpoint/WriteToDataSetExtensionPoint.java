@@ -22,6 +22,7 @@
 
 package org.pentaho.di.dataset.spoon.xtpoint;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.SourceToTargetMapping;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -31,6 +32,7 @@ import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.dataset.DataSet;
+import org.pentaho.di.dataset.DataSetWriteMode;
 import org.pentaho.di.dataset.util.DataSetConst;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransAdapter;
@@ -139,6 +141,30 @@ public class WriteToDataSetExtensionPoint implements ExtensionPointInterface {
       }
     } );
 
+    // Replace the data set unless we're asked to append or upsert
+    //
+    final DataSetWriteMode writeMode = DataSetWriteMode.fromName( transMeta.getVariable( DataSetConst.VARIABLE_DATASET_WRITE_MODE ) );
+    final List<String> keyFields = new ArrayList<>();
+    for ( String keyField : Const.NVL( transMeta.getVariable( DataSetConst.VARIABLE_DATASET_WRITE_KEY_FIELDS ), "" ).split( "," ) ) {
+      if ( !keyField.trim().isEmpty() ) {
+        keyFields.add( keyField.trim() );
+      }
+    }
+
+    // Fail before the transformation runs instead of after all the rows are captured
+    //
+    if ( writeMode == DataSetWriteMode.Upsert ) {
+      if ( keyFields.isEmpty() ) {
+        throw new KettleException( "Writing to data set '" + dataSet.getName() + "' in upsert mode needs the key fields in variable "
+          + DataSetConst.VARIABLE_DATASET_WRITE_KEY_FIELDS );
+      }
+      for ( String keyField : keyFields ) {
+        if ( dataSet.findFieldWithName( keyField ) == null ) {
+          throw new KettleException( "Key field '" + keyField + "' can't be found in data set '" + dataSet.getName() + "'" );
+        }
+      }
+    }
+
     // At the end of the transformation, write it...
     //
     trans.addTransListener( new TransAdapter() {
@@ -146,7 +172,7 @@ public class WriteToDataSetExtensionPoint implements ExtensionPointInterface {
 
         // Write it
         //
-        dataSet.getGroup().writeDataSetData( dataSet.getTableName(), columnsRowMeta, stepForDbRows );
+        dataSet.writeDataSetData( columnsRowMeta, stepForDbRows, writeMode, keyFields );
       }
     } );
 
@@ -30,6 +30,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.dataset.DataSetRowCache;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.UnitTestResult;
 import org.pentaho.di.dataset.spoon.DataSetHelper;
@@ -48,7 +49,12 @@ import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.persist.MetaStoreFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ExecuteTests extends BaseStep implements StepInterface {
 
@@ -62,7 +68,7 @@ public class ExecuteTests extends BaseStep implements StepInterface {
     ExecuteTestsData data = (ExecuteTestsData) sdi;
 
     try {
-      data.hierarchy = new FactoriesHierarchy( metaStore, getTransMeta().getDatabases() );
+      data.hierarchy = FactoriesHierarchy.getCachedHierarchy( metaStore, getTransMeta().getDatabases() );
 
       data.hasPrevious = false;
       StepMeta[] prevSteps = getTransMeta().getPrevSteps( getStepMeta() );
@@ -143,6 +149,27 @@ public class ExecuteTests extends BaseStep implements StepInterface {
       data.testsIterator = data.tests.iterator();
       data.outputRowMeta = new RowMeta();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
+
+      // Run the tests on a bounded pool if we're asked to run more than one at a time
+      //
+      data.parallelism = Math.min( Const.toInt( environmentSubstitute( meta.getParallelism() ), 1 ), data.tests.size() );
+      if ( data.parallelism > 1 ) {
+        final AtomicInteger threadNr = new AtomicInteger( 0 );
+        data.executor = Executors.newFixedThreadPool( data.parallelism, runnable -> {
+          Thread thread = new Thread( runnable, getStepname() + " - unit test runner " + threadNr.incrementAndGet() );
+          thread.setDaemon( true );
+          return thread;
+        } );
+        data.completionService = new ExecutorCompletionService<>( data.executor );
+        data.testsRunning = 0;
+        if ( log.isBasic() ) {
+          logBasic( "Executing " + data.tests.size() + " unit tests with a parallelism of " + data.parallelism );
+        }
+      }
+    }
+
+    if ( data.parallelism > 1 ) {
+      return processTestsInParallel( data );
     }
 
     // Execute one test per iteration.
@@ -158,79 +185,185 @@ public class ExecuteTests extends BaseStep implements StepInterface {
 
       try {
         testTransMeta = loadTestTransformation( test );
+      } catch ( KettleException e ) {
+        putRow( data.outputRowMeta, getSetupErrorRow( data, null, test, e ) );
+        return true;
+      }
 
-        // 2. Create the transformation executor...
-        //
-        if ( log.isDetailed() ) {
-          log.logDetailed( "Executing transformation '" + testTransMeta.getName() + "' for unit test '" + test.getName() + "'" );
+      for ( Object[] row : executeTest( data, test, testTransMeta ) ) {
+        putRow( data.outputRowMeta, row );
+      }
+      return true;
+    } else {
+      setOutputDone();
+      return false;
+    }
+  }
+
+  /**
+   * Keep up to parallelism tests running and pass the result rows of one finished test per iteration.
+   * The transformations are loaded in the step thread, only the execution and validation happens in the pool.
+   */
+  private boolean processTestsInParallel( ExecuteTestsData data ) throws KettleException {
+    while ( data.testsRunning < data.parallelism && data.testsIterator.hasNext() && !isStopped() ) {
+      final TransUnitTest test = data.testsIterator.next();
+      final TransMeta testTransMeta;
+      try {
+        testTransMeta = loadTestTransformation( test );
+      } catch ( KettleException e ) {
+        putRow( data.outputRowMeta, getSetupErrorRow( data, null, test, e ) );
+        continue;
+      }
+      data.completionService.submit( () -> {
+        try {
+          return executeTest( data, test, testTransMeta );
+        } catch ( RuntimeException e ) {
+          // Report the failure as the result of this test, the other tests keep running
+          //
+          KettleException testException = new KettleException( "Unexpected error executing unit test '" + test.getName() + "'", e );
+          return Collections.singletonList( getSetupErrorRow( data, testTransMeta, test, testException ) );
         }
-        Trans testTrans = new Trans( testTransMeta, this );
+      } );
+      data.testsRunning++;
+    }
 
-        // 3. Pass execution details...
-        //
-        testTrans.setLogLevel( getTrans().getLogLevel() );
-        testTrans.setRepository( getTrans().getRepository() );
-        testTrans.setMetaStore( getTrans().getMetaStore() );
+    if ( data.testsRunning == 0 ) {
+      setOutputDone();
+      return false;
+    }
 
-        // 4. Execute
-        //
-        testTrans.execute( getTrans().getArguments() );
-        testTrans.waitUntilFinished();
+    List<Object[]> rows;
+    try {
+      rows = data.completionService.take().get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for unit tests to finish", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Unexpected error executing a unit test", e.getCause() );
+    } finally {
+      data.testsRunning--;
+    }
 
-        // 5. Validate results...
-        //
-        Result transResult = testTrans.getResult();
-        if ( transResult.getNrErrors() != 0 ) {
-          // The transformation had a failure, report this too.
-          //
-          Object[] row = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
-          int index = 0;
-          row[ index++ ] = testTransMeta.getName();
-          row[ index++ ] = null;
-          row[ index++ ] = null;
-          row[ index++ ] = null;
-          row[ index++ ] = Boolean.TRUE;
-          row[ index++ ] = transResult.getLogText();
-
-          putRow( data.outputRowMeta, row );
-        }
+    for ( Object[] row : rows ) {
+      putRow( data.outputRowMeta, row );
+    }
+    return true;
+  }
 
-        List<UnitTestResult> testResults = new ArrayList<UnitTestResult>();
-        DataSetConst.validateTransResultAgainstUnitTest( testTrans, test, data.hierarchy, testResults );
+  /**
+   * Execute the transformation of a unit test and validate the results.
+   * Every test gets its own transformation meta and Trans so variables and extension data are never shared between tests.
+   * This method can be called from multiple threads at once, it doesn't pass any rows itself.
+   *
+   * @return The result rows to pass to the next steps
+   */
+  private List<Object[]> executeTest( ExecuteTestsData data, TransUnitTest test, TransMeta testTransMeta ) {
+    List<Object[]> rows = new ArrayList<>();
+    Trans testTrans = null;
+    try {
+      // 2. Create the transformation executor...
+      //
+      if ( log.isDetailed() ) {
+        log.logDetailed( "Executing transformation '" + testTransMeta.getName() + "' for unit test '" + test.getName() + "'" );
+      }
+      testTrans = new Trans( testTransMeta, this );
 
-        for ( UnitTestResult testResult : testResults ) {
-          Object[] row = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
-          int index = 0;
-          row[ index++ ] = testResult.getTransformationName();
-          row[ index++ ] = testResult.getUnitTestName();
-          row[ index++ ] = testResult.getDataSetName();
-          row[ index++ ] = testResult.getStepName();
-          row[ index++ ] = testResult.isError();
-          row[ index++ ] = testResult.getComment();
+      // 3. Pass execution details...
+      //
+      testTrans.setLogLevel( getTrans().getLogLevel() );
+      testTrans.setRepository( getTrans().getRepository() );
+      testTrans.setMetaStore( getTrans().getMetaStore() );
 
-          putRow( data.outputRowMeta, row );
-        }
+      // 4. Execute
+      //
+      data.activeTransformations.add( testTrans );
+      try {
+        testTrans.execute( getTrans().getArguments() );
+        testTrans.waitUntilFinished();
+      } finally {
+        data.activeTransformations.remove( testTrans );
+      }
 
-        return true;
-      } catch ( KettleException e ) {
-        // Some configuration or setup error...
+      // 5. Validate results...
+      //
+      Result transResult = testTrans.getResult();
+      if ( transResult.getNrErrors() != 0 ) {
+        // The transformation had a failure, report this too.
         //
         Object[] row = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
         int index = 0;
-        row[ index++ ] = testTransMeta == null ? null : testTransMeta.getName();
-        row[ index++ ] = test.getName();
+        row[ index++ ] = testTransMeta.getName();
         row[ index++ ] = null;
         row[ index++ ] = null;
-        row[ index++ ] = Boolean.TRUE; // ERROR!
-        row[ index++ ] = e.getMessage() + " : " + Const.getStackTracker( e );
+        row[ index++ ] = null;
+        row[ index++ ] = Boolean.TRUE;
+        row[ index++ ] = transResult.getLogText();
 
-        putRow( data.outputRowMeta, row );
-        return true;
+        rows.add( row );
       }
-    } else {
-      setOutputDone();
-      return false;
+
+      List<UnitTestResult> testResults = new ArrayList<UnitTestResult>();
+      DataSetConst.validateTransResultAgainstUnitTest( testTrans, test, data.hierarchy, testResults );
+
+      for ( UnitTestResult testResult : testResults ) {
+        Object[] row = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+        int index = 0;
+        row[ index++ ] = testResult.getTransformationName();
+        row[ index++ ] = testResult.getUnitTestName();
+        row[ index++ ] = testResult.getDataSetName();
+        row[ index++ ] = testResult.getStepName();
+        row[ index++ ] = testResult.isError();
+        row[ index++ ] = testResult.getComment();
+
+        rows.add( row );
+      }
+    } catch ( KettleException e ) {
+      rows.add( getSetupErrorRow( data, testTransMeta, test, e ) );
+    } finally {
+      // Also when the transformation failed to start and was never validated
+      //
+      if ( testTrans != null ) {
+        DataSetConst.releaseUnitTestResources( testTrans );
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Some configuration or setup error...
+   */
+  private Object[] getSetupErrorRow( ExecuteTestsData data, TransMeta testTransMeta, TransUnitTest test, KettleException e ) {
+    Object[] row = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+    int index = 0;
+    row[ index++ ] = testTransMeta == null ? null : testTransMeta.getName();
+    row[ index++ ] = test.getName();
+    row[ index++ ] = null;
+    row[ index++ ] = null;
+    row[ index++ ] = Boolean.TRUE; // ERROR!
+    row[ index++ ] = e.getMessage() + " : " + Const.getStackTracker( e );
+    return row;
+  }
+
+  @Override
+  public void stopRunning( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    ExecuteTestsData data = (ExecuteTestsData) sdi;
+    for ( Trans testTrans : data.activeTransformations ) {
+      testTrans.stopAll();
+    }
+    super.stopRunning( smi, sdi );
+  }
+
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    ExecuteTestsData data = (ExecuteTestsData) sdi;
+    if ( data.executor != null ) {
+      data.executor.shutdownNow();
+      data.executor = null;
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( DataSetRowCache.getStatistics() );
     }
+    super.dispose( smi, sdi );
   }
 
   private TransMeta loadTestTransformation( TransUnitTest test ) throws KettleException {
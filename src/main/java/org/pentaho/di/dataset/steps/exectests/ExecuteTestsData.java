@@ -25,12 +25,17 @@ package org.pentaho.di.dataset.steps.exectests;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.dataset.TransUnitTest;
 import org.pentaho.di.dataset.util.FactoriesHierarchy;
+import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.metastore.persist.MetaStoreFactory;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 public class ExecuteTestsData extends BaseStepData implements StepDataInterface {
 
@@ -41,6 +46,12 @@ public class ExecuteTestsData extends BaseStepData implements StepDataInterface
   public FactoriesHierarchy hierarchy;
   public boolean hasPrevious;
 
+  public int parallelism;
+  public ExecutorService executor;
+  public CompletionService<List<Object[]>> completionService;
+  public int testsRunning;
+  public Set<Trans> activeTransformations = ConcurrentHashMap.newKeySet();
+
   public ExecuteTestsData() {
   }
 
@@ -66,6 +66,7 @@ public class ExecuteTestsDialog extends BaseStepDialog implements StepDialogInte
   private TextVar wStepNameField;
   private TextVar wErrorField;
   private TextVar wCommentField;
+  private TextVar wParallelism;
 
   private boolean hasPreviousSteps;
 
@@ -281,6 +282,25 @@ public class ExecuteTestsDialog extends BaseStepDialog implements StepDialogInte
     wCommentField.setLayoutData( fdCommentField );
     lastControl = wCommentField;
 
+    // Parallelism
+    //
+    Label wlParallelism = new Label( shell, SWT.RIGHT );
+    wlParallelism.setText( BaseMessages.getString( PKG, "ExecuteTestsDialog.Parallelism.Label" ) );
+    props.setLook( wlParallelism );
+    FormData fdlParallelism = new FormData();
+    fdlParallelism.left = new FormAttachment( 0, 0 );
+    fdlParallelism.right = new FormAttachment( middle, -margin );
+    fdlParallelism.top = new FormAttachment( lastControl, margin );
+    wlParallelism.setLayoutData( fdlParallelism );
+    wParallelism = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wParallelism );
+    FormData fdParallelism = new FormData();
+    fdParallelism.left = new FormAttachment( middle, 0 );
+    fdParallelism.top = new FormAttachment( lastControl, margin );
+    fdParallelism.right = new FormAttachment( 100, 0 );
+    wParallelism.setLayoutData( fdParallelism );
+    lastControl = wParallelism;
+
 
     // Some buttons
     wOK = new Button( shell, SWT.PUSH );
@@ -316,6 +336,7 @@ public class ExecuteTestsDialog extends BaseStepDialog implements StepDialogInte
     wStepNameField.addSelectionListener( lsDef );
     wErrorField.addSelectionListener( lsDef );
     wCommentField.addSelectionListener( lsDef );
+    wParallelism.addSelectionListener( lsDef );
 
 
     // Detect X or ALT-F4 or something that kills this window...
@@ -356,6 +377,7 @@ public class ExecuteTestsDialog extends BaseStepDialog implements StepDialogInte
     wStepNameField.setText( Const.NVL( input.getStepNameField(), "" ) );
     wErrorField.setText( Const.NVL( input.getErrorField(), "" ) );
     wCommentField.setText( Const.NVL( input.getCommentField(), "" ) );
+    wParallelism.setText( Const.NVL( input.getParallelism(), "" ) );
 
     enableFields();
 
@@ -386,6 +408,7 @@ public class ExecuteTestsDialog extends BaseStepDialog implements StepDialogInte
     input.setStepNameField( wStepNameField.getText() );
     input.setErrorField( wErrorField.getText() );
     input.setCommentField( wCommentField.getText() );
+    input.setParallelism( wParallelism.getText() );
 
     dispose();
   }
@@ -63,6 +63,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
   public static final String TAG_STEP_NAME_FIELD = "step_name_field";
   public static final String TAG_ERROR_FIELD = "error_field";
   public static final String TAG_COMMENT_FIELD = "comment_field";
+  public static final String TAG_PARALLELISM = "parallelism";
 
   private String testNameInputField;
   private TestType typeToExecute;
@@ -72,6 +73,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
   private String stepNameField;
   private String errorField;
   private String commentField;
+  private String parallelism;
 
   public ExecuteTestsMeta() {
     super();
@@ -104,6 +106,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
     xml.append( XMLHandler.addTagValue( TAG_STEP_NAME_FIELD, stepNameField ) );
     xml.append( XMLHandler.addTagValue( TAG_ERROR_FIELD, errorField ) );
     xml.append( XMLHandler.addTagValue( TAG_COMMENT_FIELD, commentField ) );
+    xml.append( XMLHandler.addTagValue( TAG_PARALLELISM, parallelism ) );
 
     return xml.toString();
   }
@@ -125,6 +128,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
       stepNameField = XMLHandler.getTagValue( stepnode, TAG_STEP_NAME_FIELD );
       errorField = XMLHandler.getTagValue( stepnode, TAG_ERROR_FIELD );
       commentField = XMLHandler.getTagValue( stepnode, TAG_COMMENT_FIELD );
+      parallelism = XMLHandler.getTagValue( stepnode, TAG_PARALLELISM );
 
     } catch ( Exception e ) {
       throw new KettleXMLException( "Unable to load execute test step details", e );
@@ -141,6 +145,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
     rep.saveStepAttribute( id_transformation, id_step, TAG_STEP_NAME_FIELD, stepNameField );
     rep.saveStepAttribute( id_transformation, id_step, TAG_ERROR_FIELD, errorField );
     rep.saveStepAttribute( id_transformation, id_step, TAG_COMMENT_FIELD, commentField );
+    rep.saveStepAttribute( id_transformation, id_step, TAG_PARALLELISM, parallelism );
   }
 
   @Override
@@ -163,6 +168,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
     stepNameField = rep.getStepAttributeString( id_step, TAG_STEP_NAME_FIELD );
     errorField = rep.getStepAttributeString( id_step, TAG_ERROR_FIELD );
     commentField = rep.getStepAttributeString( id_step, TAG_COMMENT_FIELD );
+    parallelism = rep.getStepAttributeString( id_step, TAG_PARALLELISM );
   }
 
   @Override
@@ -189,6 +195,7 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
     stepNameField = "step";
     errorField = "error";
     commentField = "comment";
+    parallelism = "1";
 
   }
 
@@ -320,4 +327,20 @@ public class ExecuteTestsMeta extends BaseStepMeta implements StepMetaInterface
   public void setCommentField( String commentField ) {
     this.commentField = commentField;
   }
+
+  /**
+   * Gets parallelism
+   *
+   * @return value of parallelism, the maximum number of unit tests to execute at the same time
+   */
+  public String getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * @param parallelism The parallelism to set
+   */
+  public void setParallelism( String parallelism ) {
+    this.parallelism = parallelism;
+  }
 }
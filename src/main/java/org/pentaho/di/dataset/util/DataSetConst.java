@@ -35,6 +35,9 @@ import org.pentaho.di.core.util.StringUtil;
 import org.pentaho.di.dataset.DataSet;
 import org.pentaho.di.dataset.DataSetField;
 import org.pentaho.di.dataset.DataSetGroup;
+import org.pentaho.di.dataset.DataSetRowListReader;
+import org.pentaho.di.dataset.DataSetRowReader;
+import org.pentaho.di.dataset.GoldenComparisonType;
 import org.pentaho.di.dataset.TestType;
 import org.pentaho.di.dataset.TransTweak;
 import org.pentaho.di.dataset.TransUnitTest;
@@ -49,10 +52,10 @@ import org.pentaho.di.shared.SharedObjectInterface;
 import org.pentaho.di.shared.SharedObjects;
 import org.pentaho.di.trans.Trans;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -78,9 +81,42 @@ public class DataSetConst {
 
   public static final String ROW_COLLECTION_MAP = "RowCollectionMap";
   public static final String UNIT_TEST_RESULTS = "UnitTestResults";
+  public static final String STREAMING_VALIDATOR_MAP = "StreamingValidatorMap";
+  public static final String DATA_SET_PREFETCHER = "DataSetPrefetcher";
+  public static final String UNIT_TEST_VALIDATION = "UnitTestValidation";
 
   public static final String VARIABLE_UNIT_TESTS_BASE_PATH = "UNIT_TESTS_BASE_PATH";
 
+  /**
+   * The number of positions a row can arrive away from its golden row position with streaming validation
+   */
+  public static final String VARIABLE_UNIT_TEST_STREAMING_WINDOW = "UNIT_TEST_STREAMING_WINDOW";
+
+  /**
+   * Stop the transformation after this many streaming validation errors, 0 or empty never stops
+   */
+  public static final String VARIABLE_UNIT_TEST_MAX_ERRORS = "UNIT_TEST_MAX_ERRORS";
+
+  /**
+   * Set to N to read the golden data sets only when they are validated instead of while the transformation runs
+   */
+  public static final String VARIABLE_UNIT_TEST_PREFETCH = "UNIT_TEST_PREFETCH_DATA_SETS";
+
+  /**
+   * The estimated memory in MB to use for the captured rows of a golden step, above that rows are written to temporary files
+   */
+  public static final String VARIABLE_UNIT_TEST_MEMORY_BUDGET = "UNIT_TEST_ROW_COLLECTION_MEMORY_MB";
+
+  /**
+   * How the rows of a step are written to a data set: Replace (default), Append or Upsert
+   */
+  public static final String VARIABLE_DATASET_WRITE_MODE = "DATASET_WRITE_MODE";
+
+  /**
+   * The comma separated data set fields identifying a row when writing rows to a data set in Upsert mode
+   */
+  public static final String VARIABLE_DATASET_WRITE_KEY_FIELDS = "DATASET_WRITE_KEY_FIELDS";
+
   private static final String[] tweakDesc = new String[] {
     BaseMessages.getString( PKG, "DataSetConst.Tweak.NONE.Desc" ),
     BaseMessages.getString( PKG, "DataSetConst.Tweak.BYPASS_STEP.Desc" ),
@@ -94,6 +130,12 @@ public class DataSetConst {
     BaseMessages.getString( PKG, "DataSetConst.TestType.UNIT_TEST.Desc" ),
   };
 
+  private static final String[] comparisonTypeDesc = new String[] {
+    BaseMessages.getString( PKG, "DataSetConst.ComparisonType.SORTED.Desc" ),
+    BaseMessages.getString( PKG, "DataSetConst.ComparisonType.HASHED.Desc" ),
+    BaseMessages.getString( PKG, "DataSetConst.ComparisonType.STREAMING.Desc" ),
+  };
+
 
   public static final DataSetGroup findDataSetGroup( List<DataSetGroup> list, String dataSetGroupName ) {
     if ( StringUtil.isEmpty( dataSetGroupName ) ) {
@@ -144,11 +186,89 @@ public class DataSetConst {
 
     // Write the rows to the data set we just created...
     //
-    dataSetGroup.writeDataSetData( tableName, rowMeta, dataRows );
+    dataSet.writeDataSetData( rowMeta, dataRows );
 
     return dataSet;
   }
 
+  /**
+   * Read all the remaining rows from a data set row reader into memory.
+   * The reader is not closed.
+   *
+   * @param rowReader The reader to get the rows from
+   * @return The list of rows
+   * @throws KettleException In case there was an error reading the rows
+   */
+  public static final List<Object[]> readAllRows( DataSetRowReader rowReader ) throws KettleException {
+    List<Object[]> rows = new ArrayList<>();
+    Object[] row = rowReader.getRow();
+    while ( row != null ) {
+      rows.add( row );
+      row = rowReader.getRow();
+    }
+    return rows;
+  }
+
+  /**
+   * Read all the rows from a data set row reader and sort them on the given fields.
+   * The given reader is closed.
+   *
+   * @param rowReader  The reader to get the rows from
+   * @param rowMeta    The row metadata of the rows handed out by the reader
+   * @param sortFields The names of the fields to sort on
+   * @return A reader handing out the sorted rows
+   * @throws KettleException In case there was an error reading or sorting the rows
+   */
+  public static final DataSetRowReader getSortedRowReader( DataSetRowReader rowReader, final RowMetaInterface rowMeta, List<String> sortFields ) throws KettleException {
+    List<Object[]> rows;
+    try {
+      rows = readAllRows( rowReader );
+    } finally {
+      rowReader.close();
+    }
+
+    sortRows( rowMeta, rows, sortFields );
+
+    return new DataSetRowListReader( rows );
+  }
+
+  /**
+   * A rough estimate of the memory used by a row, good enough to keep caches and buffers within bounds.
+   *
+   * @param row The row to estimate
+   * @return The estimated number of bytes used by the row and its values
+   */
+  public static final long estimateRowSize( Object[] row ) {
+    long size = 16L + row.length * 8L;
+    for ( Object value : row ) {
+      if ( value == null || value instanceof Boolean ) {
+        continue;
+      }
+      if ( value instanceof String ) {
+        size += 40L + ( (String) value ).length() * 2L;
+      } else if ( value instanceof byte[] ) {
+        size += 16L + ( (byte[]) value ).length;
+      } else if ( value instanceof BigDecimal ) {
+        size += 64L + ( (BigDecimal) value ).precision() / 2L;
+      } else {
+        size += 24L;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Sort the given rows in place on the given fields.
+   *
+   * @param rowMeta    The row metadata of the rows
+   * @param rows       The rows to sort
+   * @param sortFields The names of the fields to sort on
+   * @throws KettleException In case a sort field can't be found or there was an error comparing the rows
+   */
+  public static final void sortRows( RowMetaInterface rowMeta, List<Object[]> rows, List<String> sortFields ) throws KettleException {
+    RowSorter.create( rowMeta, sortFields ).sort( rows );
+  }
+
   /**
    * Validate the execution results of a transformation against the golden data sets of a unit test.
    *
@@ -160,13 +280,77 @@ public class DataSetConst {
    * @throws KettleException In case there was an error loading data or metadata.
    */
   public static final int validateTransResultAgainstUnitTest( Trans trans, TransUnitTest unitTest, FactoriesHierarchy hierarchy, List<UnitTestResult> results ) throws KettleException {
+
+    // Both the transformation finish extension point and the Execute Unit Tests step validate the same execution.
+    // The captured rows are released after the first validation so the next one gets the same outcome.
+    //
+    ValidationOutcome outcome = (ValidationOutcome) trans.getExtensionDataMap().get( UNIT_TEST_VALIDATION );
+    if ( outcome == null || !outcome.unitTestName.equals( unitTest.getName() ) ) {
+      List<UnitTestResult> validationResults = new ArrayList<>();
+      try {
+        int nrErrors = validateGoldenDataSets( trans, unitTest, hierarchy, validationResults );
+        outcome = new ValidationOutcome( unitTest.getName(), nrErrors, validationResults, null );
+      } catch ( KettleException e ) {
+        outcome = new ValidationOutcome( unitTest.getName(), 0, validationResults, e );
+      } finally {
+        releaseUnitTestResources( trans );
+      }
+      trans.getExtensionDataMap().put( UNIT_TEST_VALIDATION, outcome );
+    }
+
+    results.addAll( outcome.results );
+    if ( outcome.exception != null ) {
+      throw outcome.exception;
+    }
+    return outcome.nrErrors;
+  }
+
+  private static class ValidationOutcome {
+    private final String unitTestName;
+    private final int nrErrors;
+    private final List<UnitTestResult> results;
+    private final KettleException exception;
+
+    private ValidationOutcome( String unitTestName, int nrErrors, List<UnitTestResult> results, KettleException exception ) {
+      this.unitTestName = unitTestName;
+      this.nrErrors = nrErrors;
+      this.results = results;
+      this.exception = exception;
+    }
+  }
+
+  /**
+   * Stop prefetching golden rows nobody asked for and remove the temporary files of the captured step rows.
+   * This happens after the validation of the unit test, call it yourself when the transformation is never validated.
+   * Calling it more than once does no harm.
+   *
+   * @param trans The transformation which ran the unit test
+   */
+  public static void releaseUnitTestResources( Trans trans ) {
+    DataSetPrefetcher prefetcher = (DataSetPrefetcher) trans.getExtensionDataMap().get( DataSetConst.DATA_SET_PREFETCHER );
+    if ( prefetcher != null ) {
+      prefetcher.cancel();
+    }
+    @SuppressWarnings( "unchecked" )
+    Map<String, RowCollection> collectionMap = (Map<String, RowCollection>) trans.getExtensionDataMap().get( DataSetConst.ROW_COLLECTION_MAP );
+    if ( collectionMap != null ) {
+      for ( RowCollection rowCollection : collectionMap.values() ) {
+        rowCollection.dispose();
+      }
+    }
+  }
+
+  private static int validateGoldenDataSets( Trans trans, TransUnitTest unitTest, FactoriesHierarchy hierarchy, List<UnitTestResult> results ) throws KettleException {
     int nrErrors = 0;
 
     LogChannelInterface log = trans.getLogChannel();
 
     @SuppressWarnings( "unchecked" )
     Map<String, RowCollection> collectionMap = (Map<String, RowCollection>) trans.getExtensionDataMap().get( DataSetConst.ROW_COLLECTION_MAP );
-    if ( collectionMap == null ) {
+    @SuppressWarnings( "unchecked" )
+    Map<String, StreamingGoldenValidator> validatorMap = (Map<String, StreamingGoldenValidator>) trans.getExtensionDataMap().get( DataSetConst.STREAMING_VALIDATOR_MAP );
+    DataSetPrefetcher prefetcher = (DataSetPrefetcher) trans.getExtensionDataMap().get( DataSetConst.DATA_SET_PREFETCHER );
+    if ( collectionMap == null && validatorMap == null ) {
 
       String comment = "No step output result data found to validate against";
       results.add( new UnitTestResult( trans.getName(), unitTest.getName(), null, null, false, comment ) );
@@ -183,8 +367,34 @@ public class DataSetConst {
       }
 
       int nrLocationErrors = 0;
-      RowCollection resultCollection = collectionMap.get( location.getStepname() );
-      if ( resultCollection == null || resultCollection.getRows() == null || resultCollection.getRowMeta() == null ) {
+
+      // Rows validated while the transformation was running
+      //
+      if ( location.getComparisonType() == GoldenComparisonType.STREAMING ) {
+        StreamingGoldenValidator validator = validatorMap == null ? null : validatorMap.get( location.getStepname() );
+        if ( validator == null ) {
+          String comment = "WARNING: no streaming validation found for step '" + location.getStepname() + "' : check disabled hops, input and so on.";
+          results.add( new UnitTestResult(
+            trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
+            true, comment ) );
+          nrErrors++;
+        } else {
+          nrLocationErrors += validator.finish();
+          results.addAll( validator.getResults() );
+          if ( nrLocationErrors == 0 ) {
+            String comment = "Test passed succesfully against golden data set";
+            results.add( new UnitTestResult(
+              trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
+              false, comment ) );
+          } else {
+            nrErrors += nrLocationErrors;
+          }
+        }
+        continue;
+      }
+
+      RowCollection resultCollection = collectionMap == null ? null : collectionMap.get( location.getStepname() );
+      if ( resultCollection == null || resultCollection.getRowMeta() == null ) {
         // error occurred somewhere, we don't have results, provide dummy values to avoid exceptions, flag error
         //
         resultCollection = new RowCollection();
@@ -198,19 +408,30 @@ public class DataSetConst {
       }
       final RowMetaInterface resultRowMeta = resultCollection.getRowMeta();
 
-      log.logDetailed( "Found " + resultCollection.getRows().size() + " results for data comparing in step '" + location.getStepname() + "', fields: " + resultRowMeta.toString() );
+      log.logDetailed( "Found " + resultCollection.size() + " results for data comparing in step '" + location.getStepname() + "', fields: " + resultRowMeta.toString() );
 
+      // The golden rows were usually read while the transformation was running
+      //
       DataSet goldenDataSet = unitTest.getGoldenDataSet( log, hierarchy, location );
-      List<Object[]> goldenRows = goldenDataSet.getAllRows( log, location );
+      List<Object[]> goldenRows = prefetcher == null ? null : prefetcher.takeGoldenRows( location.getStepname() );
+      if ( goldenRows == null ) {
+        goldenRows = goldenDataSet.getAllRows( log, location );
+      }
       RowMetaInterface goldenRowMeta = goldenDataSet.getMappedDataSetFieldsRowMeta( location );
 
       log.logDetailed( "Found " + goldenRows.size() + " golden rows '" + location.getStepname() + "', fields: " + goldenRowMeta );
 
-      List<Object[]> resultRows = resultCollection.getRows();
+      if ( location.getComparisonType() == GoldenComparisonType.HASHED && !resultRowMeta.isEmpty() ) {
+
+        // Match the rows regardless of the order in which they arrived
+        //
+        try ( DataSetRowReader resultRows = resultCollection.getRowReader() ) {
+          nrLocationErrors += validateUnorderedRows( trans, unitTest, location, resultRowMeta, resultRows, goldenRowMeta, goldenRows, results );
+        }
 
-      if ( resultRows.size() != goldenRows.size() ) {
+      } else if ( resultCollection.size() != goldenRows.size() ) {
         String comment =
-          "Incorrect number of rows received from step, golden data set '" + location.getDataSetName() + "' has " + goldenRows.size() + " rows in it and we received " + resultRows.size();
+          "Incorrect number of rows received from step, golden data set '" + location.getDataSetName() + "' has " + goldenRows.size() + " rows in it and we received " + resultCollection.size();
         results.add( new UnitTestResult(
           trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
           true, comment ) );
@@ -235,53 +456,23 @@ public class DataSetConst {
             throw new KettleException( "Unable to find sort field '" + stepOrderField + "' in step results : " + Arrays.toString( resultRowMeta.getFieldNames() ) );
           }
         }
-        try {
-          log.logDetailed( "Sorting result rows collection on fields: " + location.getFieldOrder() );
-          resultCollection.getRows().sort( new Comparator<Object[]>() {
-            @Override public int compare( Object[] row1, Object[] row2 ) {
-              try {
-                return resultRowMeta.compare( row1, row2, resultFieldIndexes );
-              } catch ( KettleValueException e ) {
-                throw new RuntimeException( "Error comparing golden data result rows", e );
-              }
-            }
-          } );
-        } catch ( RuntimeException e ) {
-          throw new KettleException( "Error sorting result rows for golden data set '" + location.getDataSetName() + "'", e );
-        }
-
-        // Print the first 10 result rows
+        // The result rows are sorted while they're read for the comparison
         //
-        if ( log.isDebug() ) {
-          for ( int i = 0; i < 10 && i < resultCollection.getRows().size(); i++ ) {
-            log.logDetailed( "Result row #" + ( i + 1 ) + " : " + resultRowMeta.getString( resultCollection.getRows().get( i ) ) );
-          }
-        }
-
+        log.logDetailed( "Sorting result rows collection on fields: " + location.getFieldOrder() );
 
         // Golden rows
+        // File based groups already hand out the rows sorted on the location field order.
+        // Either they were stored that way or the group sorted them while reading.
         //
-        final int[] goldenFieldIndexes = new int[ location.getFieldOrder().size() ];
-        for ( int i = 0; i < goldenFieldIndexes.length; i++ ) {
-          goldenFieldIndexes[ i ] = goldenRowMeta.indexOfValue( location.getFieldOrder().get( i ) );
-          if ( goldenFieldIndexes[ i ] < 0 ) {
-            throw new KettleException( "Unable to find sort field '" + location.getFieldOrder().get( i ) + "' in golden rows : " + Arrays.toString( goldenRowMeta.getFieldNames() ) );
-          }
-        }
-        try {
+        if ( goldenDataSet.getGroup().isReadingSortedRows() ) {
+          log.logDetailed( "Golden rows collection is already sorted on fields: " + location.getFieldOrder() );
+        } else {
           log.logDetailed( "Sorting golden rows collection on fields: " + location.getFieldOrder() );
-
-          goldenRows.sort( new Comparator<Object[]>() {
-            @Override public int compare( Object[] row1, Object[] row2 ) {
-              try {
-                return goldenRowMeta.compare( row1, row2, goldenFieldIndexes );
-              } catch ( KettleValueException e ) {
-                throw new RuntimeException( "Error comparing golden data set rows", e );
-              }
-            }
-          } );
-        } catch ( RuntimeException e ) {
-          throw new KettleException( "Error sorting golden data rows for golden data set '" + location.getDataSetName() + "'", e );
+          try {
+            sortRows( goldenRowMeta, goldenRows, location.getFieldOrder() );
+          } catch ( KettleException e ) {
+            throw new KettleException( "Error sorting golden data rows for golden data set '" + location.getDataSetName() + "'", e );
+          }
         }
 
         // Print the first 10 golden rows
@@ -303,50 +494,58 @@ public class DataSetConst {
             log.logDetailed( "Field to compare #" + i + " found on step index : " + stepFieldIndices[ i ] + ", golden index : " + goldenIndices[ i ] );
           }
 
-          for ( int rowNumber = 0; rowNumber < resultRows.size(); rowNumber++ ) {
-            Object[] resultRow = resultRows.get( rowNumber );
-            Object[] goldenRow = goldenRows.get( rowNumber );
+          try ( DataSetRowReader resultRows = resultCollection.getSortedRowReader( resultFieldIndexes ) ) {
+            for ( int rowNumber = 0; rowNumber < goldenRows.size(); rowNumber++ ) {
+              Object[] resultRow = resultRows.getRow();
+              Object[] goldenRow = goldenRows.get( rowNumber );
 
-            // Now compare the input to the golden row
-            //
-            for ( int i = 0; i < location.getFieldMappings().size(); i++ ) {
-              ValueMetaInterface stepValueMeta = resultCollection.getRowMeta().getValueMeta( stepFieldIndices[ i ] );
-              Object stepValue = resultRow[ stepFieldIndices[ i ] ];
+              // Print the first 10 result rows
+              //
+              if ( log.isDebug() && rowNumber < 10 ) {
+                log.logDetailed( "Result row #" + ( rowNumber + 1 ) + " : " + resultRowMeta.getString( resultRow ) );
+              }
 
-              ValueMetaInterface goldenValueMeta = goldenRowMeta.getValueMeta( goldenIndices[ i ] );
-              Object goldenValue = goldenRow[ goldenIndices[ i ] ];
+              // Now compare the input to the golden row
+              //
+              for ( int i = 0; i < location.getFieldMappings().size(); i++ ) {
+                ValueMetaInterface stepValueMeta = resultCollection.getRowMeta().getValueMeta( stepFieldIndices[ i ] );
+                Object stepValue = resultRow[ stepFieldIndices[ i ] ];
 
-              if ( log.isDetailed() ) {
-                log.logDebug( "Comparing Meta '" + stepValueMeta.toString() + "' with '" + goldenValueMeta.toString() + "'" );
-                log.logDebug( "Comparing Value '" + stepValue + "' with '" + goldenValue + "'" );
-              }
+                ValueMetaInterface goldenValueMeta = goldenRowMeta.getValueMeta( goldenIndices[ i ] );
+                Object goldenValue = goldenRow[ goldenIndices[ i ] ];
 
-              Object goldenValueConverted;
+                if ( log.isDetailed() ) {
+                  log.logDebug( "Comparing Meta '" + stepValueMeta.toString() + "' with '" + goldenValueMeta.toString() + "'" );
+                  log.logDebug( "Comparing Value '" + stepValue + "' with '" + goldenValue + "'" );
+                }
 
-              // sometimes there are data conversion issues because of the the database...
-              //
-              if ( goldenValueMeta.getType() == stepValueMeta.getType() ) {
-                goldenValueConverted = goldenValue;
-              } else {
-                goldenValueConverted = stepValueMeta.convertData( goldenValueMeta, goldenValue );
-              }
+                Object goldenValueConverted;
+
+                // sometimes there are data conversion issues because of the the database...
+                //
+                if ( goldenValueMeta.getType() == stepValueMeta.getType() ) {
+                  goldenValueConverted = goldenValue;
+                } else {
+                  goldenValueConverted = stepValueMeta.convertData( goldenValueMeta, goldenValue );
+                }
 
-              try {
-                int cmp = stepValueMeta.compare( stepValue, stepValueMeta, goldenValueConverted );
-                if ( cmp != 0 ) {
-                  if ( log.isDebug() ) {
-                    log.logDebug( "Unit test failure: '" + stepValue + "' <> '" + goldenValue + "'" );
+                try {
+                  int cmp = stepValueMeta.compare( stepValue, stepValueMeta, goldenValueConverted );
+                  if ( cmp != 0 ) {
+                    if ( log.isDebug() ) {
+                      log.logDebug( "Unit test failure: '" + stepValue + "' <> '" + goldenValue + "'" );
+                    }
+                    String comment = "Validation againt golden data failed for row number " + ( rowNumber + 1 )
+                      + ": step value [" + stepValueMeta.getString( stepValue )
+                      + "] does not correspond to data set value [" + goldenValueMeta.getString( goldenValue ) + "]";
+                    results.add( new UnitTestResult(
+                      trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
+                      true, comment ) );
+                    nrLocationErrors++;
                   }
-                  String comment = "Validation againt golden data failed for row number " + ( rowNumber + 1 )
-                    + ": step value [" + stepValueMeta.getString( stepValue )
-                    + "] does not correspond to data set value [" + goldenValueMeta.getString( goldenValue ) + "]";
-                  results.add( new UnitTestResult(
-                    trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
-                    true, comment ) );
-                  nrLocationErrors++;
+                } catch ( KettleValueException e ) {
+                  throw new KettleException( "Unable to compare step data against golden data set '" + location.getDataSetName() + "'", e );
                 }
-              } catch ( KettleValueException e ) {
-                throw new KettleException( "Unable to compare step data against golden data set '" + location.getDataSetName() + "'", e );
               }
             }
           }
@@ -373,6 +572,90 @@ public class DataSetConst {
     return nrErrors;
   }
 
+  /**
+   * Compare the result rows of a step with the golden rows without looking at the order of the rows.
+   * The golden rows are put in a bag with a count per distinct row, then every result row takes one of those out.
+   * Result rows which can't be found are reported as unexpected, golden rows which are left over as missing.
+   *
+   * @return The number of errors found
+   */
+  private static int validateUnorderedRows( Trans trans, TransUnitTest unitTest, TransUnitTestSetLocation location,
+                                            RowMetaInterface resultRowMeta, DataSetRowReader resultRows,
+                                            RowMetaInterface goldenRowMeta, List<Object[]> goldenRows,
+                                            List<UnitTestResult> results ) throws KettleException {
+    int nrErrors = 0;
+    LogChannelInterface log = trans.getLogChannel();
+
+    // The mapped values of both sides are compared in the format of the step fields
+    //
+    List<TransUnitTestFieldMapping> fieldMappings = location.getFieldMappings();
+    int[] stepFieldIndices = new int[ fieldMappings.size() ];
+    int[] goldenIndices = new int[ fieldMappings.size() ];
+    RowMetaInterface compareRowMeta = new RowMeta();
+    for ( int i = 0; i < fieldMappings.size(); i++ ) {
+      TransUnitTestFieldMapping fieldMapping = fieldMappings.get( i );
+      stepFieldIndices[ i ] = resultRowMeta.indexOfValue( fieldMapping.getStepFieldName() );
+      if ( stepFieldIndices[ i ] < 0 ) {
+        throw new KettleException( "Unable to find step field '" + fieldMapping.getStepFieldName() + "' in step results : " + Arrays.toString( resultRowMeta.getFieldNames() ) );
+      }
+      goldenIndices[ i ] = goldenRowMeta.indexOfValue( fieldMapping.getDataSetFieldName() );
+      if ( goldenIndices[ i ] < 0 ) {
+        throw new KettleException( "Unable to find data set field '" + fieldMapping.getDataSetFieldName() + "' in golden rows : " + Arrays.toString( goldenRowMeta.getFieldNames() ) );
+      }
+      ValueMetaInterface compareValueMeta = resultRowMeta.getValueMeta( stepFieldIndices[ i ] ).clone();
+      compareValueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      compareRowMeta.addValueMeta( compareValueMeta );
+    }
+
+    try {
+      RowMultiset goldenMultiset = new RowMultiset( compareRowMeta );
+      for ( Object[] goldenRow : goldenRows ) {
+        Object[] compareRow = new Object[ goldenIndices.length ];
+        for ( int i = 0; i < goldenIndices.length; i++ ) {
+          ValueMetaInterface goldenValueMeta = goldenRowMeta.getValueMeta( goldenIndices[ i ] );
+          ValueMetaInterface compareValueMeta = compareRowMeta.getValueMeta( i );
+          Object goldenValue = goldenRow[ goldenIndices[ i ] ];
+          if ( goldenValueMeta.getType() == compareValueMeta.getType() ) {
+            compareRow[ i ] = goldenValue;
+          } else {
+            compareRow[ i ] = compareValueMeta.convertData( goldenValueMeta, goldenValue );
+          }
+        }
+        goldenMultiset.add( compareRow );
+      }
+      log.logDetailed( "Built a bag of " + goldenMultiset.size() + " golden rows for step '" + location.getStepname() + "'" );
+
+      int rowNumber = 0;
+      for ( Object[] resultRow = resultRows.getRow(); resultRow != null; resultRow = resultRows.getRow(), rowNumber++ ) {
+        Object[] compareRow = new Object[ stepFieldIndices.length ];
+        for ( int i = 0; i < stepFieldIndices.length; i++ ) {
+          ValueMetaInterface stepValueMeta = resultRowMeta.getValueMeta( stepFieldIndices[ i ] );
+          compareRow[ i ] = stepValueMeta.convertToNormalStorageType( resultRow[ stepFieldIndices[ i ] ] );
+        }
+        if ( !goldenMultiset.remove( compareRow ) ) {
+          String comment = "Unexpected row number " + ( rowNumber + 1 ) + " received from step, not found in golden data set : "
+            + compareRowMeta.getString( compareRow );
+          results.add( new UnitTestResult(
+            trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
+            true, comment ) );
+          nrErrors++;
+        }
+      }
+
+      for ( Object[] missingRow : goldenMultiset.getRows() ) {
+        String comment = "Missing row, golden data set row was not received from step : " + compareRowMeta.getString( missingRow );
+        results.add( new UnitTestResult(
+          trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(),
+          true, comment ) );
+        nrErrors++;
+      }
+    } catch ( KettleValueException e ) {
+      throw new KettleException( "Unable to compare step data against golden data set '" + location.getDataSetName() + "'", e );
+    }
+
+    return nrErrors;
+  }
+
   public static final String getDirectoryFromPath( String path ) {
     int lastSlashIndex = path.lastIndexOf( '/' );
     if ( lastSlashIndex >= 0 ) {
@@ -463,4 +746,33 @@ public class DataSetConst {
     return testTypeDesc;
   }
 
+  public static final String getComparisonTypeDescription( GoldenComparisonType comparisonType ) {
+    int index = 0; // SORTED
+    if ( comparisonType != null ) {
+      index = comparisonType.ordinal();
+    }
+    return comparisonTypeDesc[ index ];
+  }
+
+  /**
+   * Get the GoldenComparisonType for a description (from the dialog)
+   *
+   * @param comparisonTypeDescription The description to look for
+   * @return the comparison type or SORTED if nothing matched
+   */
+  public static final GoldenComparisonType getComparisonTypeForDescription( String comparisonTypeDescription ) {
+    if ( StringUtils.isEmpty( comparisonTypeDescription ) ) {
+      return GoldenComparisonType.SORTED;
+    }
+    int index = Const.indexOfString( comparisonTypeDescription, comparisonTypeDesc );
+    if ( index < 0 ) {
+      return GoldenComparisonType.SORTED;
+    }
+    return GoldenComparisonType.values()[ index ];
+  }
+
+  public static final String[] getComparisonTypeDescriptions() {
+    return comparisonTypeDesc;
+  }
+
 }
@@ -0,0 +1,148 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset.util;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.util.StringUtil;
+import org.pentaho.di.dataset.DataSet;
+import org.pentaho.di.dataset.GoldenComparisonType;
+import org.pentaho.di.dataset.TransUnitTest;
+import org.pentaho.di.dataset.TransUnitTestSetLocation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the golden data sets of a unit test in the background as soon as the test is known.
+ * That way reading the golden rows overlaps with the preparation and the execution of the transformation.
+ * Every prefetched set can be taken exactly once, after that the rows belong to the caller.
+ * Golden sets which are validated while streaming are read by the validator itself and are not prefetched.
+ * Input data sets are not prefetched either: they are streamed into the transformation by a row reader so that
+ * they never need to fit in memory.
+ */
+public class DataSetPrefetcher {
+
+  private static final int NR_PREFETCH_THREADS = Math.max( 2, Runtime.getRuntime().availableProcessors() );
+
+  private static ExecutorService executor;
+
+  private final Map<String, Future<List<Object[]>>> goldenRows;
+
+  private DataSetPrefetcher() {
+    goldenRows = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Start reading all the golden data sets of the given unit test which are validated after the transformation finished.
+   *
+   * @param log       the log channel to use
+   * @param unitTest  the unit test to read the data sets for
+   * @param hierarchy the factories to load the data sets with
+   * @return the prefetcher which hands out the rows
+   * @throws KettleException In case a data set could not be loaded
+   */
+  public static DataSetPrefetcher prefetch( LogChannelInterface log, TransUnitTest unitTest, FactoriesHierarchy hierarchy ) throws KettleException {
+    DataSetPrefetcher prefetcher = new DataSetPrefetcher();
+
+    for ( TransUnitTestSetLocation location : unitTest.getGoldenDataSets() ) {
+      if ( StringUtil.isEmpty( location.getDataSetName() ) || location.getComparisonType() == GoldenComparisonType.STREAMING ) {
+        continue;
+      }
+      DataSet dataSet = unitTest.getGoldenDataSet( log, hierarchy, location );
+      prefetcher.goldenRows.put( location.getStepname(), submit( log, dataSet, location ) );
+    }
+
+    if ( log.isDetailed() ) {
+      log.logDetailed( "Prefetching " + prefetcher.goldenRows.size() + " golden data sets" );
+    }
+    return prefetcher;
+  }
+
+  private static Future<List<Object[]>> submit( final LogChannelInterface log, final DataSet dataSet, final TransUnitTestSetLocation location ) {
+    return getExecutor().submit( () -> {
+      long start = System.currentTimeMillis();
+      List<Object[]> rows = dataSet.getAllRows( log, location );
+      if ( log.isDetailed() ) {
+        log.logDetailed( "Prefetched " + rows.size() + " rows of data set '" + dataSet.getName() + "' for step '" + location.getStepname()
+          + "' in " + ( System.currentTimeMillis() - start ) + "ms" );
+      }
+      return rows;
+    } );
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if ( executor == null ) {
+      final AtomicInteger threadNr = new AtomicInteger( 0 );
+      executor = Executors.newFixedThreadPool( NR_PREFETCH_THREADS, runnable -> {
+        Thread thread = new Thread( runnable, "DataSetPrefetcher-" + threadNr.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+      } );
+    }
+    return executor;
+  }
+
+  /**
+   * Take the prefetched golden rows for a step, waiting for them if they are still being read.
+   *
+   * @param stepname the name of the step to validate
+   * @return the golden rows or null if nothing was prefetched for the step
+   * @throws KettleException In case there was an error reading the golden data set
+   */
+  public List<Object[]> takeGoldenRows( String stepname ) throws KettleException {
+    Future<List<Object[]>> future = goldenRows.remove( stepname );
+    if ( future == null ) {
+      return null;
+    }
+    return waitForRows( future, stepname );
+  }
+
+  /**
+   * Stop reading whatever wasn't taken yet.
+   */
+  public void cancel() {
+    for ( Future<List<Object[]>> future : goldenRows.values() ) {
+      future.cancel( true );
+    }
+    goldenRows.clear();
+  }
+
+  private static List<Object[]> waitForRows( Future<List<Object[]>> future, String stepname ) throws KettleException {
+    try {
+      return future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for the data set rows of step '" + stepname + "'", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Error reading the data set rows of step '" + stepname + "'", e.getCause() );
+    }
+  }
+}
@@ -31,14 +31,62 @@ import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.pentaho.metastore.persist.MetaStoreFactory;
 import org.pentaho.metastore.util.PentahoDefaults;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class FactoriesHierarchy {
+
+  private static final int MAX_CACHED_HIERARCHIES = 10;
+
+  /**
+   * The hierarchies loaded so far per metastore and list of databases, least recently used first
+   */
+  private static final Map<CacheKey, FactoriesHierarchy> cache = new LinkedHashMap<CacheKey, FactoriesHierarchy>( 16, 0.75f, true ) {
+    @Override protected boolean removeEldestEntry( Map.Entry<CacheKey, FactoriesHierarchy> eldest ) {
+      return size() > MAX_CACHED_HIERARCHIES;
+    }
+  };
+
+  private static class CacheKey {
+    private final IMetaStore metaStore;
+    private final String databasesKey;
+
+    private CacheKey( IMetaStore metaStore, List<DatabaseMeta> databases ) {
+      this.metaStore = metaStore;
+
+      // The database metadata objects are usually re-created for every run so use their content
+      //
+      StringBuilder key = new StringBuilder();
+      if ( databases != null ) {
+        for ( DatabaseMeta databaseMeta : databases ) {
+          key.append( databaseMeta.getXML() ).append( '\n' );
+        }
+      }
+      this.databasesKey = key.toString();
+    }
+
+    @Override public boolean equals( Object obj ) {
+      if ( !( obj instanceof CacheKey ) ) {
+        return false;
+      }
+      CacheKey cmp = (CacheKey) obj;
+      return metaStore == cmp.metaStore && databasesKey.equals( cmp.databasesKey );
+    }
+
+    @Override public int hashCode() {
+      return 31 * System.identityHashCode( metaStore ) + databasesKey.hashCode();
+    }
+  }
+
   private IMetaStore metaStore;
   private List<DatabaseMeta> databases;
   private MetaStoreFactory<DataSetGroup> groupFactory;
   private MetaStoreFactory<DataSet> setFactory;
   private MetaStoreFactory<TransUnitTest> testFactory;
+  private List<String> groupElementNames;
+  private List<String> setElementNames;
 
   public FactoriesHierarchy( IMetaStore metaStore, List<DatabaseMeta> databases ) throws MetaStoreException {
     this.metaStore = metaStore;
@@ -46,10 +94,18 @@ public class FactoriesHierarchy {
     groupFactory = new MetaStoreFactory<DataSetGroup>( DataSetGroup.class, metaStore, PentahoDefaults.NAMESPACE );
     groupFactory.addNameList( DataSetConst.DATABASE_LIST_KEY, databases );
     List<DataSetGroup> groups = groupFactory.getElements();
+    groupElementNames = new ArrayList<>();
+    for ( DataSetGroup group : groups ) {
+      groupElementNames.add( group.getName() );
+    }
 
     setFactory = new MetaStoreFactory<DataSet>( DataSet.class, metaStore, PentahoDefaults.NAMESPACE );
     setFactory.addNameList( DataSetConst.GROUP_LIST_KEY, groups );
     List<DataSet> sets = setFactory.getElements();
+    setElementNames = new ArrayList<>();
+    for ( DataSet set : sets ) {
+      setElementNames.add( set.getName() );
+    }
 
     setFactory.addNameFactory( DataSetConst.GROUP_LIST_KEY, groupFactory );
 
@@ -58,6 +114,56 @@ public class FactoriesHierarchy {
 
   }
 
+  /**
+   * Get a factories hierarchy for the given metastore and databases.
+   * The groups and data sets are only loaded the first time or after the cache was invalidated.
+   * In case data set groups or data sets were added or removed in the metastore in the mean time the hierarchy is loaded again.
+   *
+   * @param metaStore The metastore to load from
+   * @param databases The databases to reference in the data set groups
+   * @return The factories hierarchy
+   * @throws MetaStoreException
+   */
+  public static FactoriesHierarchy getCachedHierarchy( IMetaStore metaStore, List<DatabaseMeta> databases ) throws MetaStoreException {
+    CacheKey key = new CacheKey( metaStore, databases );
+    synchronized ( cache ) {
+      FactoriesHierarchy hierarchy = cache.get( key );
+      if ( hierarchy != null && hierarchy.isUpToDate() ) {
+        return hierarchy;
+      }
+    }
+
+    // Load outside of the lock, this is the expensive part
+    //
+    FactoriesHierarchy hierarchy = new FactoriesHierarchy( metaStore, databases );
+    synchronized ( cache ) {
+      cache.put( key, hierarchy );
+    }
+    return hierarchy;
+  }
+
+  /**
+   * Forget all cached hierarchies.  Call this after saving or deleting data set groups or data sets.
+   */
+  public static void invalidateCache() {
+    synchronized ( cache ) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Listing the element names is cheap compared to loading all the elements.
+   * It detects groups and sets which were added, removed or renamed by someone else.
+   */
+  private boolean isUpToDate() throws MetaStoreException {
+    List<String> groupNames = groupFactory.getElementNames();
+    if ( groupNames.size() != groupElementNames.size() || !groupElementNames.containsAll( groupNames ) ) {
+      return false;
+    }
+    List<String> setNames = setFactory.getElementNames();
+    return setNames.size() == setElementNames.size() && setElementNames.containsAll( setNames );
+  }
+
   public IMetaStore getMetaStore() {
     return metaStore;
   }
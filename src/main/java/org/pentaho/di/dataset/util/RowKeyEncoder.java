@@ -0,0 +1,257 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset.util;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.text.Collator;
+import java.util.Date;
+
+/**
+ * Encodes the sort fields of a row into a key of bytes which sorts the same way as the values of those fields.
+ * Comparing 2 keys is a plain unsigned byte comparison, no matter which types are involved.
+ * <p>
+ * Every field starts with a byte telling if the value is null (nulls sort first), then follows the value:
+ * <ul>
+ * <li>Integers and dates: 8 bytes big endian with the sign bit flipped, timestamps add 4 bytes of nanoseconds</li>
+ * <li>Numbers: the IEEE 754 bits, flipped so that negative numbers sort before positive ones</li>
+ * <li>Big numbers: a sign byte, the decimal exponent and the digits</li>
+ * <li>Strings: the characters (lower case when case insensitive, the collation key when a collator is used)
+ * with 0 bytes escaped and a 0,0 terminator</li>
+ * </ul>
+ * The bytes of a field sorted descending are inverted.  Binary and other types are not supported.
+ */
+public class RowKeyEncoder {
+
+  private final RowMetaInterface rowMeta;
+  private final int[] indexes;
+  private final Collator[] collators;
+
+  /**
+   * @param rowMeta The metadata of the rows to encode
+   * @param indexes The indexes of the fields to put in the key, in sort order
+   */
+  public RowKeyEncoder( RowMetaInterface rowMeta, int[] indexes ) {
+    this.rowMeta = rowMeta;
+    this.indexes = indexes;
+    this.collators = new Collator[ indexes.length ];
+    for ( int i = 0; i < indexes.length; i++ ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( indexes[ i ] );
+      if ( valueMeta.getType() == ValueMetaInterface.TYPE_STRING && !valueMeta.isCaseInsensitive() && !valueMeta.isCollatorDisabled() ) {
+        collators[ i ] = Collator.getInstance( valueMeta.getCollatorLocale() );
+        collators[ i ].setStrength( valueMeta.getCollatorStrength() );
+      }
+    }
+  }
+
+  /**
+   * @param rowMeta The metadata of the rows to encode
+   * @param indexes The indexes of the fields to put in the key
+   * @return true if all the fields have a type which can be encoded
+   */
+  public static boolean isSupported( RowMetaInterface rowMeta, int[] indexes ) {
+    for ( int index : indexes ) {
+      switch ( rowMeta.getValueMeta( index ).getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+        case ValueMetaInterface.TYPE_NUMBER:
+        case ValueMetaInterface.TYPE_DATE:
+        case ValueMetaInterface.TYPE_TIMESTAMP:
+        case ValueMetaInterface.TYPE_BIGNUMBER:
+        case ValueMetaInterface.TYPE_BOOLEAN:
+        case ValueMetaInterface.TYPE_STRING:
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Encode the sort fields of a row
+   *
+   * @param row The row to encode
+   * @return The key
+   * @throws KettleValueException In case a value couldn't be converted
+   */
+  public byte[] encode( Object[] row ) throws KettleValueException {
+    ByteArrayOutputStream key = new ByteArrayOutputStream( 16 * indexes.length );
+    for ( int i = 0; i < indexes.length; i++ ) {
+      ValueMetaInterface valueMeta = rowMeta.getValueMeta( indexes[ i ] );
+      int start = key.size();
+      encodeValue( key, valueMeta, collators[ i ], row[ indexes[ i ] ] );
+      if ( valueMeta.isSortedDescending() ) {
+        key = invert( key, start );
+      }
+    }
+    return key.toByteArray();
+  }
+
+  private static void encodeValue( ByteArrayOutputStream key, ValueMetaInterface valueMeta, Collator collator, Object value ) throws KettleValueException {
+    if ( valueMeta.isNull( value ) ) {
+      key.write( 0 );
+      return;
+    }
+    key.write( 1 );
+
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        writeLong( key, valueMeta.getInteger( value ) ^ Long.MIN_VALUE );
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        long bits = Double.doubleToLongBits( valueMeta.getNumber( value ) );
+        writeLong( key, bits < 0 ? ~bits : bits ^ Long.MIN_VALUE );
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        writeLong( key, valueMeta.getDate( value ).getTime() ^ Long.MIN_VALUE );
+        break;
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        Date date = valueMeta.getDate( value );
+        writeLong( key, date.getTime() ^ Long.MIN_VALUE );
+        writeInt( key, date instanceof Timestamp ? ( (Timestamp) date ).getNanos() : 0 );
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        writeBigNumber( key, valueMeta.getBigNumber( value ) );
+        break;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        key.write( valueMeta.getBoolean( value ) ? 1 : 0 );
+        break;
+      default:
+        String string = valueMeta.getString( value );
+        if ( collator != null ) {
+          writeEscaped( key, collator.getCollationKey( string ).toByteArray() );
+        } else {
+          writeString( key, string, valueMeta.isCaseInsensitive() );
+        }
+        break;
+    }
+  }
+
+  private static void writeLong( ByteArrayOutputStream key, long value ) {
+    for ( int shift = 56; shift >= 0; shift -= 8 ) {
+      key.write( (int) ( value >>> shift ) );
+    }
+  }
+
+  private static void writeInt( ByteArrayOutputStream key, int value ) {
+    for ( int shift = 24; shift >= 0; shift -= 8 ) {
+      key.write( value >>> shift );
+    }
+  }
+
+  /**
+   * Same order as String.compareTo or compareToIgnoreCase: the UTF-16 characters, 2 bytes each
+   */
+  private static void writeString( ByteArrayOutputStream key, String string, boolean caseInsensitive ) {
+    for ( int i = 0; i < string.length(); i++ ) {
+      char c = string.charAt( i );
+      if ( caseInsensitive ) {
+        c = Character.toLowerCase( Character.toUpperCase( c ) );
+      }
+      writeEscapedByte( key, c >>> 8 );
+      writeEscapedByte( key, c & 0xFF );
+    }
+    key.write( 0 );
+    key.write( 0 );
+  }
+
+  private static void writeEscaped( ByteArrayOutputStream key, byte[] bytes ) {
+    for ( byte b : bytes ) {
+      writeEscapedByte( key, b & 0xFF );
+    }
+    key.write( 0 );
+    key.write( 0 );
+  }
+
+  /**
+   * A 0 byte is written as 0,255 so that the 0,0 terminator sorts before everything: shorter strings sort first.
+   */
+  private static void writeEscapedByte( ByteArrayOutputStream key, int b ) {
+    key.write( b );
+    if ( b == 0 ) {
+      key.write( 0xFF );
+    }
+  }
+
+  /**
+   * Sign (0 negative, 1 zero, 2 positive), then for non-zero values the exponent and digits of the absolute value.
+   * The exponent and digits of negative values are inverted so that larger absolute values sort first.
+   */
+  private static void writeBigNumber( ByteArrayOutputStream key, BigDecimal value ) {
+    int signum = value.signum();
+    key.write( signum + 1 );
+    if ( signum == 0 ) {
+      return;
+    }
+    BigDecimal stripped = value.abs().stripTrailingZeros();
+    String digits = stripped.unscaledValue().toString();
+    int exponent = digits.length() - stripped.scale();
+
+    ByteArrayOutputStream magnitude = new ByteArrayOutputStream( digits.length() + 5 );
+    writeInt( magnitude, exponent ^ Integer.MIN_VALUE );
+    for ( int i = 0; i < digits.length(); i++ ) {
+      magnitude.write( digits.charAt( i ) );
+    }
+    magnitude.write( 0 );
+
+    byte[] bytes = magnitude.toByteArray();
+    if ( signum < 0 ) {
+      for ( int i = 0; i < bytes.length; i++ ) {
+        bytes[ i ] = (byte) ~bytes[ i ];
+      }
+    }
+    key.write( bytes, 0, bytes.length );
+  }
+
+  private static ByteArrayOutputStream invert( ByteArrayOutputStream key, int start ) {
+    byte[] bytes = key.toByteArray();
+    for ( int i = start; i < bytes.length; i++ ) {
+      bytes[ i ] = (byte) ~bytes[ i ];
+    }
+    ByteArrayOutputStream inverted = new ByteArrayOutputStream( bytes.length + 16 );
+    inverted.write( bytes, 0, bytes.length );
+    return inverted;
+  }
+
+  /**
+   * Compare 2 keys byte by byte, unsigned
+   *
+   * @return a negative number, 0 or a positive number when the first key sorts before, the same as or after the second key
+   */
+  public static int compare( byte[] key1, byte[] key2 ) {
+    int length = Math.min( key1.length, key2.length );
+    for ( int i = 0; i < length; i++ ) {
+      int cmp = ( key1[ i ] & 0xFF ) - ( key2[ i ] & 0xFF );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return key1.length - key2.length;
+  }
+}
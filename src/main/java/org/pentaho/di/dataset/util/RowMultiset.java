@@ -0,0 +1,201 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.dataset.util;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bag of rows which keeps a count for every distinct row.
+ * Rows are considered the same when all their values compare as equal using the given row metadata.
+ * The hash codes are calculated so that values which compare as equal always end up in the same bucket.
+ * This allows rows to be matched in any order without sorting.
+ * All rows are expected to be in normal storage.
+ */
+public class RowMultiset {
+
+  private static class Entry {
+    private Object[] row;
+    private int count;
+
+    private Entry( Object[] row ) {
+      this.row = row;
+    }
+  }
+
+  private final RowMetaInterface rowMeta;
+  private final Map<Integer, List<Entry>> buckets;
+  private int size;
+
+  public RowMultiset( RowMetaInterface rowMeta ) {
+    this.rowMeta = rowMeta;
+    this.buckets = new HashMap<>();
+    this.size = 0;
+  }
+
+  /**
+   * Add a row to the bag
+   *
+   * @param row The row to add
+   * @throws KettleValueException In case the row couldn't be compared to the rows already in the bag
+   */
+  public void add( Object[] row ) throws KettleValueException {
+    int hashCode = hashCode( row );
+    List<Entry> bucket = buckets.get( hashCode );
+    if ( bucket == null ) {
+      bucket = new ArrayList<>( 1 );
+      buckets.put( hashCode, bucket );
+    }
+    Entry entry = findEntry( bucket, row );
+    if ( entry == null ) {
+      entry = new Entry( row );
+      bucket.add( entry );
+    }
+    entry.count++;
+    size++;
+  }
+
+  /**
+   * Remove one occurrence of the given row from the bag.
+   *
+   * @param row The row to remove
+   * @return true if the row was found and removed, false if the bag didn't contain the row
+   * @throws KettleValueException In case the row couldn't be compared to the rows in the bag
+   */
+  public boolean remove( Object[] row ) throws KettleValueException {
+    int hashCode = hashCode( row );
+    List<Entry> bucket = buckets.get( hashCode );
+    if ( bucket == null ) {
+      return false;
+    }
+    Entry entry = findEntry( bucket, row );
+    if ( entry == null ) {
+      return false;
+    }
+    entry.count--;
+    if ( entry.count == 0 ) {
+      bucket.remove( entry );
+      if ( bucket.isEmpty() ) {
+        buckets.remove( hashCode );
+      }
+    }
+    size--;
+    return true;
+  }
+
+  /**
+   * @return All the rows left in the bag, a row is repeated as many times as it occurs
+   */
+  public List<Object[]> getRows() {
+    List<Object[]> rows = new ArrayList<>( size );
+    for ( List<Entry> bucket : buckets.values() ) {
+      for ( Entry entry : bucket ) {
+        for ( int i = 0; i < entry.count; i++ ) {
+          rows.add( entry.row );
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return The number of rows in the bag
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  private Entry findEntry( List<Entry> bucket, Object[] row ) throws KettleValueException {
+    for ( Entry entry : bucket ) {
+      if ( rowMeta.compare( entry.row, row ) == 0 ) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private int hashCode( Object[] row ) {
+    int hashCode = 1;
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      hashCode = 31 * hashCode + hashCode( rowMeta.getValueMeta( i ), row[ i ] );
+    }
+    return hashCode;
+  }
+
+  /**
+   * Calculate a hash code which is the same for all values that compare as equal.
+   * String values ignore case and white space since the value metadata can be set up to do so while comparing.
+   * Types without a natural hash code go into a single bucket and are only compared.
+   */
+  private static int hashCode( ValueMetaInterface valueMeta, Object value ) {
+    if ( valueMeta.isNull( value ) ) {
+      return 0;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        if ( !valueMeta.isCollatorDisabled() ) {
+          // Collation rules can make quite different strings equal
+          //
+          return 1;
+        }
+        String string = (String) value;
+        int hashCode = 0;
+        for ( int i = 0; i < string.length(); i++ ) {
+          char c = string.charAt( i );
+          if ( !Character.isWhitespace( c ) ) {
+            hashCode = 31 * hashCode + Character.toLowerCase( Character.toUpperCase( c ) );
+          }
+        }
+        return hashCode;
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return value.hashCode();
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        return Long.hashCode( ( (java.util.Date) value ).getTime() );
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        BigDecimal bigDecimal = (BigDecimal) value;
+        if ( bigDecimal.signum() == 0 ) {
+          return 0;
+        }
+        return bigDecimal.stripTrailingZeros().hashCode();
+      case ValueMetaInterface.TYPE_BINARY:
+        return Arrays.hashCode( (byte[]) value );
+      default:
+        return 1;
+    }
+  }
+}
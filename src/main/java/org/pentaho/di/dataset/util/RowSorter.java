@@ -0,0 +1,208 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.dataset.util;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorts rows on a number of fields.
+ * The values to sort on are extracted once per row instead of once per comparison.
+ * When the types of the sort fields allow it they are encoded in a key of bytes, see {@link RowKeyEncoder},
+ * otherwise they are converted to normal storage and compared with their value metadata.
+ * Large lists are sorted in parallel on the common fork/join pool.
+ * Rows which don't fit in memory are sorted by a {@link org.pentaho.di.dataset.spoon.xtpoint.RowCollection} with a memory budget,
+ * one block at a time with this sorter, after which the sorted blocks are merged.
+ */
+public class RowSorter {
+
+  /**
+   * Below this number of rows sorting in parallel costs more than it saves
+   */
+  public static final int PARALLEL_SORT_THRESHOLD = 8192;
+
+  private static class SortEntry {
+    private final Object sortKey;
+    private final Object[] row;
+
+    private SortEntry( Object sortKey, Object[] row ) {
+      this.sortKey = sortKey;
+      this.row = row;
+    }
+  }
+
+  private final RowMetaInterface rowMeta;
+  private final int[] sortIndexes;
+  private final RowMetaInterface keyRowMeta;
+  private final RowKeyEncoder keyEncoder;
+  private final Comparator<Object> sortKeyComparator;
+
+  /**
+   * @param rowMeta     The metadata of the rows to sort
+   * @param sortIndexes The indexes of the fields to sort on
+   */
+  public RowSorter( RowMetaInterface rowMeta, int[] sortIndexes ) {
+    this.rowMeta = rowMeta;
+    this.sortIndexes = sortIndexes;
+
+    keyRowMeta = new RowMeta();
+    for ( int sortIndex : sortIndexes ) {
+      ValueMetaInterface keyValueMeta = rowMeta.getValueMeta( sortIndex ).clone();
+      keyValueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      keyRowMeta.addValueMeta( keyValueMeta );
+    }
+
+    keyEncoder = RowKeyEncoder.isSupported( rowMeta, sortIndexes ) ? new RowKeyEncoder( rowMeta, sortIndexes ) : null;
+
+    sortKeyComparator = new Comparator<Object>() {
+      @Override public int compare( Object sortKey1, Object sortKey2 ) {
+        if ( keyEncoder != null ) {
+          return RowKeyEncoder.compare( (byte[]) sortKey1, (byte[]) sortKey2 );
+        }
+        try {
+          return keyRowMeta.compare( (Object[]) sortKey1, (Object[]) sortKey2 );
+        } catch ( KettleValueException e ) {
+          throw new RuntimeException( "Unable to compare 2 rows", e );
+        }
+      }
+    };
+  }
+
+  /**
+   * Create a sorter on the fields with the given names
+   *
+   * @param rowMeta    The metadata of the rows to sort
+   * @param sortFields The names of the fields to sort on
+   * @return The sorter
+   * @throws KettleException In case a sort field can't be found
+   */
+  public static RowSorter create( RowMetaInterface rowMeta, List<String> sortFields ) throws KettleException {
+    int[] sortIndexes = new int[ sortFields.size() ];
+    for ( int i = 0; i < sortIndexes.length; i++ ) {
+      sortIndexes[ i ] = rowMeta.indexOfValue( sortFields.get( i ) );
+      if ( sortIndexes[ i ] < 0 ) {
+        throw new KettleException( "Unable to find sort field '" + sortFields.get( i ) + "' in : " + Arrays.toString( rowMeta.getFieldNames() ) );
+      }
+    }
+    return new RowSorter( rowMeta, sortIndexes );
+  }
+
+  /**
+   * Sort the given rows in place.
+   *
+   * @param rows The rows to sort
+   * @throws KettleException In case there was an error converting or comparing values
+   */
+  public void sort( List<Object[]> rows ) throws KettleException {
+    SortEntry[] entries = new SortEntry[ rows.size() ];
+    for ( int i = 0; i < entries.length; i++ ) {
+      Object[] row = rows.get( i );
+      entries[ i ] = new SortEntry( getSortKey( row ), row );
+    }
+
+    Comparator<SortEntry> comparator = new Comparator<SortEntry>() {
+      @Override public int compare( SortEntry entry1, SortEntry entry2 ) {
+        return sortKeyComparator.compare( entry1.sortKey, entry2.sortKey );
+      }
+    };
+
+    try {
+      if ( entries.length >= PARALLEL_SORT_THRESHOLD ) {
+        Arrays.parallelSort( entries, comparator );
+      } else {
+        Arrays.sort( entries, comparator );
+      }
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Error sorting rows", e );
+    }
+
+    for ( int i = 0; i < entries.length; i++ ) {
+      rows.set( i, entries[ i ].row );
+    }
+  }
+
+  /**
+   * Extract the values to sort a row on, for example to keep them next to the row while merging sorted blocks of rows.
+   * Compare the keys with the comparator of {@link #getSortKeyComparator()}.
+   *
+   * @param row The row
+   * @return The sort key of the row
+   * @throws KettleException In case there was an error converting the values
+   */
+  public Object getSortKey( Object[] row ) throws KettleException {
+    if ( keyEncoder != null ) {
+      return keyEncoder.encode( row );
+    }
+    return getKey( row );
+  }
+
+  /**
+   * Get a comparator for the keys of {@link #getSortKey(Object[])}.
+   * It orders the keys exactly like sort() orders their rows.
+   * Errors comparing values are thrown as RuntimeException.
+   *
+   * @return The comparator
+   */
+  public Comparator<Object> getSortKeyComparator() {
+    return sortKeyComparator;
+  }
+
+  /**
+   * Get a comparator for single rows.
+   * It orders the rows exactly like sort() does but extracts the sort values of both rows on every comparison,
+   * use {@link #getSortKey(Object[])} when rows are compared more than once.
+   * Errors comparing values are thrown as RuntimeException.
+   *
+   * @return The comparator
+   */
+  public Comparator<Object[]> getRowComparator() {
+    return new Comparator<Object[]>() {
+      @Override public int compare( Object[] row1, Object[] row2 ) {
+        try {
+          if ( keyEncoder != null ) {
+            return RowKeyEncoder.compare( keyEncoder.encode( row1 ), keyEncoder.encode( row2 ) );
+          }
+          return rowMeta.compare( row1, row2, sortIndexes );
+        } catch ( KettleValueException e ) {
+          throw new RuntimeException( "Unable to compare 2 rows", e );
+        }
+      }
+    };
+  }
+
+  private Object[] getKey( Object[] row ) throws KettleException {
+    Object[] key = new Object[ sortIndexes.length ];
+    for ( int i = 0; i < sortIndexes.length; i++ ) {
+      key[ i ] = rowMeta.getValueMeta( sortIndexes[ i ] ).convertToNormalStorageType( row[ sortIndexes[ i ] ] );
+    }
+    return key;
+  }
+}
@@ -0,0 +1,316 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.dataset.util;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.dataset.DataSet;
+import org.pentaho.di.dataset.DataSetRowReader;
+import org.pentaho.di.dataset.TransUnitTest;
+import org.pentaho.di.dataset.TransUnitTestFieldMapping;
+import org.pentaho.di.dataset.TransUnitTestSetLocation;
+import org.pentaho.di.dataset.UnitTestResult;
+import org.pentaho.di.trans.Trans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Validates the rows of a step against a golden data set while the transformation is running.
+ * The golden rows are read from the data set as the step rows arrive so only a small window of rows is kept in memory.
+ * A step row matches a golden row when it arrives at most "window" rows before or after the golden row position.
+ * Rows falling out of the window without a match are reported as unexpected (step) or missing (golden).
+ * When the maximum number of errors is reached the transformation is stopped.
+ */
+public class StreamingGoldenValidator {
+
+  private static class PendingRow {
+    private Object[] row;
+    private long position;
+
+    private PendingRow( Object[] row, long position ) {
+      this.row = row;
+      this.position = position;
+    }
+  }
+
+  private final Trans trans;
+  private final TransUnitTest unitTest;
+  private final TransUnitTestSetLocation location;
+  private final int window;
+  private final int maxErrors;
+
+  private final RowMetaInterface goldenRowMeta;
+  private final int[] goldenIndices;
+  private final DataSetRowReader goldenRowReader;
+
+  private RowMetaInterface compareRowMeta;
+  private int[] stepFieldIndices;
+
+  private final List<PendingRow> goldenWindow;
+  private final List<PendingRow> resultWindow;
+  private final List<UnitTestResult> results;
+
+  private long nrResultRows;
+  private long nrGoldenRows;
+  private boolean goldenFinished;
+  private int nrErrors;
+  private boolean stopped;
+  private boolean closed;
+
+  /**
+   * Open the golden data set and prepare for validation
+   *
+   * @param trans         The transformation being tested
+   * @param unitTest      The unit test
+   * @param location      The golden data set location
+   * @param goldenDataSet The golden data set
+   * @param window        The number of positions a row can be away from its golden position
+   * @param maxErrors     The maximum number of errors before the transformation is stopped, 0 means no maximum
+   * @throws KettleException
+   */
+  public StreamingGoldenValidator( Trans trans, TransUnitTest unitTest, TransUnitTestSetLocation location,
+                                   DataSet goldenDataSet, int window, int maxErrors ) throws KettleException {
+    this.trans = trans;
+    this.unitTest = unitTest;
+    this.location = location;
+    this.window = Math.max( 0, window );
+    this.maxErrors = Math.max( 0, maxErrors );
+
+    goldenRowMeta = goldenDataSet.getMappedDataSetFieldsRowMeta( location );
+    List<TransUnitTestFieldMapping> fieldMappings = location.getFieldMappings();
+    goldenIndices = new int[ fieldMappings.size() ];
+    for ( int i = 0; i < fieldMappings.size(); i++ ) {
+      goldenIndices[ i ] = goldenRowMeta.indexOfValue( fieldMappings.get( i ).getDataSetFieldName() );
+      if ( goldenIndices[ i ] < 0 ) {
+        throw new KettleException( "Unable to find data set field '" + fieldMappings.get( i ).getDataSetFieldName() + "' in golden rows : " + Arrays.toString( goldenRowMeta.getFieldNames() ) );
+      }
+    }
+
+    goldenWindow = new ArrayList<>();
+    resultWindow = new ArrayList<>();
+    results = new ArrayList<>();
+
+    goldenRowReader = goldenDataSet.getRowReader( trans.getLogChannel(), location );
+  }
+
+  /**
+   * Validate the next row received by the golden step.
+   *
+   * @param rowMeta The row metadata of the step row
+   * @param row     The step row
+   * @throws KettleException In case there was a problem reading or comparing golden rows
+   */
+  public synchronized void validateRow( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    if ( stopped || closed ) {
+      return;
+    }
+    if ( compareRowMeta == null ) {
+      prepareStepFields( rowMeta );
+    }
+
+    try {
+      Object[] compareRow = new Object[ stepFieldIndices.length ];
+      for ( int i = 0; i < stepFieldIndices.length; i++ ) {
+        ValueMetaInterface stepValueMeta = rowMeta.getValueMeta( stepFieldIndices[ i ] );
+        compareRow[ i ] = stepValueMeta.convertToNormalStorageType( row[ stepFieldIndices[ i ] ] );
+      }
+      long position = nrResultRows++;
+
+      // Make sure we have all the golden rows in the window
+      //
+      readGoldenRows( position + window );
+
+      PendingRow golden = findMatch( goldenWindow, compareRow );
+      if ( golden != null ) {
+        goldenWindow.remove( golden );
+      } else {
+        resultWindow.add( new PendingRow( compareRow, position ) );
+      }
+
+      expireRows( position - window );
+    } catch ( KettleValueException e ) {
+      throw new KettleException( "Unable to compare step data against golden data set '" + location.getDataSetName() + "'", e );
+    }
+  }
+
+  /**
+   * Finish validation after the transformation is done.
+   * All the golden rows which were not received are reported as missing and the golden data set is closed.
+   *
+   * @return The number of errors found
+   * @throws KettleException
+   */
+  public synchronized int finish() throws KettleException {
+    try {
+      if ( !stopped && !closed ) {
+        readGoldenRows( Long.MAX_VALUE );
+        expireRows( Long.MAX_VALUE );
+      }
+      if ( stopped ) {
+        addResult( false, "Validation stopped after " + nrErrors + " errors, " + nrResultRows + " rows were received from the step" );
+      }
+    } catch ( KettleValueException e ) {
+      throw new KettleException( "Unable to compare step data against golden data set '" + location.getDataSetName() + "'", e );
+    } finally {
+      close();
+    }
+    return nrErrors;
+  }
+
+  /**
+   * Close the golden data set without reporting anything else.
+   *
+   * @throws KettleException
+   */
+  public synchronized void close() throws KettleException {
+    if ( !closed ) {
+      closed = true;
+      goldenRowReader.close();
+    }
+  }
+
+  private void prepareStepFields( RowMetaInterface rowMeta ) throws KettleException {
+    List<TransUnitTestFieldMapping> fieldMappings = location.getFieldMappings();
+    stepFieldIndices = new int[ fieldMappings.size() ];
+    compareRowMeta = new RowMeta();
+    for ( int i = 0; i < fieldMappings.size(); i++ ) {
+      TransUnitTestFieldMapping fieldMapping = fieldMappings.get( i );
+      stepFieldIndices[ i ] = rowMeta.indexOfValue( fieldMapping.getStepFieldName() );
+      if ( stepFieldIndices[ i ] < 0 ) {
+        throw new KettleException( "Unable to find step field '" + fieldMapping.getStepFieldName() + "' in step results : " + Arrays.toString( rowMeta.getFieldNames() ) );
+      }
+      ValueMetaInterface compareValueMeta = rowMeta.getValueMeta( stepFieldIndices[ i ] ).clone();
+      compareValueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+      compareRowMeta.addValueMeta( compareValueMeta );
+    }
+  }
+
+  /**
+   * Read golden rows up to and including the given position.
+   * A new golden row is first matched against the step rows waiting in the window.
+   */
+  private void readGoldenRows( long lastPosition ) throws KettleException {
+    while ( !goldenFinished && !stopped && nrGoldenRows <= lastPosition ) {
+      Object[] goldenRow = goldenRowReader.getRow();
+      if ( goldenRow == null ) {
+        goldenFinished = true;
+        break;
+      }
+      long position = nrGoldenRows++;
+
+      // Without step rows we don't know the step field types yet
+      //
+      if ( compareRowMeta == null ) {
+        addError( "Missing golden row number " + ( position + 1 ) + ", it was not received from the step : " + goldenRowMeta.getString( goldenRow ) );
+        continue;
+      }
+
+      Object[] compareRow = new Object[ goldenIndices.length ];
+      for ( int i = 0; i < goldenIndices.length; i++ ) {
+        ValueMetaInterface goldenValueMeta = goldenRowMeta.getValueMeta( goldenIndices[ i ] );
+        ValueMetaInterface compareValueMeta = compareRowMeta.getValueMeta( i );
+        Object goldenValue = goldenRow[ goldenIndices[ i ] ];
+        if ( goldenValueMeta.getType() == compareValueMeta.getType() ) {
+          compareRow[ i ] = goldenValue;
+        } else {
+          compareRow[ i ] = compareValueMeta.convertData( goldenValueMeta, goldenValue );
+        }
+      }
+
+      PendingRow result = findMatch( resultWindow, compareRow );
+      if ( result != null ) {
+        resultWindow.remove( result );
+      } else {
+        goldenWindow.add( new PendingRow( compareRow, position ) );
+      }
+    }
+  }
+
+  private PendingRow findMatch( List<PendingRow> pendingRows, Object[] compareRow ) throws KettleValueException {
+    for ( PendingRow pendingRow : pendingRows ) {
+      if ( compareRowMeta.compare( pendingRow.row, compareRow ) == 0 ) {
+        return pendingRow;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Report the rows with a position before the given one which didn't find a match.
+   */
+  private void expireRows( long firstPosition ) throws KettleValueException {
+    Iterator<PendingRow> goldenIterator = goldenWindow.iterator();
+    while ( goldenIterator.hasNext() && !stopped ) {
+      PendingRow golden = goldenIterator.next();
+      if ( golden.position < firstPosition ) {
+        goldenIterator.remove();
+        addError( "Missing golden row number " + ( golden.position + 1 ) + ", it was not received from the step : " + compareRowMeta.getString( golden.row ) );
+      }
+    }
+    Iterator<PendingRow> resultIterator = resultWindow.iterator();
+    while ( resultIterator.hasNext() && !stopped ) {
+      PendingRow result = resultIterator.next();
+      if ( result.position < firstPosition ) {
+        resultIterator.remove();
+        addError( "Unexpected row number " + ( result.position + 1 ) + " received from step, not found in golden data set : " + compareRowMeta.getString( result.row ) );
+      }
+    }
+  }
+
+  private void addError( String comment ) {
+    addResult( true, comment );
+    nrErrors++;
+
+    if ( maxErrors > 0 && nrErrors >= maxErrors && !stopped ) {
+      stopped = true;
+      LogChannelInterface log = trans.getLogChannel();
+      log.logError( "Golden data set '" + location.getDataSetName() + "' validation failed " + nrErrors + " times on step '" + location.getStepname() + "', stopping the transformation" );
+      trans.stopAll();
+    }
+  }
+
+  private void addResult( boolean error, String comment ) {
+    results.add( new UnitTestResult( trans.getName(), unitTest.getName(), location.getDataSetName(), location.getStepname(), error, comment ) );
+  }
+
+  /**
+   * @return The validation comments gathered so far
+   */
+  public synchronized List<UnitTestResult> getResults() {
+    return results;
+  }
+
+  /**
+   * @return true if the validation was stopped because the maximum number of errors was reached
+   */
+  public synchronized boolean isStopped() {
+    return stopped;
+  }
+}
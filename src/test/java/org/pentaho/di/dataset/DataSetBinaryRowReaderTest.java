@@ -0,0 +1,92 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class DataSetBinaryRowReaderTest extends TestCase {
+
+  protected RowMetaInterface rowMeta;
+  protected List<Object[]> rows;
+  protected File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "code" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "created" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "description" ) );
+
+    // More than one chunk, with a few nulls and a low cardinality code column
+    //
+    rows = new ArrayList<>();
+    for ( int i = 0; i < DataSetBinaryFormat.CHUNK_SIZE + 123; i++ ) {
+      rows.add( new Object[] {
+        "code-" + ( i % 5 ),
+        i % 17 == 0 ? null : Long.valueOf( 1000L - i * 3L ),
+        Double.valueOf( i / 4.0 ),
+        i % 11 == 0 ? null : new Date( 1500000000000L + i * 1000L ),
+        "description " + i,
+      } );
+    }
+
+    file = File.createTempFile( "dataset", DataSetBinaryGroup.FILE_EXTENSION );
+    file.deleteOnExit();
+    try ( DataSetBinaryRowWriter writer = new DataSetBinaryRowWriter( new FileOutputStream( file ), rowMeta, true ) ) {
+      for ( Object[] row : rows ) {
+        writer.putRow( row );
+      }
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testRoundTrip() throws Exception {
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    try ( DataSetRowReader reader = new DataSetBinaryRowReader( "test", fileObject, rowMeta, rowMeta.getFieldNames() ) ) {
+      for ( Object[] expected : rows ) {
+        Object[] actual = reader.getRow();
+        assertNotNull( actual );
+        assertEquals( 0, rowMeta.compare( expected, actual ) );
+      }
+      assertNull( reader.getRow() );
+    }
+  }
+
+  public void testProjectedColumns() throws Exception {
+    RowMetaInterface outputRowMeta = new RowMeta();
+    outputRowMeta.addValueMeta( new ValueMetaDate( "created" ) );
+    outputRowMeta.addValueMeta( new ValueMetaString( "code" ) );
+
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    try ( DataSetRowReader reader = new DataSetBinaryRowReader( "test", fileObject, outputRowMeta, new String[] { "CREATED", "code" } ) ) {
+      for ( Object[] expected : rows ) {
+        Object[] actual = reader.getRow();
+        assertNotNull( actual );
+        assertEquals( expected[ 3 ], actual[ 0 ] );
+        assertEquals( expected[ 0 ], actual[ 1 ] );
+      }
+      assertNull( reader.getRow() );
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class DataSetCsvConverterTest extends TestCase {
+
+  protected RowMetaInterface setRowMeta;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    setRowMeta = new RowMeta();
+    setRowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    ValueMetaInterface integerMeta = new ValueMetaInteger( "integer" );
+    integerMeta.setConversionMask( DataSetCsvConverter.INTEGER_MASK );
+    setRowMeta.addValueMeta( integerMeta );
+    ValueMetaInterface numberMeta = new ValueMetaNumber( "number" );
+    numberMeta.setConversionMask( DataSetCsvConverter.NUMBER_MASK );
+    numberMeta.setDecimalSymbol( "." );
+    setRowMeta.addValueMeta( numberMeta );
+    ValueMetaInterface dateMeta = new ValueMetaDate( "date" );
+    dateMeta.setConversionMask( DataSetCsvConverter.DATE_MASK );
+    setRowMeta.addValueMeta( dateMeta );
+  }
+
+  public void testFastConversionMatchesKettleConversion() throws Exception {
+    DataSetCsvConverter converter = new DataSetCsvConverter( setRowMeta, new int[] { 0, 1, 2, 3 } );
+
+    String[][] values = new String[][] {
+      { "abc", "123", "12.5", "20180102-030405.678" },
+      { " padded ", "-42", "-0.5", "19991231-235959.999" },
+      { "", "", "", "" },
+      { null, "0", "7", "20000229-000000.000" },
+    };
+
+    for ( String[] row : values ) {
+      for ( int i = 0; i < row.length; i++ ) {
+        ValueMetaInterface valueMeta = setRowMeta.getValueMeta( i );
+        ValueMetaString stringMeta = new ValueMetaString( "constant" );
+        stringMeta.setConversionMetadata( valueMeta );
+        Object expected = valueMeta.convertData( stringMeta, row[ i ] );
+        Object actual = converter.convert( i, row[ i ] );
+        assertEquals( "Conversion of '" + row[ i ] + "' for field " + valueMeta.getName(), expected, actual );
+      }
+    }
+  }
+
+  public void testProjectedColumns() throws Exception {
+    DataSetCsvConverter converter = new DataSetCsvConverter( setRowMeta, new int[] { 1 } );
+    assertEquals( Long.valueOf( 987654321L ), converter.convert( 0, "987654321" ) );
+  }
+}
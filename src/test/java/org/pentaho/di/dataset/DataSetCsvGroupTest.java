@@ -0,0 +1,94 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.dataset.util.DataSetConst;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DataSetCsvGroupTest extends TestCase {
+
+  private static final int NR_ROWS = 1000;
+
+  protected File folder;
+  protected DataSetGroup dataSetGroup;
+  protected List<DataSetField> fields;
+  protected List<Object[]> rows;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    folder = Files.createTempDirectory( "csv-data-sets-" ).toFile();
+    dataSetGroup = new DataSetGroup( DataSetGroupType.CSV, "csv", "CSV files", null, null );
+    dataSetGroup.setFolderName( folder.getAbsolutePath() );
+
+    fields = new ArrayList<>();
+    fields.add( new DataSetField( "id", "id", ValueMetaInterface.TYPE_INTEGER, 9, 0, null, null ) );
+    fields.add( new DataSetField( "name", "name", ValueMetaInterface.TYPE_STRING, 30, 0, null, null ) );
+
+    rows = new ArrayList<>();
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      rows.add( new Object[] { Long.valueOf( i ), "repetitive name, row " + i } );
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    DataSetRowCache.clear();
+    File[] files = folder.listFiles();
+    if ( files != null ) {
+      for ( File file : files ) {
+        file.delete();
+      }
+    }
+    folder.delete();
+  }
+
+  public void testCompressedRoundTrip() throws Exception {
+    LogChannelInterface log = new LogChannel( "DataSetCsvGroupTest" );
+
+    for ( DataSetCompression compression : DataSetCompression.values() ) {
+      dataSetGroup.setCompression( compression );
+      DataSet dataSet = DataSetConst.writeDataSet( "set", null, dataSetGroup, "compressed", fields, rows );
+
+      File file = new File( DataSetCsvGroup.getDataSetFilename( dataSetGroup, "compressed" ) );
+      assertTrue( file.getName(), file.getName().endsWith( ".csv" + compression.getExtension() ) );
+      assertTrue( file.exists() );
+
+      // Only the latest file is kept
+      //
+      assertEquals( 1, folder.listFiles().length );
+
+      List<Object[]> read = dataSetGroup.getAllRows( log, dataSet );
+      assertEquals( compression.name(), NR_ROWS, read.size() );
+      for ( int i = 0; i < NR_ROWS; i++ ) {
+        assertEquals( rows.get( i )[ 0 ], read.get( i )[ 0 ] );
+        assertEquals( rows.get( i )[ 1 ], read.get( i )[ 1 ] );
+      }
+    }
+  }
+
+  public void testCompressionDetectedFromFile() throws Exception {
+    LogChannelInterface log = new LogChannel( "DataSetCsvGroupTest" );
+
+    dataSetGroup.setCompression( DataSetCompression.GZip );
+    DataSet dataSet = DataSetConst.writeDataSet( "set", null, dataSetGroup, "detected", fields, rows );
+
+    // The group no longer says the files are compressed but the existing file is still found
+    //
+    dataSetGroup.setCompression( DataSetCompression.None );
+    assertTrue( DataSetCsvGroup.getDataSetFile( dataSetGroup, "detected" ).getName().getBaseName().endsWith( ".csv.gz" ) );
+    assertEquals( NR_ROWS, dataSetGroup.getAllRows( log, dataSet ).size() );
+
+    assertEquals( DataSetCompression.GZip, DataSetCompression.fromFilename( "set.CSV.GZ" ) );
+    assertEquals( DataSetCompression.Zip, DataSetCompression.fromFilename( "set.csv.zip" ) );
+    assertEquals( DataSetCompression.None, DataSetCompression.fromFilename( "set.csv" ) );
+  }
+}
@@ -0,0 +1,104 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+public class DataSetCsvParallelRowReaderTest extends TestCase {
+
+  private static final int NR_ROWS = 20000;
+
+  protected RowMetaInterface setRowMeta;
+  protected File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    setRowMeta = new RowMeta();
+    setRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    setRowMeta.addValueMeta( new ValueMetaString( "text" ) );
+    setRowMeta.addValueMeta( new ValueMetaString( "other" ) );
+    DataSetCsvGroup.setValueFormats( setRowMeta );
+
+    // Quoted line feeds, commas and quotes make sure the chunk boundaries are only put between records
+    //
+    file = File.createTempFile( "parallel-csv-", ".csv" );
+    try ( Writer writer = new FileWriter( file );
+          CSVPrinter printer = new CSVPrinter( writer, CSVFormat.DEFAULT.withHeader( "id", "text", "other" ) ) ) {
+      for ( int i = 0; i < NR_ROWS; i++ ) {
+        String text;
+        switch ( i % 4 ) {
+          case 0:
+            text = "line " + i + "\nwith a line feed";
+            break;
+          case 1:
+            text = "quote \"" + i + "\",\n\"";
+            break;
+          case 2:
+            text = "";
+            break;
+          default:
+            text = "plain" + i;
+            break;
+        }
+        printer.printRecord( i, text, "other" + ( i % 7 ) );
+      }
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+  public void testParallelMatchesSequential() throws Exception {
+    int[][] projections = new int[][] { { 0, 1, 2 }, { 2, 0 }, { 1 } };
+    int[] chunkSizes = new int[] { 1, 100, 4096, Integer.MAX_VALUE / 2 };
+
+    for ( int[] fieldIndexes : projections ) {
+      for ( int chunkSize : chunkSizes ) {
+        try ( DataSetRowReader sequential = new DataSetCsvRowReader( "sequential", KettleVFS.getFileObject( file.getAbsolutePath() ), setRowMeta, fieldIndexes );
+              DataSetRowReader parallel = new DataSetCsvParallelRowReader( "parallel", file, setRowMeta, fieldIndexes, chunkSize ) ) {
+          int nrRows = 0;
+          Object[] expected;
+          while ( ( expected = sequential.getRow() ) != null ) {
+            Object[] row = parallel.getRow();
+            assertNotNull( "Missing row " + nrRows + " for chunk size " + chunkSize, row );
+            for ( int i = 0; i < fieldIndexes.length; i++ ) {
+              assertEquals( "Row " + nrRows + " for chunk size " + chunkSize, expected[ i ], row[ i ] );
+            }
+            nrRows++;
+          }
+          assertNull( parallel.getRow() );
+          assertEquals( NR_ROWS, nrRows );
+        }
+      }
+    }
+  }
+
+  public void testCloseBeforeEnd() throws Exception {
+    DataSetRowReader parallel = new DataSetCsvParallelRowReader( "parallel", file, setRowMeta, new int[] { 0 }, 100 );
+    assertEquals( Long.valueOf( 0L ), parallel.getRow()[ 0 ] );
+    parallel.close();
+  }
+
+  public void testLocalFile() throws Exception {
+    assertEquals( file.getAbsoluteFile(), DataSetCsvParallelRowReader.getLocalFile( KettleVFS.getFileObject( file.getAbsolutePath() ) ) );
+    assertNull( DataSetCsvParallelRowReader.getLocalFile( KettleVFS.getFileObject( "ram:///parallel.csv" ) ) );
+
+    // Too small to bother
+    //
+    assertFalse( DataSetCsvParallelRowReader.isApplicable( KettleVFS.getFileObject( file.getAbsolutePath() ) ) );
+  }
+}
@@ -0,0 +1,114 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class DataSetCsvRowWriterTest extends TestCase {
+
+  protected RowMetaInterface setRowMeta;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    setRowMeta = new RowMeta();
+    setRowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    setRowMeta.addValueMeta( new ValueMetaInteger( "integer" ) );
+    setRowMeta.addValueMeta( new ValueMetaNumber( "number" ) );
+    setRowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    setRowMeta.addValueMeta( new ValueMetaBigNumber( "bignumber" ) );
+    setRowMeta.addValueMeta( new ValueMetaBoolean( "boolean" ) );
+    DataSetCsvGroup.setValueFormats( setRowMeta );
+  }
+
+  public void testSameAsCsvPrinter() throws Exception {
+    List<Object[]> rows = new ArrayList<>();
+    rows.add( new Object[] { "plain", 1L, 1.5, new Date( 0L ), new BigDecimal( "12.345" ), true } );
+    rows.add( new Object[] { "comma, \"quote\"", -42L, -0.25, new Date( 1234567890123L ), new BigDecimal( "-1" ), false } );
+    rows.add( new Object[] { "", Long.MIN_VALUE, 123456789.125, new Date( -1000L ), null, null } );
+    rows.add( new Object[] { null, Long.MAX_VALUE, 0.0, null, BigDecimal.ZERO, true } );
+    rows.add( new Object[] { "#comment", 0L, null, new Date( 253402300799999L ), null, false } );
+    rows.add( new Object[] { " leading and trailing ", null, 1e20, new Date( 1500000000000L ), new BigDecimal( "1e-5" ), true } );
+    rows.add( new Object[] { "multi\r\nline\n", 7L, Double.NaN, new Date( 951782400000L ), null, null } );
+    rows.add( new Object[] { "ünïcödé €", 8L, -1e-7, new Date( 1L ), null, null } );
+
+    List<CSVRecord> expected = parse( writeWithPrinter( rows ) );
+    List<CSVRecord> actual = parse( writeWithWriter( rows ) );
+
+    assertEquals( expected.size(), actual.size() );
+    for ( int r = 0; r < expected.size(); r++ ) {
+      assertEquals( expected.get( r ).size(), actual.get( r ).size() );
+      for ( int i = 0; i < expected.get( r ).size(); i++ ) {
+        assertEquals( "row " + r + " column " + i, expected.get( r ).get( i ), actual.get( r ).get( i ) );
+      }
+    }
+  }
+
+  public void testSmallBuffer() throws Exception {
+    List<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < 1000; i++ ) {
+      rows.add( new Object[] { "row " + i + " with some text", (long) i, i / 3.0, new Date( i * 1000L ), null, i % 2 == 0 } );
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try ( DataSetCsvRowWriter writer = new DataSetCsvRowWriter( Channels.newChannel( bytes ), setRowMeta, 64 ) ) {
+      for ( Object[] row : rows ) {
+        writer.writeRow( row );
+      }
+      assertEquals( rows.size(), writer.getRowsWritten() );
+    }
+    assertEquals( writeWithPrinter( rows ), bytes.toString() );
+  }
+
+  private String writeWithPrinter( List<Object[]> rows ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try ( Writer writer = new OutputStreamWriter( bytes );
+          CSVPrinter printer = new CSVPrinter( writer, DataSetCsvGroup.getCsvFormat( setRowMeta ) ) ) {
+      for ( Object[] row : rows ) {
+        List<String> strings = new ArrayList<>();
+        for ( int i = 0; i < setRowMeta.size(); i++ ) {
+          strings.add( setRowMeta.getValueMeta( i ).getString( row[ i ] ) );
+        }
+        printer.printRecord( strings );
+      }
+    }
+    return bytes.toString();
+  }
+
+  private String writeWithWriter( List<Object[]> rows ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try ( DataSetCsvRowWriter writer = new DataSetCsvRowWriter( Channels.newChannel( bytes ), setRowMeta ) ) {
+      for ( Object[] row : rows ) {
+        writer.writeRow( row );
+      }
+    }
+    return bytes.toString();
+  }
+
+  private List<CSVRecord> parse( String csv ) throws Exception {
+    try ( CSVParser parser = new CSVParser( new StringReader( csv ), CSVFormat.DEFAULT ) ) {
+      return parser.getRecords();
+    }
+  }
+}
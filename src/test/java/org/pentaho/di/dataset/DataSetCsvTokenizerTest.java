@@ -0,0 +1,101 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DataSetCsvTokenizerTest extends TestCase {
+
+  private static final int WIDE_COLUMNS = 80;
+  private static final int WIDE_ROWS = 2000;
+
+  public void testQuotedValues() throws Exception {
+    String csv = "a,b,c\r\n"
+      + "1,\"two, with comma\",3\r\n"
+      + "\r\n"
+      + "\"x\"\"y\",,\"multi\nline\"\n"
+      + "last,\"\",end";
+
+    DataSetCsvTokenizer tokenizer = new DataSetCsvTokenizer( new StringReader( csv ), new int[] { 0, 1, 2 } );
+    String[] values = new String[ tokenizer.getNrValues() ];
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "a", values[ 0 ] );
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "1", values[ 0 ] );
+    assertEquals( "two, with comma", values[ 1 ] );
+    assertEquals( "3", values[ 2 ] );
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "x\"y", values[ 0 ] );
+    assertEquals( "", values[ 1 ] );
+    assertEquals( "multi\nline", values[ 2 ] );
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "last", values[ 0 ] );
+    assertEquals( "", values[ 1 ] );
+    assertEquals( "end", values[ 2 ] );
+
+    assertFalse( tokenizer.nextRecord( values ) );
+    tokenizer.close();
+  }
+
+  public void testProjection() throws Exception {
+    String csv = "1,\"skip, me\",3,4\n5,6,\"7\",8\n";
+
+    DataSetCsvTokenizer tokenizer = new DataSetCsvTokenizer( new StringReader( csv ), new int[] { 2, 0 } );
+    String[] values = new String[ tokenizer.getNrValues() ];
+    assertEquals( 3, values.length );
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "1", values[ 0 ] );
+    assertNull( values[ 1 ] );
+    assertEquals( "3", values[ 2 ] );
+
+    assertTrue( tokenizer.nextRecord( values ) );
+    assertEquals( "5", values[ 0 ] );
+    assertEquals( "7", values[ 2 ] );
+
+    assertFalse( tokenizer.nextRecord( values ) );
+  }
+
+  private String createWideCsv() throws Exception {
+    StringWriter writer = new StringWriter();
+    try ( CSVPrinter printer = new CSVPrinter( writer, CSVFormat.DEFAULT ) ) {
+      List<String> record = new ArrayList<>();
+      for ( int row = 0; row < WIDE_ROWS; row++ ) {
+        record.clear();
+        for ( int column = 0; column < WIDE_COLUMNS; column++ ) {
+          record.add( column % 10 == 3 ? "value, " + row + " of column " + column : "v" + row + "-" + column );
+        }
+        printer.printRecord( record );
+      }
+    }
+    return writer.toString();
+  }
+
+  public void testSameValuesAsCommonsCsv() throws Exception {
+    String csv = createWideCsv();
+    int[] columns = new int[] { 3, 40, 79 };
+
+    try ( CSVParser parser = new CSVParser( new StringReader( csv ), CSVFormat.DEFAULT );
+          DataSetCsvTokenizer tokenizer = new DataSetCsvTokenizer( new StringReader( csv ), columns ) ) {
+      String[] values = new String[ tokenizer.getNrValues() ];
+      for ( CSVRecord record : parser ) {
+        assertTrue( tokenizer.nextRecord( values ) );
+        for ( int column : columns ) {
+          assertEquals( record.get( column ), values[ column ] );
+        }
+      }
+      assertFalse( tokenizer.nextRecord( values ) );
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.dataset.util.DataSetConst;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class DataSetDatabaseGroupTest extends TestCase {
+
+  private static final int NR_DATA_SETS = 6;
+  private static final int NR_ROWS = 500;
+  private static final int NR_READS_PER_SET = 5;
+
+  protected String databaseFilename;
+  protected DataSetGroup dataSetGroup;
+  protected List<DataSet> dataSets;
+  protected TransUnitTestSetLocation location;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    databaseFilename = "/tmp/datasets-concurrent-" + System.currentTimeMillis();
+    DatabaseMeta databaseMeta = new DatabaseMeta( "concurrent", "H2", "JDBC", null, databaseFilename, null, null, null );
+    dataSetGroup = new DataSetGroup( DataSetGroupType.Database, "concurrent", "Concurrent reads", databaseMeta, null );
+
+    dataSets = new ArrayList<>();
+    for ( int set = 0; set < NR_DATA_SETS; set++ ) {
+      List<DataSetField> fields = new ArrayList<>();
+      fields.add( new DataSetField( "id", "id", ValueMetaInterface.TYPE_INTEGER, 9, 0, null, null ) );
+      fields.add( new DataSetField( "name", "name", ValueMetaInterface.TYPE_STRING, 30, 0, null, null ) );
+
+      List<Object[]> rows = new ArrayList<>();
+      for ( int i = 0; i < NR_ROWS; i++ ) {
+        rows.add( new Object[] { Long.valueOf( NR_ROWS - i ), "set" + set + "-row" + ( NR_ROWS - i ) } );
+      }
+      dataSets.add( DataSetConst.writeDataSet( "set" + set, null, dataSetGroup, "set_table_" + set, fields, rows ) );
+    }
+
+    location = new TransUnitTestSetLocation( "step", null, Arrays.asList(
+      new TransUnitTestFieldMapping( "id", "id" ),
+      new TransUnitTestFieldMapping( "name", "name" ) ),
+      Arrays.asList( "id" ) );
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    DataSetDatabasePool.closeAll();
+    new File( databaseFilename + ".h2.db" ).delete();
+    new File( databaseFilename + ".mv.db" ).delete();
+    new File( databaseFilename + ".trace.db" ).delete();
+  }
+
+  public void testConcurrentReads() throws Exception {
+    final LogChannelInterface log = new LogChannel( "DataSetDatabaseGroupTest" );
+    final CountDownLatch start = new CountDownLatch( 1 );
+
+    ExecutorService executor = Executors.newFixedThreadPool( NR_DATA_SETS );
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for ( int set = 0; set < NR_DATA_SETS; set++ ) {
+        final int setNr = set;
+        final DataSet dataSet = dataSets.get( set );
+        futures.add( executor.submit( new Callable<Void>() {
+          @Override public Void call() throws Exception {
+            // Make all threads hit the group at the same time
+            //
+            start.await();
+            for ( int read = 0; read < NR_READS_PER_SET; read++ ) {
+              List<Object[]> rows = dataSetGroup.getAllRows( log, dataSet, location );
+              assertEquals( NR_ROWS, rows.size() );
+              for ( int i = 0; i < NR_ROWS; i++ ) {
+                Object[] row = rows.get( i );
+                assertEquals( Long.valueOf( i + 1 ), row[ 0 ] );
+                assertEquals( "set" + setNr + "-row" + ( i + 1 ), row[ 1 ] );
+              }
+            }
+            return null;
+          }
+        } ) );
+      }
+      start.countDown();
+
+      for ( Future<Void> future : futures ) {
+        future.get( 60, TimeUnit.SECONDS );
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testConversionPlan() throws Exception {
+    final LogChannelInterface log = new LogChannel( "DataSetDatabaseGroupTest" );
+
+    // The table has an integer column, pretend the data set now specifies a String
+    //
+    DataSet dataSet = dataSets.get( 0 );
+    dataSet.getFields().get( 0 ).setType( ValueMetaInterface.TYPE_STRING );
+
+    // Both the mapped and the unmapped reads need to convert
+    //
+    List<Object[]> rows = dataSetGroup.getAllRows( log, dataSet, location );
+    assertEquals( NR_ROWS, rows.size() );
+    assertEquals( "1", ( (String) rows.get( 0 )[ 0 ] ).trim() );
+    assertEquals( "set0-row1", rows.get( 0 )[ 1 ] );
+
+    rows = dataSetGroup.getAllRows( log, dataSet );
+    assertEquals( NR_ROWS, rows.size() );
+    for ( Object[] row : rows ) {
+      assertTrue( row[ 0 ] instanceof String );
+      assertTrue( row[ 1 ] instanceof String );
+    }
+  }
+
+  public void testReleasedDatabasesAreAutoCommit() throws Exception {
+    final LogChannelInterface log = new LogChannel( "DataSetDatabaseGroupTest" );
+    DataSetDatabasePool pool = DataSetDatabasePool.getPool( dataSetGroup );
+
+    // setUp() wrote the data sets, the reader turns auto-commit off as well
+    //
+    assertBorrowedIsAutoCommit( pool );
+    dataSetGroup.getAllRows( log, dataSets.get( 0 ), location );
+    assertBorrowedIsAutoCommit( pool );
+  }
+
+  private void assertBorrowedIsAutoCommit( DataSetDatabasePool pool ) throws Exception {
+    Database database = pool.borrowDatabase();
+    try {
+      assertTrue( database.getConnection().getAutoCommit() );
+    } finally {
+      pool.releaseDatabase( database, true );
+    }
+  }
+}
@@ -31,6 +31,10 @@ public class DataSetGroupTest extends TestCase {
 
   public void testSerialisation() throws Exception {
     DataSetGroup group = new DataSetGroup( TYPE, NAME, DESC, databaseMeta, SCHEMA );
+    group.setBatchSize( 500 );
+    group.setCommitSize( 20000 );
+    group.setFetchSize( 250 );
+    group.setCompression( DataSetCompression.GZip );
     MetaStoreFactory<DataSetGroup> groupFactory = new MetaStoreFactory<DataSetGroup>( DataSetGroup.class, metaStore, NAMESPACE );
 
     // save the group
@@ -51,6 +55,10 @@ public class DataSetGroupTest extends TestCase {
     assertNotNull( verify.getDatabaseMeta() );
     assertEquals( group.getDatabaseMeta(), verify.getDatabaseMeta() );
     assertEquals( group.getSchemaName(), verify.getSchemaName() );
+    assertEquals( group.getBatchSize(), verify.getBatchSize() );
+    assertEquals( group.getCommitSize(), verify.getCommitSize() );
+    assertEquals( group.getFetchSize(), verify.getFetchSize() );
+    assertEquals( group.getCompression(), verify.getCompression() );
 
   }
 }
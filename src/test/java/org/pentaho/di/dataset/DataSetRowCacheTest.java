@@ -0,0 +1,136 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.dataset.util.DataSetConst;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DataSetRowCacheTest extends TestCase {
+
+  private static final int NR_ROWS = 100;
+
+  protected File folder;
+  protected DataSetGroup dataSetGroup;
+  protected List<DataSetField> fields;
+  protected DataSet dataSet;
+  protected TransUnitTestSetLocation location;
+  protected LogChannelInterface log;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+    log = new LogChannel( "DataSetRowCacheTest" );
+
+    folder = Files.createTempDirectory( "datasets-cache" ).toFile();
+    dataSetGroup = new DataSetGroup( DataSetGroupType.CSV, "cache", "Cached reads", null, null );
+    dataSetGroup.setFolderName( folder.getAbsolutePath() );
+
+    fields = new ArrayList<>();
+    fields.add( new DataSetField( "id", "id", ValueMetaInterface.TYPE_INTEGER, 9, 0, null, null ) );
+    fields.add( new DataSetField( "name", "name", ValueMetaInterface.TYPE_STRING, 30, 0, null, null ) );
+    dataSet = DataSetConst.writeDataSet( "set", null, dataSetGroup, "cached", fields, createRows( "row" ) );
+
+    location = new TransUnitTestSetLocation( "step", "set", Arrays.asList(
+      new TransUnitTestFieldMapping( "id", "id" ),
+      new TransUnitTestFieldMapping( "name", "name" ) ),
+      Arrays.asList( "id" ) );
+
+    DataSetRowCache.clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    DataSetRowCache.clear();
+    DataSetRowCache.setMaxBytes( DataSetRowCache.DEFAULT_CACHE_SIZE_MB * 1024L * 1024L );
+    for ( File file : folder.listFiles() ) {
+      file.delete();
+    }
+    folder.delete();
+  }
+
+  private List<Object[]> createRows( String prefix ) {
+    List<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      rows.add( new Object[] { Long.valueOf( i ), prefix + i } );
+    }
+    return rows;
+  }
+
+  public void testHitsAndMisses() throws Exception {
+    long misses = DataSetRowCache.getMisses();
+    long hits = DataSetRowCache.getHits();
+
+    // Streaming the rows doesn't cache them so it's not a miss either
+    //
+    try ( DataSetRowReader reader = dataSet.getRowReader( log, location ) ) {
+      assertEquals( "row0", reader.getRow()[ 1 ] );
+    }
+    assertEquals( misses, DataSetRowCache.getMisses() );
+
+    List<Object[]> rows = dataSet.getAllRows( log, location );
+    assertEquals( misses + 1, DataSetRowCache.getMisses() );
+    assertEquals( NR_ROWS, rows.size() );
+
+    // The caller owns the rows it gets, changing them doesn't change the cache
+    //
+    rows.get( 0 )[ 1 ] = "changed";
+    rows.clear();
+
+    rows = dataSet.getAllRows( log, location );
+    assertEquals( hits + 1, DataSetRowCache.getHits() );
+    assertEquals( NR_ROWS, rows.size() );
+    assertEquals( "row0", rows.get( 0 )[ 1 ] );
+    assertTrue( DataSetRowCache.getBytes() > 0 );
+
+    // The row reader hands out the cached rows as well
+    //
+    try ( DataSetRowReader reader = dataSet.getRowReader( log, location ) ) {
+      assertEquals( hits + 2, DataSetRowCache.getHits() );
+      assertEquals( "row0", reader.getRow()[ 1 ] );
+    }
+  }
+
+  public void testWriteInvalidates() throws Exception {
+    dataSet.getAllRows( log, location );
+
+    DataSetConst.writeDataSet( "set", null, dataSetGroup, "cached", fields, createRows( "new" ) );
+
+    List<Object[]> rows = dataSet.getAllRows( log, location );
+    assertEquals( "new0", rows.get( 0 )[ 1 ] );
+  }
+
+  public void testFileChangeInvalidates() throws Exception {
+    dataSet.getAllRows( log, location );
+
+    // Change the file behind our back
+    //
+    try ( FileWriter writer = new FileWriter( DataSetCsvGroup.getDataSetFilename( dataSetGroup, "cached" ) ) ) {
+      writer.write( "id,name\n" );
+      writer.write( "1,other\n" );
+    }
+
+    List<Object[]> rows = dataSet.getAllRows( log, location );
+    assertEquals( 1, rows.size() );
+    assertEquals( "other", rows.get( 0 )[ 1 ] );
+  }
+
+  public void testMemoryBudget() throws Exception {
+    DataSetRowCache.setMaxBytes( 1024 );
+    long hits = DataSetRowCache.getHits();
+
+    dataSet.getAllRows( log, location );
+    dataSet.getAllRows( log, location );
+
+    assertEquals( hits, DataSetRowCache.getHits() );
+    assertEquals( 0, DataSetRowCache.getBytes() );
+  }
+}
@@ -47,6 +47,7 @@ public class DataSetTest extends TestCase {
       fields.add( new DataSetField( "field" + i, "column" + i, ValueMetaInterface.TYPE_STRING, 50, 0, "comment" + i, null ) );
     }
     dataSet = new DataSet( NAME, DESC, dataSetGroup, TABLE, fields );
+    dataSet.setSortFields( new ArrayList<>( Arrays.asList( "field1", "field0" ) ) );
   }
 
   @Test
@@ -103,5 +104,15 @@ public class DataSetTest extends TestCase {
       DataSetField verifyField = verify.getFields().get( i );
       assertEquals( referenceField, verifyField );
     }
+    assertEquals( dataSet.getSortFields(), verify.getSortFields() );
+  }
+
+  @Test
+  public void testIsSortedOn() {
+    assertTrue( dataSet.isSortedOn( Arrays.asList( "field1" ) ) );
+    assertTrue( dataSet.isSortedOn( Arrays.asList( "FIELD1", "field0" ) ) );
+    assertFalse( dataSet.isSortedOn( Arrays.asList( "field0" ) ) );
+    assertFalse( dataSet.isSortedOn( Arrays.asList( "field1", "field0", "field2" ) ) );
+    assertFalse( dataSet.isSortedOn( new ArrayList<String>() ) );
   }
 }
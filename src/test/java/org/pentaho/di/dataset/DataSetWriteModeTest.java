@@ -0,0 +1,173 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DataSetWriteModeTest extends TestCase {
+
+  protected File folder;
+  protected String databaseFilename;
+  protected List<DataSetGroup> groups;
+  protected List<DataSetField> fields;
+  protected LogChannelInterface log;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+    log = new LogChannel( "DataSetWriteModeTest" );
+
+    folder = Files.createTempDirectory( "write-mode-data-sets-" ).toFile();
+    databaseFilename = folder.getAbsolutePath() + File.separator + "datasets";
+
+    groups = new ArrayList<>();
+    for ( DataSetCompression compression : new DataSetCompression[] { DataSetCompression.None, DataSetCompression.GZip, DataSetCompression.Zip } ) {
+      DataSetGroup csvGroup = new DataSetGroup( DataSetGroupType.CSV, "csv-" + compression.name(), null, null, null );
+      csvGroup.setFolderName( folder.getAbsolutePath() );
+      csvGroup.setCompression( compression );
+      groups.add( csvGroup );
+    }
+    DataSetGroup binaryGroup = new DataSetGroup( DataSetGroupType.Binary, "binary", null, null, null );
+    binaryGroup.setFolderName( folder.getAbsolutePath() );
+    groups.add( binaryGroup );
+    DatabaseMeta databaseMeta = new DatabaseMeta( "write-modes", "H2", "JDBC", null, databaseFilename, null, null, null );
+    groups.add( new DataSetGroup( DataSetGroupType.Database, "database", null, databaseMeta, null ) );
+
+    fields = new ArrayList<>();
+    fields.add( new DataSetField( "id", "id", ValueMetaInterface.TYPE_INTEGER, 9, 0, null, null ) );
+    fields.add( new DataSetField( "name", "name", ValueMetaInterface.TYPE_STRING, 30, 0, null, null ) );
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    DataSetDatabasePool.closeAll();
+    DataSetRowCache.clear();
+    File[] files = folder.listFiles();
+    if ( files != null ) {
+      for ( File file : files ) {
+        file.delete();
+      }
+    }
+    folder.delete();
+  }
+
+  public void testAppend() throws Exception {
+    for ( DataSetGroup group : groups ) {
+      DataSet dataSet = new DataSet( "append", null, group, "append_" + group.getName().replace( '-', '_' ), fields );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 1, 2, 3 ) );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 4, 5 ), DataSetWriteMode.Append, null );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 6 ), DataSetWriteMode.Append, null );
+
+      // Files keep the rows in the order they were written, tables don't promise any order
+      //
+      List<Long> ids = readIds( dataSet );
+      if ( group.getType() == DataSetGroupType.Database ) {
+        Collections.sort( ids );
+      }
+      assertEquals( group.getName(), Arrays.asList( 1L, 2L, 3L, 4L, 5L, 6L ), ids );
+    }
+  }
+
+  public void testUpsert() throws Exception {
+    for ( DataSetGroup group : groups ) {
+      DataSet dataSet = new DataSet( "upsert", null, group, "upsert_" + group.getName().replace( '-', '_' ), fields );
+      List<Object[]> stored = rows( 1, 2, 3 );
+      stored.add( new Object[] { null, "stored null" } );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), stored );
+
+      // Null keys never match, not the stored row and not each other
+      //
+      List<Object[]> changes = rows( 5, 2 );
+      changes.get( 1 )[ 1 ] = "changed";
+      changes.add( new Object[] { null, "new null" } );
+      changes.add( new Object[] { null, "new null" } );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), changes, DataSetWriteMode.Upsert, Arrays.asList( "id" ) );
+
+      List<Object[]> rows = dataSet.getAllRows( log );
+      List<Long> ids = new ArrayList<>();
+      List<String> nullKeyNames = new ArrayList<>();
+      for ( Object[] row : rows ) {
+        if ( row[ 0 ] == null ) {
+          nullKeyNames.add( (String) row[ 1 ] );
+        } else {
+          ids.add( (Long) row[ 0 ] );
+          assertEquals( group.getName(), Long.valueOf( 2L ).equals( row[ 0 ] ) ? "changed" : "name" + row[ 0 ], row[ 1 ] );
+        }
+      }
+      Collections.sort( ids );
+      Collections.sort( nullKeyNames );
+      assertEquals( group.getName(), Arrays.asList( 1L, 2L, 3L, 5L ), ids );
+      assertEquals( group.getName(), Arrays.asList( "new null", "new null", "stored null" ), nullKeyNames );
+    }
+  }
+
+  public void testSortedMerge() throws Exception {
+    for ( DataSetGroup group : groups ) {
+      DataSet dataSet = new DataSet( "sorted", null, group, "sorted_" + group.getName().replace( '-', '_' ), fields );
+      dataSet.setSortFields( Arrays.asList( "id" ) );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 9, 1, 5 ) );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 7, 3 ), DataSetWriteMode.Append, null );
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 5, 2 ), DataSetWriteMode.Upsert, Arrays.asList( "id" ) );
+
+      // The files need to stay sorted
+      //
+      List<Long> ids = readIds( dataSet );
+      if ( !group.isReadingSortedRows() ) {
+        Collections.sort( ids );
+      }
+      assertEquals( group.getName(), Arrays.asList( 1L, 2L, 3L, 5L, 7L, 9L ), ids );
+    }
+  }
+
+  public void testUpsertNeedsKeys() throws Exception {
+    DataSetGroup group = groups.get( 0 );
+    DataSet dataSet = new DataSet( "nokeys", null, group, "nokeys", fields );
+    dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 1 ) );
+    try {
+      dataSet.writeDataSetData( dataSet.getSetRowMeta( true ), rows( 2 ), DataSetWriteMode.Upsert, null );
+      fail( "Upsert without keys should fail" );
+    } catch ( Exception e ) {
+      // Expected
+    }
+    assertEquals( Arrays.asList( 1L ), readIds( dataSet ) );
+  }
+
+  public void testWriteModeNames() throws Exception {
+    assertEquals( DataSetWriteMode.Replace, DataSetWriteMode.fromName( null ) );
+    assertEquals( DataSetWriteMode.Replace, DataSetWriteMode.fromName( "" ) );
+    assertEquals( DataSetWriteMode.Upsert, DataSetWriteMode.fromName( " upsert " ) );
+    try {
+      DataSetWriteMode.fromName( "Upsrt" );
+      fail( "An unknown write mode should fail" );
+    } catch ( KettleException e ) {
+      assertTrue( e.getMessage().contains( "Append" ) );
+    }
+  }
+
+  private List<Object[]> rows( long... ids ) {
+    List<Object[]> rows = new ArrayList<>();
+    for ( long id : ids ) {
+      rows.add( new Object[] { id, "name" + id } );
+    }
+    return rows;
+  }
+
+  private List<Long> readIds( DataSet dataSet ) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    for ( Object[] row : dataSet.getAllRows( log ) ) {
+      ids.add( (Long) row[ 0 ] );
+    }
+    return ids;
+  }
+}
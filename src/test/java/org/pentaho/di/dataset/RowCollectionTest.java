@@ -0,0 +1,84 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.dataset.spoon.xtpoint.RowCollection;
+
+import java.util.Random;
+
+public class RowCollectionTest extends TestCase {
+
+  private static final int NR_ROWS = 5000;
+
+  protected RowMetaInterface rowMeta;
+  protected RowCollection rowCollection;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    // Small enough to spill a bunch of blocks
+    //
+    rowCollection = new RowCollection( 16 * 1024L );
+    rowCollection.setRowMeta( rowMeta );
+
+    Random random = new Random( 42L );
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      long id = random.nextInt( NR_ROWS );
+      rowCollection.addRow( new Object[] { Long.valueOf( id ), i % 13 == 0 ? null : "name-" + i } );
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    rowCollection.dispose();
+  }
+
+  public void testSpilledRowsInOrder() throws Exception {
+    assertTrue( rowCollection.isSpilled() );
+    assertEquals( NR_ROWS, rowCollection.size() );
+
+    int nrRows = 0;
+    try ( DataSetRowReader reader = rowCollection.getRowReader() ) {
+      for ( Object[] row = reader.getRow(); row != null; row = reader.getRow() ) {
+        assertEquals( nrRows % 13 == 0 ? null : "name-" + nrRows, row[ 1 ] );
+        nrRows++;
+      }
+    }
+    assertEquals( NR_ROWS, nrRows );
+    assertEquals( NR_ROWS, rowCollection.getRows().size() );
+  }
+
+  public void testExternalMergeSort() throws Exception {
+    int nrRows = 0;
+    Object[] previous = null;
+    try ( DataSetRowReader reader = rowCollection.getSortedRowReader( new int[] { 0 } ) ) {
+      for ( Object[] row = reader.getRow(); row != null; row = reader.getRow() ) {
+        if ( previous != null ) {
+          assertTrue( rowMeta.compare( previous, row, new int[] { 0 } ) <= 0 );
+        }
+        previous = row;
+        nrRows++;
+      }
+    }
+    assertEquals( NR_ROWS, nrRows );
+  }
+
+  public void testDispose() throws Exception {
+    rowCollection.dispose();
+    try {
+      rowCollection.getRowReader();
+      fail( "Spilled rows can't be read after dispose" );
+    } catch ( Exception e ) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.pentaho.di.dataset;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.dataset.spoon.xtpoint.TransMetaModifier;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+import java.util.List;
+
+public class TransMetaModifierTest extends TestCase {
+
+  private static final String[] TRANSFORMATION_FILES = new String[] {
+    "src/test/resources/simple-mapping.ktr",
+    "src/test/resources/wordcount-mapper.ktr",
+    "src/test/resources/filter-rows.ktr",
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  public void testStructuralCopyMatchesXmlCopy() throws Exception {
+    for ( String filename : TRANSFORMATION_FILES ) {
+      TransMeta transMeta = new TransMeta( filename );
+
+      TransMeta xmlCopy = TransMetaModifier.copyTransMeta( transMeta, false );
+      TransMeta structuralCopy = TransMetaModifier.copyTransMeta( transMeta, true );
+
+      assertEquals( filename, xmlCopy.nrSteps(), structuralCopy.nrSteps() );
+      assertEquals( filename, xmlCopy.nrTransHops(), structuralCopy.nrTransHops() );
+      for ( int i = 0; i < xmlCopy.nrSteps(); i++ ) {
+        StepMeta xmlStep = xmlCopy.getStep( i );
+        StepMeta structuralStep = structuralCopy.findStep( xmlStep.getName() );
+        assertNotNull( structuralStep );
+        assertEquals( xmlStep.getStepID(), structuralStep.getStepID() );
+        assertEquals( xmlStep.getXML(), structuralStep.getXML() );
+      }
+
+      // The hops need to connect the copied steps, not the original ones
+      //
+      for ( int i = 0; i < structuralCopy.nrTransHops(); i++ ) {
+        TransHopMeta hop = structuralCopy.getTransHop( i );
+        assertSame( structuralCopy.findStep( hop.getFromStep().getName() ), hop.getFromStep() );
+        assertSame( structuralCopy.findStep( hop.getToStep().getName() ), hop.getToStep() );
+        assertNotSame( transMeta.findStep( hop.getFromStep().getName() ), hop.getFromStep() );
+      }
+    }
+  }
+
+  public void testStructuralCopyTargetStreams() throws Exception {
+    TransMeta transMeta = new TransMeta( "src/test/resources/filter-rows.ktr" );
+    TransMeta copy = TransMetaModifier.copyTransMeta( transMeta, true );
+
+    // Filter Rows needs to send its rows to the copied steps, not the original ones
+    //
+    List<StreamInterface> targetStreams = copy.findStep( "Filter" ).getStepMetaInterface().getStepIOMeta().getTargetStreams();
+    assertEquals( 2, targetStreams.size() );
+    for ( StreamInterface stream : targetStreams ) {
+      assertNotNull( stream.getStepMeta() );
+      assertSame( copy.findStep( stream.getStepname() ), stream.getStepMeta() );
+      assertNotSame( transMeta.findStep( stream.getStepname() ), stream.getStepMeta() );
+    }
+  }
+
+  public void testStructuralCopyIsolation() throws Exception {
+    TransMeta transMeta = new TransMeta( TRANSFORMATION_FILES[ 0 ] );
+    String originalStepId = transMeta.getStep( 0 ).getStepID();
+
+    TransMeta copy = TransMetaModifier.copyTransMeta( transMeta, true );
+    StepMeta copyStep = copy.getStep( 0 );
+    copyStep.setStepMetaInterface( new DummyTransMeta() );
+    copyStep.setStepID( "Dummy" );
+    copy.setVariable( "UNIT_TEST_ISOLATION", "copy" );
+    copy.removeTransHop( 0 );
+
+    assertEquals( originalStepId, transMeta.getStep( 0 ).getStepID() );
+    assertNull( transMeta.getVariable( "UNIT_TEST_ISOLATION" ) );
+    assertEquals( copy.nrTransHops() + 1, transMeta.nrTransHops() );
+  }
+}
@@ -9,7 +9,6 @@ import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
-import org.pentaho.di.core.extension.ExtensionPointInterface;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.util.EnvUtil;
@@ -17,11 +16,13 @@ import org.pentaho.di.dataset.spoon.xtpoint.ChangeTransMetaPriorToExecutionExten
 import org.pentaho.di.dataset.spoon.xtpoint.InjectDataSetIntoTransExtensionPoint;
 import org.pentaho.di.dataset.spoon.xtpoint.RowCollection;
 import org.pentaho.di.dataset.spoon.xtpoint.ValidateTransUnitTestExtensionPoint;
+import org.pentaho.di.dataset.steps.exectests.ExecuteTestsMeta;
 import org.pentaho.di.dataset.util.DataSetConst;
 import org.pentaho.di.dataset.util.FactoriesHierarchy;
 import org.pentaho.di.shared.SharedObjects;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.persist.MetaStoreFactory;
@@ -38,6 +39,7 @@ public class TransUnitTestExecutionTest extends TestCase {
 
   private static final String INPUT_STEP_NAME = "Input";
   private static final String OUTPUT_STEP_NAME = "Output";
+  private static final int NR_SPILLED_ROWS = 20000;
 
   public static final String NAMESPACE = "test";
 
@@ -130,6 +132,8 @@ public class TransUnitTestExecutionTest extends TestCase {
   protected void tearDown() throws Exception {
     // Clean up the data sets database...
     //
+    DataSetDatabasePool.closeAll();
+    System.clearProperty( Const.KETTLE_SHARED_OBJECTS );
     new File( "/tmp/datasets.h2.db" ).delete();
     new File( "/tmp/datasets.trace.db" ).delete();
 
@@ -195,15 +199,18 @@ public class TransUnitTestExecutionTest extends TestCase {
       "src/test/resources/simple-mapping.ktr", inputs, goldens, tweaks, TestType.UNIT_TEST, null, new ArrayList<TransUnitTestDatabaseReplacement>(), false );
   }
 
-  public void testExecution() throws Exception {
-
-    List<Class<? extends ExtensionPointInterface>> pluginClasses = Arrays.asList(
+  private void registerPlugins() throws Exception {
+    List<Class<?>> pluginClasses = Arrays.asList(
       ChangeTransMetaPriorToExecutionExtensionPoint.class,
       InjectDataSetIntoTransExtensionPoint.class,
-      ValidateTransUnitTestExtensionPoint.class
+      ValidateTransUnitTestExtensionPoint.class,
+      ExecuteTestsMeta.class
     );
     String plugins = Const.NVL( EnvUtil.getSystemProperty( Const.KETTLE_PLUGIN_CLASSES ), "" );
-    for ( Class<? extends ExtensionPointInterface> cl : pluginClasses ) {
+    for ( Class<?> cl : pluginClasses ) {
+      if ( plugins.contains( cl.getName() ) ) {
+        continue;
+      }
       if ( plugins.length() > 0 ) {
         plugins += ",";
       }
@@ -212,6 +219,11 @@ public class TransUnitTestExecutionTest extends TestCase {
     System.setProperty( Const.KETTLE_PLUGIN_CLASSES, plugins );
 
     KettleEnvironment.init();
+  }
+
+  private Trans executeUnitTest() throws Exception {
+
+    registerPlugins();
 
     TransMeta transMeta = new TransMeta( unitTest.getTransFilename() );
     transMeta.setSharedObjects( sharedObjects );
@@ -226,15 +238,94 @@ public class TransUnitTestExecutionTest extends TestCase {
     //
     transMeta.setMetaStore( metaStore );
 
-    // Create an in-memory data-set group and data sets to test with...
-    //
-    StepMeta stepMeta = transMeta.findStep( INPUT_STEP_NAME );
-
     Trans trans = new Trans( transMeta );
     trans.setPreview( true ); // data set only works in preview right now
     trans.execute( null );
     trans.waitUntilFinished();
 
+    return trans;
+  }
+
+  public void testExecuteTestsWithSpilledRows() throws Exception {
+
+    // Capture more golden step rows than fit in a memory budget of 1MB
+    //
+    List<Object[]> inputRows = new ArrayList<>();
+    List<Object[]> goldenRows = new ArrayList<>();
+    for ( int i = 0; i < NR_SPILLED_ROWS; i++ ) {
+      String suffix = String.format( "%08d-%s", i, "abcdefghijklmnopqrstuvwxyz" );
+      inputRows.add( new Object[] { "a" + suffix, "b" + suffix, "c" + suffix } );
+      goldenRows.add( new Object[] { 123456L, "c" + suffix, "b" + suffix, "a" + suffix } );
+    }
+    DataSetConst.writeDataSet( INPUT_SET_NAME, INPUT_SET_DESC, dataSetGroup, INPUT_SET_TABLE, inputDataSet.getFields(), inputRows );
+    DataSetConst.writeDataSet( GOLDEN_SET_NAME, GOLDEN_SET_DESC, dataSetGroup, GOLDEN_SET_TABLE, goldenDataSet.getFields(), goldenRows );
+
+    // The test transformation is loaded from file so it needs to find the data set database in the shared objects
+    //
+    System.setProperty( Const.KETTLE_SHARED_OBJECTS, sharedObjects.getFilename() );
+    registerPlugins();
+
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "execute-tests" );
+    transMeta.addDatabase( databaseMeta );
+    transMeta.setMetaStore( metaStore );
+    transMeta.setVariable( DataSetConst.VARIABLE_UNIT_TEST_MEMORY_BUDGET, "1" );
+    ExecuteTestsMeta executeTestsMeta = new ExecuteTestsMeta();
+    executeTestsMeta.setDefault();
+    transMeta.addStep( new StepMeta( "Execute tests", executeTestsMeta ) );
+
+    Trans trans = new Trans( transMeta );
+    trans.setMetaStore( metaStore );
+    trans.prepareExecution( null );
+
+    final List<Object[]> resultRows = new ArrayList<>();
+    trans.getStepInterface( "Execute tests", 0 ).addRowListener( new RowAdapter() {
+      @Override public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) {
+        resultRows.add( row );
+      }
+    } );
+    trans.startThreads();
+    trans.waitUntilFinished();
+
+    assertEquals( 0, trans.getErrors() );
+    assertFalse( resultRows.isEmpty() );
+    for ( Object[] row : resultRows ) {
+      // transformation, unit test, data set, step, error, comment
+      //
+      assertFalse( (String) row[ 5 ], (Boolean) row[ 4 ] );
+    }
+  }
+
+  public void testStreamingExecution() throws Exception {
+
+    unitTest.getGoldenDataSets().get( 0 ).setComparisonType( GoldenComparisonType.STREAMING );
+    factories.getTestFactory().saveElement( unitTest );
+
+    Trans trans = executeUnitTest();
+
+    Result result = trans.getResult();
+    assertTrue( result.getResult() );
+    assertEquals( 0, result.getNrErrors() );
+
+    // Nothing is kept in memory to validate afterwards
+    //
+    assertNull( trans.getExtensionDataMap().get( DataSetConst.ROW_COLLECTION_MAP ) );
+
+    @SuppressWarnings( "unchecked" )
+    List<UnitTestResult> results = (List<UnitTestResult>) trans.getExtensionDataMap().get( DataSetConst.UNIT_TEST_RESULTS );
+    assertNotNull( results );
+    assertFalse( results.isEmpty() );
+    for ( UnitTestResult unitTestResult : results ) {
+      assertFalse( unitTestResult.getComment(), unitTestResult.isError() );
+    }
+  }
+
+  public void testExecution() throws Exception {
+
+    Trans trans = executeUnitTest();
+    TransMeta transMeta = trans.getTransMeta();
+    StepMeta stepMeta = transMeta.findStep( INPUT_STEP_NAME );
+
     // All OK?  Did we read rows in the output step?
     //
     Result result = trans.getResult();
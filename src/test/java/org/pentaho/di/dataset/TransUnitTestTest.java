@@ -47,6 +47,12 @@ public class TransUnitTestTest extends TestCase {
       ), Arrays.asList( "order1", "order2", "order3", "order4" ) ) );
 
     goldens = new ArrayList<TransUnitTestSetLocation>();
+    TransUnitTestSetLocation golden = new TransUnitTestSetLocation( "golden-step1", "golden-set-name1",
+      Arrays.asList(
+        new TransUnitTestFieldMapping( "fieldA", "setFieldA" )
+      ), new ArrayList<String>() );
+    golden.setComparisonType( GoldenComparisonType.HASHED );
+    goldens.add( golden );
 
     List<TransUnitTestTweak> tweaks = new ArrayList<TransUnitTestTweak>();
     tweaks.add( new TransUnitTestTweak( TransTweak.NONE, "step1" ) );
@@ -104,6 +110,7 @@ public class TransUnitTestTest extends TestCase {
       assertEquals( goldens.get( i ).getStepname(), verifyGoldens.get( i ).getStepname() );
       assertEquals( goldens.get( i ).getDataSetName(), verifyGoldens.get( i ).getDataSetName() );
       assertEquals( goldens.get( i ).getFieldMappings().size(), verifyGoldens.get( i ).getFieldMappings().size() );
+      assertEquals( goldens.get( i ).getComparisonType(), verifyGoldens.get( i ).getComparisonType() );
     }
 
   }
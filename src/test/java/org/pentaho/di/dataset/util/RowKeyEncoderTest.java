@@ -0,0 +1,95 @@
+package org.pentaho.di.dataset.util;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+public class RowKeyEncoderTest extends TestCase {
+
+  private static final int NR_ROWS = 2000;
+
+  protected RowMetaInterface rowMeta;
+  protected int[] allIndexes;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "code" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "created" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "total" ) );
+    rowMeta.addValueMeta( new ValueMetaBoolean( "flag" ) );
+    allIndexes = new int[] { 0, 1, 2, 3, 4, 5 };
+  }
+
+  private List<Object[]> createRows( int nrRows ) {
+    Random random = new Random( 11L );
+    String[] codes = new String[] { "a", "A", "ab", "aB", "b", "", "a\u0000b", "été", "zz" };
+    List<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows.add( new Object[] {
+        random.nextInt( 12 ) == 0 ? null : codes[ random.nextInt( codes.length ) ],
+        random.nextInt( 12 ) == 0 ? null : Long.valueOf( random.nextInt( 200 ) - 100 ),
+        random.nextInt( 12 ) == 0 ? null : Double.valueOf( ( random.nextInt( 2000 ) - 1000 ) / 7.0 ),
+        random.nextInt( 12 ) == 0 ? null : new Date( 1500000000000L + ( random.nextInt( 2000 ) - 1000 ) * 86400000L ),
+        random.nextInt( 12 ) == 0 ? null : new BigDecimal( random.nextInt( 20000 ) - 10000 ).movePointLeft( random.nextInt( 6 ) ),
+        random.nextInt( 12 ) == 0 ? null : Boolean.valueOf( random.nextBoolean() ),
+      } );
+    }
+    return rows;
+  }
+
+  private void assertSameOrder( int[] indexes ) throws KettleValueException {
+    RowKeyEncoder encoder = new RowKeyEncoder( rowMeta, indexes );
+    List<Object[]> rows = createRows( NR_ROWS );
+    for ( int i = 1; i < rows.size(); i++ ) {
+      Object[] row1 = rows.get( i - 1 );
+      Object[] row2 = rows.get( i );
+      int expected = Integer.signum( rowMeta.compare( row1, row2, indexes ) );
+      int actual = Integer.signum( RowKeyEncoder.compare( encoder.encode( row1 ), encoder.encode( row2 ) ) );
+      assertEquals( rowMeta.getString( row1 ) + " <> " + rowMeta.getString( row2 ), expected, actual );
+    }
+  }
+
+  public void testSameOrderAsValueComparison() throws Exception {
+    assertTrue( RowKeyEncoder.isSupported( rowMeta, allIndexes ) );
+    for ( int index : allIndexes ) {
+      assertSameOrder( new int[] { index } );
+    }
+    assertSameOrder( allIndexes );
+    assertSameOrder( new int[] { 4, 0, 3 } );
+  }
+
+  public void testCaseInsensitiveAndDescending() throws Exception {
+    rowMeta.getValueMeta( 0 ).setCaseInsensitive( true );
+    rowMeta.getValueMeta( 1 ).setSortedDescending( true );
+    rowMeta.getValueMeta( 4 ).setSortedDescending( true );
+    assertSameOrder( new int[] { 0 } );
+    assertSameOrder( new int[] { 1, 0 } );
+    assertSameOrder( new int[] { 4, 2 } );
+  }
+
+  public void testBinaryIsNotSupported() throws Exception {
+    rowMeta.addValueMeta( new ValueMetaString( "raw" ) );
+    rowMeta.getValueMeta( 6 ).setType( ValueMetaInterface.TYPE_BINARY );
+    assertFalse( RowKeyEncoder.isSupported( rowMeta, new int[] { 0, 6 } ) );
+  }
+}
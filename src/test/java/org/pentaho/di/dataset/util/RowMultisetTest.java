@@ -0,0 +1,53 @@
+package org.pentaho.di.dataset.util;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.math.BigDecimal;
+
+public class RowMultisetTest extends TestCase {
+
+  protected RowMetaInterface rowMeta;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "amount" ) );
+  }
+
+  public void testDuplicatesAreCounted() throws Exception {
+    RowMultiset multiset = new RowMultiset( rowMeta );
+    multiset.add( new Object[] { "a", 1L, new BigDecimal( "1.0" ) } );
+    multiset.add( new Object[] { "a", 1L, new BigDecimal( "1.0" ) } );
+    multiset.add( new Object[] { "b", 2L, null } );
+    assertEquals( 3, multiset.size() );
+
+    // Values that compare as equal should match, regardless of their scale
+    //
+    assertTrue( multiset.remove( new Object[] { "a", 1L, new BigDecimal( "1.00" ) } ) );
+    assertTrue( multiset.remove( new Object[] { "a", 1L, new BigDecimal( "1" ) } ) );
+    assertFalse( multiset.remove( new Object[] { "a", 1L, new BigDecimal( "1" ) } ) );
+    assertEquals( 1, multiset.size() );
+
+    assertEquals( 1, multiset.getRows().size() );
+    assertEquals( "b", multiset.getRows().get( 0 )[ 0 ] );
+  }
+
+  public void testCaseInsensitiveStrings() throws Exception {
+    rowMeta.getValueMeta( 0 ).setCaseInsensitive( true );
+    RowMultiset multiset = new RowMultiset( rowMeta );
+    multiset.add( new Object[] { "Kettle", 1L, null } );
+    assertFalse( multiset.remove( new Object[] { "kettle", 2L, null } ) );
+    assertTrue( multiset.remove( new Object[] { "kettle", 1L, null } ) );
+    assertTrue( multiset.isEmpty() );
+  }
+}
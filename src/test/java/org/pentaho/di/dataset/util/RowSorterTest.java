@@ -0,0 +1,86 @@
+package org.pentaho.di.dataset.util;
+
+import junit.framework.TestCase;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+public class RowSorterTest extends TestCase {
+
+  protected RowMetaInterface rowMeta;
+
+  @Override
+  protected void setUp() throws Exception {
+    KettleClientEnvironment.init();
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "code" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "created" ) );
+  }
+
+  private List<Object[]> createRows( int nrRows ) {
+    Random random = new Random( 7L );
+    List<Object[]> rows = new ArrayList<>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows.add( new Object[] {
+        random.nextInt( 10 ) == 0 ? null : "code-" + random.nextInt( 50 ),
+        Long.valueOf( random.nextInt( 1000 ) ),
+        new Date( 1500000000000L + random.nextInt( 100000 ) * 1000L ),
+      } );
+    }
+    return rows;
+  }
+
+  private void assertSorted( List<Object[]> rows, int[] sortIndexes ) throws Exception {
+    for ( int i = 1; i < rows.size(); i++ ) {
+      assertTrue( "Row " + i + " is out of order", rowMeta.compare( rows.get( i - 1 ), rows.get( i ), sortIndexes ) <= 0 );
+    }
+  }
+
+  public void testSmallSort() throws Exception {
+    List<Object[]> rows = createRows( 100 );
+    RowSorter.create( rowMeta, Arrays.asList( "code", "id" ) ).sort( rows );
+    assertEquals( 100, rows.size() );
+    assertSorted( rows, new int[] { 0, 1 } );
+  }
+
+  public void testParallelSort() throws Exception {
+    int nrRows = RowSorter.PARALLEL_SORT_THRESHOLD * 4;
+    List<Object[]> rows = createRows( nrRows );
+    RowSorter.create( rowMeta, Arrays.asList( "created", "code" ) ).sort( rows );
+    assertEquals( nrRows, rows.size() );
+    assertSorted( rows, new int[] { 2, 0 } );
+  }
+
+  public void testSortKeys() throws Exception {
+    int[] sortIndexes = new int[] { 0, 2 };
+    RowSorter sorter = new RowSorter( rowMeta, sortIndexes );
+    List<Object[]> rows = createRows( 200 );
+    for ( int i = 1; i < rows.size(); i++ ) {
+      Object[] row1 = rows.get( i - 1 );
+      Object[] row2 = rows.get( i );
+      int expected = Integer.signum( rowMeta.compare( row1, row2, sortIndexes ) );
+      int actual = Integer.signum( sorter.getSortKeyComparator().compare( sorter.getSortKey( row1 ), sorter.getSortKey( row2 ) ) );
+      assertEquals( expected, actual );
+    }
+  }
+
+  public void testUnknownField() throws Exception {
+    try {
+      RowSorter.create( rowMeta, Arrays.asList( "unknown" ) );
+      fail( "Sorting on an unknown field should fail" );
+    } catch ( Exception e ) {
+      // Expected
+    }
+  }
+}